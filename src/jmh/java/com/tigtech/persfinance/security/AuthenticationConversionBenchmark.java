@@ -0,0 +1,70 @@
+package com.tigtech.persfinance.security;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The conversion half of {@link JwtDecodeBenchmark}, on an already decoded token: realm roles to authorities
+ * ({@link SecurityConfig#realmRolesAuthoritiesConverter()}), and the whole {@code jwtAuthenticationConverter}
+ * producing the authentication with its {@link UserPrincipal}, the user id coming from a cached mapping.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthenticationConversionBenchmark {
+
+    private static final Long LOCAL_USER_ID = 42L;
+
+    private Jwt jwt;
+    private SecurityConfig.AuthoritiesConverter authoritiesConverter;
+    private Converter<Jwt, AbstractAuthenticationToken> authenticationConverter;
+
+    @Setup
+    public void setup() {
+        Instant now = Instant.now();
+        jwt = Jwt.withTokenValue("token")
+                .header("alg", "RS256")
+                .issuer("http://localhost:8080/realms/Persfin")
+                .subject(UUID.randomUUID().toString())
+                .issuedAt(now)
+                .expiresAt(now.plusSeconds(3600))
+                .claim("realm_access", Map.of("roles", List.of("default-roles-persfin", "offline_access", "uma_authorization", "user")))
+                .claim("preferred_username", "alice@example.com")
+                .claim("email", "alice@example.com")
+                .build();
+        authoritiesConverter = new SecurityConfig().realmRolesAuthoritiesConverter();
+        authenticationConverter = SecurityConfig.userJwtAuthenticationConverter(authoritiesConverter, token -> LOCAL_USER_ID);
+    }
+
+    @Benchmark
+    public Collection<GrantedAuthority> realmRolesAuthorities() {
+        return authoritiesConverter.convert(jwt.getClaims());
+    }
+
+    @Benchmark
+    public AbstractAuthenticationToken jwtAuthentication() {
+        return authenticationConverter.convert(jwt);
+    }
+}
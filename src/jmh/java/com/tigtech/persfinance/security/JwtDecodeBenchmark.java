@@ -0,0 +1,113 @@
+package com.tigtech.persfinance.security;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What every authenticated request pays before reaching a controller: decoding the bearer token and converting it
+ * to an authentication. {@code cached=false} is signature verification on every request with authorities rebuilt
+ * each time; {@code cached=true} is {@link CachingJwtDecoder} with the interned authorities of
+ * {@link SecurityConfig#realmRolesAuthoritiesConverter()}, for a client repeating the same Keycloak-like token.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtDecodeBenchmark {
+
+    // the subject's user id, as resolved by JwtUserResolver once its mapping is cached
+    private static final Long LOCAL_USER_ID = 42L;
+
+    @Param({"false", "true"})
+    boolean cached;
+
+    private String token;
+    private JwtDecoder decoder;
+    private Converter<Jwt, AbstractAuthenticationToken> converter;
+
+    @Setup
+    public void setup() throws JOSEException {
+        RSAKey key = new RSAKeyGenerator(2048).keyID("bench").generate();
+        token = sign(key);
+
+        SecurityConfig config = new SecurityConfig();
+        JwtDecoder verifier = NimbusJwtDecoder.withPublicKey(key.toRSAPublicKey()).build();
+        if (cached) {
+            decoder = new CachingJwtDecoder(verifier, new SimpleMeterRegistry(), 10_000, Clock.systemUTC());
+            converter = SecurityConfig.userJwtAuthenticationConverter(config.realmRolesAuthoritiesConverter(), jwt -> LOCAL_USER_ID);
+        } else {
+            decoder = verifier;
+            // authorities rebuilt on every call, as before they were interned
+            converter = SecurityConfig.userJwtAuthenticationConverter(claims -> {
+                var roles = SecurityConfig.realmRoles(claims);
+                return roles == null ? List.of() : SecurityConfig.toAuthorities(roles);
+            }, jwt -> LOCAL_USER_ID);
+        }
+    }
+
+    @Benchmark
+    public AbstractAuthenticationToken decodeAndConvert() {
+        return converter.convert(decoder.decode(token));
+    }
+
+    /** Roughly the size and shape of a Keycloak access token. */
+    private static String sign(RSAKey key) throws JOSEException {
+        Instant now = Instant.now();
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .issuer("http://localhost:8080/realms/Persfin")
+                .subject(UUID.randomUUID().toString())
+                .audience("account")
+                .jwtID(UUID.randomUUID().toString())
+                .issueTime(Date.from(now))
+                .expirationTime(Date.from(now.plusSeconds(3600)))
+                .claim("typ", "Bearer")
+                .claim("azp", "personal-finance-api")
+                .claim("sid", UUID.randomUUID().toString())
+                .claim("scope", "openid profile email")
+                .claim("realm_access", Map.of("roles", List.of("default-roles-persfin", "offline_access", "uma_authorization", "user")))
+                .claim("resource_access", Map.of("account", Map.of("roles", List.of("manage-account", "view-profile"))))
+                .claim("email_verified", false)
+                .claim("name", "Alice Doe")
+                .claim("preferred_username", "alice@example.com")
+                .claim("given_name", "Alice")
+                .claim("family_name", "Doe")
+                .claim("email", "alice@example.com")
+                .build();
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(key.getKeyID()).build(), claims);
+        jwt.sign(new RSASSASigner(key));
+        return jwt.serialize();
+    }
+}
@@ -0,0 +1,58 @@
+package com.tigtech.persfinance.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BCrypt through {@link PasswordHashingService} (hashing pool hop included) at the test cost, the calibration
+ * floor and the costs a production host typically calibrates to. Each step should double the time; the absolute
+ * numbers tell which cost fits {@code app.password-hashing.target-ms} on the host running them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PasswordHashingBenchmark {
+
+    @Param({"4", "10", "11", "12"})
+    int cost;
+
+    private PasswordHashingService hashing;
+    private String hash;
+
+    @Setup
+    public void setup() {
+        hashing = new PasswordHashingService(new SimpleMeterRegistry(), 250, cost, 1, 64);
+        hash = hashing.encode("s3cret-pass");
+    }
+
+    @TearDown
+    public void tearDown() {
+        hashing.shutdown();
+    }
+
+    @Benchmark
+    public String encode() {
+        return hashing.encode("s3cret-pass");
+    }
+
+    @Benchmark
+    public boolean matches() {
+        return hashing.matches("s3cret-pass", hash);
+    }
+}
@@ -0,0 +1,87 @@
+package com.tigtech.persfinance.storage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Photo uploads per second through {@link LocalStorageService#storeUserPhoto}: streaming to a temp file while
+ * hashing, then moving it into place. {@code duplicate=true} uploads the same bytes every time, so only the first
+ * one is moved and the rest take the deduplication path. Blobs are deleted after every iteration to keep the
+ * disk from filling up.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LocalStorageWriteBenchmark {
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A};
+
+    @Param({"16384", "262144", "2097152"})
+    int size;
+
+    @Param({"false", "true"})
+    boolean duplicate;
+
+    private Path uploadDir;
+    private LocalStorageService storage;
+    private byte[] photo;
+    private long sequence;
+
+    @Setup
+    public void setup() throws IOException {
+        uploadDir = Files.createTempDirectory("storage-bench-");
+        storage = new LocalStorageService(uploadDir.toString(), 20L * 1024 * 1024, new SimpleMeterRegistry());
+        photo = new byte[size];
+        ThreadLocalRandom.current().nextBytes(photo);
+        System.arraycopy(PNG_SIGNATURE, 0, photo, 0, PNG_SIGNATURE.length);
+    }
+
+    @Benchmark
+    public StoredPhoto storeUserPhoto() throws IOException {
+        // a distinct upload differs from the previous ones in the bytes right after the signature
+        if (!duplicate) ByteBuffer.wrap(photo).putLong(PNG_SIGNATURE.length, ++sequence);
+        return storage.storeUserPhoto(new ByteArrayInputStream(photo), photo.length, "42");
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteBlobs() throws IOException {
+        delete(uploadDir.resolve("blobs"));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        delete(uploadDir);
+    }
+
+    private static void delete(Path dir) throws IOException {
+        if (!Files.exists(dir)) return;
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path p : paths.sorted(Comparator.reverseOrder()).toList()) Files.delete(p);
+        }
+    }
+}
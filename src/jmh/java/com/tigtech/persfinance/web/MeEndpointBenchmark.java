@@ -0,0 +1,70 @@
+package com.tigtech.persfinance.web;
+
+import com.tigtech.persfinance.security.LocalTokenIssuer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code GET /api/auth/me} past authentication: building its response map from the token and serializing it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MeEndpointBenchmark {
+
+    private final JsonMapper jsonMapper = JsonMapper.builder().build();
+    private AuthController controller;
+    private JwtAuthenticationToken authentication;
+
+    @Setup
+    public void setup() {
+        // /me touches none of the controller's services
+        controller = new AuthController(null, null, null,
+                new StaticListableBeanFactory().getBeanProvider(LocalTokenIssuer.class));
+        Instant now = Instant.now();
+        Jwt jwt = Jwt.withTokenValue("token")
+                .header("alg", "RS256")
+                .issuer("http://localhost:8080/realms/Persfin")
+                .subject(UUID.randomUUID().toString())
+                .issuedAt(now)
+                .expiresAt(now.plusSeconds(3600))
+                .claim("preferred_username", "alice@example.com")
+                .claim("email", "alice@example.com")
+                .build();
+        authentication = new JwtAuthenticationToken(jwt, List.of(
+                new SimpleGrantedAuthority("ROLE_DEFAULT-ROLES-PERSFIN"), new SimpleGrantedAuthority("ROLE_OFFLINE_ACCESS"),
+                new SimpleGrantedAuthority("ROLE_UMA_AUTHORIZATION"), new SimpleGrantedAuthority("ROLE_USER")));
+    }
+
+    @Benchmark
+    public Map<String, Object> buildResponse() {
+        return controller.me(authentication);
+    }
+
+    @Benchmark
+    public byte[] buildAndSerialize() {
+        return jsonMapper.writeValueAsBytes(controller.me(authentication));
+    }
+}
@@ -0,0 +1,75 @@
+package com.tigtech.persfinance.web;
+
+import com.tigtech.persfinance.domain.User;
+import com.tigtech.persfinance.web.dto.UserPageResponse;
+import com.tigtech.persfinance.web.dto.UserResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Response building for the user endpoints: one entity to its DTO ({@code UserController.toDto}, used by
+ * {@code GET /api/users/{id}}), and a {@code GET /api/users} page serialized to JSON at the default and the
+ * maximum page size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserResponseBenchmark {
+
+    /** A page of the list endpoint, at the default and the maximum page size. */
+    @State(Scope.Benchmark)
+    public static class Page {
+
+        @Param({"" + UserController.DEFAULT_PAGE_SIZE, "" + UserController.MAX_PAGE_SIZE})
+        int pageSize;
+
+        UserPageResponse response;
+
+        @Setup
+        public void setup() {
+            List<UserResponse> items = new ArrayList<>(pageSize);
+            for (int i = 1; i <= pageSize; i++) items.add(UserResponse.of(user(i)));
+            response = new UserPageResponse(items, (long) pageSize);
+        }
+    }
+
+    private final JsonMapper jsonMapper = JsonMapper.builder().build();
+    private final User user = user(1);
+
+    @Benchmark
+    public UserResponse toDto() {
+        return UserResponse.of(user);
+    }
+
+    @Benchmark
+    public byte[] serializePage(Page page) {
+        return jsonMapper.writeValueAsBytes(page.response);
+    }
+
+    private static User user(long id) {
+        return User.builder()
+                .id(id)
+                .firstName("User")
+                .lastName("Number " + id)
+                .email("user" + id + "@example.com")
+                .photoUrl("/uploads/blobs/ab/cd/" + "abcd".repeat(16) + ".jpg")
+                .build();
+    }
+}
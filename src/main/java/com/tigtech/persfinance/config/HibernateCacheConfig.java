@@ -0,0 +1,90 @@
+package com.tigtech.persfinance.config;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import com.tigtech.persfinance.domain.User;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.hibernate.autoconfigure.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.spi.CachingProvider;
+import java.net.URI;
+import java.time.Duration;
+import java.util.OptionalLong;
+import java.util.UUID;
+
+/**
+ * Hibernate second-level cache. Hibernate talks to it through JCache, so the in-process Caffeine provider used
+ * here can be replaced by a clustered JCache provider (Hazelcast, Infinispan...) by changing only
+ * {@link #hibernateCacheManager}; until then each instance has its own cache, and a write on one instance is
+ * seen by the others once their entry expires ({@code app.cache.users.ttl-seconds}).
+ * <p>
+ * Every region is created here with a bounded size and a TTL; Hibernate fails at startup if an entity asks for a
+ * region that is not, rather than silently creating an unbounded one.
+ */
+@Configuration
+public class HibernateCacheConfig {
+
+    @Bean(destroyMethod = "close")
+    CacheManager hibernateCacheManager(@Value("${app.cache.users.max-entries:10000}") long maxEntries,
+                                       @Value("${app.cache.users.ttl-seconds:600}") long ttlSeconds) {
+        // a manager of its own, not the provider's shared default one, so it is closed with this context only
+        CachingProvider provider = Caching.getCachingProvider(CaffeineCachingProvider.class.getName());
+        CacheManager cacheManager = provider.getCacheManager(
+                URI.create("persfinance-hibernate-" + UUID.randomUUID()), HibernateCacheConfig.class.getClassLoader());
+        for (String region : new String[]{User.CACHE_REGION, User.EMAIL_CACHE_REGION}) {
+            cacheManager.createCache(region, boundedRegion(maxEntries, Duration.ofSeconds(ttlSeconds)));
+        }
+        return cacheManager;
+    }
+
+    private static CaffeineConfiguration<Object, Object> boundedRegion(long maxEntries, Duration ttl) {
+        return new CaffeineConfiguration<>()
+                .setMaximumSize(OptionalLong.of(maxEntries))
+                .setExpireAfterWrite(OptionalLong.of(ttl.toNanos()))
+                // Hibernate caches its own immutable, disassembled state: no need to copy it on every access
+                .setStoreByValue(false);
+    }
+
+    @Bean
+    HibernatePropertiesCustomizer hibernateSecondLevelCache(CacheManager hibernateCacheManager) {
+        return properties -> {
+            properties.put("hibernate.cache.use_second_level_cache", true);
+            properties.put("hibernate.cache.region.factory_class", "jcache");
+            properties.put("hibernate.javax.cache.cache_manager", hibernateCacheManager);
+            properties.put("hibernate.javax.cache.missing_cache_strategy", "fail");
+        };
+    }
+
+    /**
+     * {@code hibernate.cache.hit.ratio{region}}: hits over lookups since startup, next to the hit/miss/put
+     * counters Spring Boot publishes as {@code hibernate.second.level.cache.*}.
+     */
+    @Bean
+    MeterBinder hibernateCacheHitRatio(EntityManagerFactory entityManagerFactory) {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        return registry -> {
+            for (String region : statistics.getSecondLevelCacheRegionNames()) {
+                Gauge.builder("hibernate.cache.hit.ratio", statistics, s -> hitRatio(s.getCacheRegionStatistics(region)))
+                        .description("Share of second-level cache lookups answered from the cache")
+                        .tag("region", region)
+                        .register(registry);
+            }
+        };
+    }
+
+    private static double hitRatio(CacheRegionStatistics region) {
+        if (region == null) return Double.NaN;
+        long lookups = region.getHitCount() + region.getMissCount();
+        return lookups == 0 ? Double.NaN : (double) region.getHitCount() / lookups;
+    }
+}
@@ -0,0 +1,25 @@
+package com.tigtech.persfinance.config;
+
+import com.tigtech.persfinance.mail.ConsoleMailTransport;
+import com.tigtech.persfinance.mail.MailTransport;
+import com.tigtech.persfinance.mail.SmtpMailTransport;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.mail.javamail.JavaMailSender;
+
+/**
+ * SMTP delivery when {@code spring.mail.host} is set (Spring Boot then provides a {@link JavaMailSender}),
+ * console logging otherwise.
+ */
+@Configuration
+public class MailConfig {
+
+    @Bean
+    public MailTransport mailTransport(ObjectProvider<JavaMailSender> mailSender,
+                                       @Value("${app.mail.from:no-reply@persfinance.local}") String from) {
+        JavaMailSender sender = mailSender.getIfAvailable();
+        return sender != null ? new SmtpMailTransport(sender, from) : new ConsoleMailTransport();
+    }
+}
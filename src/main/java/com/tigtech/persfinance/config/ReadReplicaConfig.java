@@ -0,0 +1,84 @@
+package com.tigtech.persfinance.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.autoconfigure.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Read replicas, enabled by {@code app.datasource.replica-urls}. Transactions marked
+ * {@code @Transactional(readOnly = true)} (and Spring Data's own reads, such as {@code findById}) run on a replica;
+ * everything else, including work outside a transaction, runs on the primary of {@code spring.datasource.url}.
+ * <p>
+ * The choice is made when a transaction first touches the database: {@link LazyConnectionDataSourceProxy} hands
+ * Hibernate a placeholder connection and picks the replica pool only if the transaction has marked it read-only
+ * by then. Replicas use the primary's credentials and driver. Statements run on each target are counted as
+ * {@code datasource.queries{target}}.
+ */
+@Configuration
+@ConditionalOnExpression("!'${app.datasource.replica-urls:}'.isBlank()")
+public class ReadReplicaConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean(destroyMethod = "close")
+    ReadReplicaDataSource readReplicaDataSource(DataSourceProperties properties,
+                                                @Qualifier("primaryDataSource") DataSource primaryDataSource,
+                                                MeterRegistry meterRegistry,
+                                                @Value("${app.datasource.replica-urls}") String replicaUrls,
+                                                @Value("${app.datasource.replica-pool-size:10}") int poolSize,
+                                                @Value("${app.datasource.replica-connection-timeout-ms:1000}") long connectionTimeoutMs) {
+        List<String> urls = Arrays.stream(replicaUrls.split(",")).map(String::trim).filter(u -> !u.isEmpty()).toList();
+        List<ReadReplicaDataSource.Target> replicas = new ArrayList<>();
+        for (int i = 0; i < urls.size(); i++) {
+            String name = "replica-" + (i + 1);
+            HikariDataSource pool = properties.initializeDataSourceBuilder()
+                    .type(HikariDataSource.class)
+                    .url(urls.get(i))
+                    .build();
+            pool.setPoolName(name);
+            pool.setMaximumPoolSize(poolSize);
+            // fail over quickly instead of holding a request for Hikari's default 30 s
+            pool.setConnectionTimeout(connectionTimeoutMs);
+            // a replica that is down at startup must not stop the application
+            pool.setInitializationFailTimeout(-1);
+            replicas.add(new ReadReplicaDataSource.Target(name, counting(pool, name, meterRegistry)));
+        }
+        return new ReadReplicaDataSource(replicas, counting(primaryDataSource, "primary", meterRegistry), meterRegistry);
+    }
+
+    @Bean
+    @Primary
+    DataSource dataSource(@Qualifier("primaryDataSource") DataSource primaryDataSource,
+                          ReadReplicaDataSource readReplicaDataSource,
+                          MeterRegistry meterRegistry) {
+        LazyConnectionDataSourceProxy routing = new LazyConnectionDataSourceProxy(
+                counting(primaryDataSource, "primary", meterRegistry));
+        routing.setReadOnlyDataSource(readReplicaDataSource);
+        return routing;
+    }
+
+    private static DataSource counting(DataSource target, String name, MeterRegistry meterRegistry) {
+        return new QueryCountingDataSource(target, Counter.builder("datasource.queries")
+                .description("SQL statements executed by target database")
+                .tag("target", name)
+                .register(meterRegistry));
+    }
+}
@@ -0,0 +1,121 @@
+package com.tigtech.persfinance.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Connections for read-only transactions: round-robin over the replicas that are up, falling back to the primary
+ * when none is.
+ * <p>
+ * A replica is marked down as soon as it fails to hand out a connection, and the next replica (or the primary)
+ * is tried within the same call. {@link #checkReplicas()} probes every replica in the background and marks it
+ * up again once it answers.
+ */
+public class ReadReplicaDataSource extends AbstractDataSource implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ReadReplicaDataSource.class);
+
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    /** A replica's pool, named as in the {@code datasource.queries{target}} tag. */
+    public record Target(String name, DataSource dataSource) {}
+
+    private static final class Replica {
+        final Target target;
+        volatile boolean up = true;
+
+        Replica(Target target) {
+            this.target = target;
+        }
+    }
+
+    private final List<Replica> replicas;
+    private final DataSource primary;
+    private final AtomicInteger next = new AtomicInteger();
+    private final Counter fallbacks;
+
+    public ReadReplicaDataSource(List<Target> replicas, DataSource primary, MeterRegistry meterRegistry) {
+        this.replicas = replicas.stream().map(Replica::new).toList();
+        this.primary = primary;
+        for (Replica replica : this.replicas) {
+            Gauge.builder("datasource.replica.up", replica, r -> r.up ? 1 : 0)
+                    .description("Whether a read replica is receiving read-only transactions")
+                    .tag("target", replica.target.name())
+                    .register(meterRegistry);
+        }
+        this.fallbacks = Counter.builder("datasource.replica.fallbacks")
+                .description("Read-only connections taken from the primary because no replica was up")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            if (!replica.up) continue;
+            try {
+                return replica.target.dataSource().getConnection();
+            } catch (SQLException e) {
+                markDown(replica, e);
+            }
+        }
+        fallbacks.increment();
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Replica connections use the credentials of their pools");
+    }
+
+    @Scheduled(fixedDelayString = "${app.datasource.replica-check-interval-ms:5000}")
+    public void checkReplicas() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.target.dataSource().getConnection()) {
+                if (connection.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+                    markUp(replica);
+                } else {
+                    markDown(replica, null);
+                }
+            } catch (SQLException e) {
+                markDown(replica, e);
+            }
+        }
+    }
+
+    private static void markUp(Replica replica) {
+        if (!replica.up) {
+            replica.up = true;
+            log.info("Read replica {} is back up", replica.target.name());
+        }
+    }
+
+    private static void markDown(Replica replica, SQLException cause) {
+        if (replica.up) {
+            replica.up = false;
+            log.warn("Read replica {} is down, reads go to the other replicas or the primary: {}",
+                    replica.target.name(), cause == null ? "connection not valid" : cause.getMessage());
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        for (Replica replica : replicas) {
+            DataSource pool = replica.target.dataSource();
+            if (pool.isWrapperFor(AutoCloseable.class)) pool.unwrap(AutoCloseable.class).close();
+        }
+    }
+}
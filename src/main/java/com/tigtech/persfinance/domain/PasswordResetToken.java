@@ -3,10 +3,22 @@ package com.tigtech.persfinance.domain;
 import jakarta.persistence.*;
 import lombok.*;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
 import java.time.LocalDateTime;
+import java.util.Base64;
 
+/**
+ * Password reset token. Only the SHA-256 of the token sent by mail is stored, as a fixed 32-byte key,
+ * so a leaked table cannot be used to reset passwords.
+ */
 @Entity
-@Table(name = "password_reset_tokens")
+@Table(name = "password_reset_tokens", indexes = {
+        @Index(name = "idx_password_reset_tokens_expires_at", columnList = "expires_at"),
+        @Index(name = "idx_password_reset_tokens_user_id", columnList = "user_id")
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -14,12 +26,15 @@ import java.time.LocalDateTime;
 @Builder
 public class PasswordResetToken {
 
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final int TOKEN_BYTES = 32;
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @Column(nullable = false, unique = true)
-    private String token;
+    @Column(name = "token_hash", nullable = false, unique = true, length = 32)
+    private byte[] tokenHash;
 
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
@@ -34,15 +49,31 @@ public class PasswordResetToken {
 
     // Static factory to avoid direct dependence on Lombok's builder() in environments where
     // Lombok annotation processing might not run. Use PasswordResetToken.of(token,user,expiresAt)
-    // as a compact alternative to builder().
+    // as a compact alternative to builder(). The raw token is hashed here and not kept.
     public static PasswordResetToken of(String token, User user, LocalDateTime expiresAt) {
         PasswordResetToken prt = new PasswordResetToken();
-        prt.token = token;
+        prt.tokenHash = hash(token);
         prt.user = user;
         prt.expiresAt = expiresAt;
         return prt;
     }
 
+    /** A new random token (256 bits, URL-safe Base64) to be sent to the user. */
+    public static String generateToken() {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        RANDOM.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /** The value stored in {@code token_hash} for a token received from the user. */
+    public static byte[] hash(String token) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
     // Explicit getter for user to ensure method exists if Lombok isn't processed
     public User getUser() {
         return this.user;
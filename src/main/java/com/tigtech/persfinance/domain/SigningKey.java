@@ -0,0 +1,44 @@
+package com.tigtech.persfinance.domain;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+/**
+ * RSA key used to sign locally issued access tokens. Shared through the database so every instance signs with
+ * and publishes the same keys; the private half is stored AES-GCM encrypted.
+ */
+@Entity
+@Table(name = "signing_keys", indexes = @Index(name = "idx_signing_keys_expires_at", columnList = "expires_at"))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SigningKey {
+
+    // the JWS kid
+    @Id
+    @Column(length = 64)
+    private String id;
+
+    // public JWK (JSON), published at the JWKS endpoint
+    @Column(name = "public_jwk", nullable = false, length = 2048)
+    private String publicJwk;
+
+    // private JWK (JSON), AES-GCM encrypted
+    @Column(name = "encrypted_private_jwk", nullable = false, length = 8192)
+    private String encryptedPrivateJwk;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    // tokens are signed with it from here on; published before that so every instance already trusts it
+    @Column(name = "activates_at", nullable = false)
+    private Instant activatesAt;
+
+    // no longer signs nor verifies: the last tokens signed with it have expired
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
+}
@@ -2,18 +2,34 @@ package com.tigtech.persfinance.domain;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
+
 import java.time.LocalDateTime;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
+/**
+ * Users are read far more often than written, so they are kept in the Hibernate second-level cache: by id in
+ * {@value #CACHE_REGION}, and by email (the natural id) in {@value #EMAIL_CACHE_REGION}. Writes through the
+ * entity manager update or evict both; see {@code HibernateCacheConfig}.
+ */
 @Entity
-@Table(name = "users", uniqueConstraints = @UniqueConstraint(columnNames = "email"))
+@Table(name = "users", uniqueConstraints = @UniqueConstraint(columnNames = "email"),
+        indexes = @Index(name = "idx_users_photo_url", columnList = "photo_url"))
 @Getter
 @Setter
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = User.CACHE_REGION)
+@NaturalIdCache(region = User.EMAIL_CACHE_REGION)
 public class User {
 
+    public static final String CACHE_REGION = "users";
+    public static final String EMAIL_CACHE_REGION = "users-by-email";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -24,6 +40,7 @@ public class User {
     @Column(name = "last_name", nullable = false)
     private String lastName;
 
+    @NaturalId
     @Column(nullable = false, unique = true)
     private String email;
 
@@ -37,6 +54,10 @@ public class User {
     @Column(name = "provider_id")
     private String providerId;
 
+    // issuer of the tokens whose subject is providerId: subjects are only unique within one realm
+    @Column(name = "provider_issuer")
+    private String providerIssuer;
+
     @Column(name = "photo_url")
     private String photoUrl;
 
@@ -0,0 +1,21 @@
+package com.tigtech.persfinance.mail;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * Development transport used when no SMTP server is configured: messages are only logged.
+ */
+public class ConsoleMailTransport implements MailTransport {
+
+    private static final Logger log = LoggerFactory.getLogger(ConsoleMailTransport.class);
+
+    @Override
+    public void send(List<MailMessage> batch) {
+        for (MailMessage m : batch) {
+            log.info("Mail to {}: {}\n{}", m.to(), m.subject(), m.body());
+        }
+    }
+}
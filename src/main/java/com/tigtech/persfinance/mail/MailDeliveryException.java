@@ -0,0 +1,21 @@
+package com.tigtech.persfinance.mail;
+
+import java.util.List;
+
+/**
+ * Delivery failure for a batch. {@link #getFailed()} lists the messages that were not delivered
+ * (the whole batch when the transport cannot tell).
+ */
+public class MailDeliveryException extends RuntimeException {
+
+    private final List<MailMessage> failed;
+
+    public MailDeliveryException(String message, List<MailMessage> failed, Throwable cause) {
+        super(message, cause);
+        this.failed = List.copyOf(failed);
+    }
+
+    public List<MailMessage> getFailed() {
+        return failed;
+    }
+}
@@ -0,0 +1,204 @@
+package com.tigtech.persfinance.mail;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Delivers mail off the request path.
+ * <p>
+ * Messages go into a bounded in-memory queue ({@code app.mail.queue-capacity}); when it is full new messages are
+ * rejected rather than blocking the caller. A single worker takes up to {@code app.mail.batch-size} messages at a
+ * time and hands them to the {@link MailTransport} as one batch. Failed messages are retried with exponential
+ * backoff up to {@code app.mail.max-attempts}. The queue is not persistent: messages still queued when the
+ * application stops get one last delivery attempt during shutdown.
+ */
+@Component
+public class MailDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(MailDispatcher.class);
+
+    private static final Duration BASE_BACKOFF = Duration.ofSeconds(1);
+    private static final Duration MAX_BACKOFF = Duration.ofMinutes(5);
+    private static final long POLL_MILLIS = 200;
+
+    private final MailTransport transport;
+    private final BlockingQueue<Envelope> queue;
+    private final DelayQueue<Envelope> retries = new DelayQueue<>();
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    private final Timer deliveryLatency;
+    private final DistributionSummary batchSizes;
+    private final Counter sent;
+    private final Counter retried;
+    private final Counter failed;
+    private final Counter rejected;
+
+    public MailDispatcher(MailTransport transport,
+                          MeterRegistry meterRegistry,
+                          @Value("${app.mail.queue-capacity:1000}") int queueCapacity,
+                          @Value("${app.mail.batch-size:50}") int batchSize,
+                          @Value("${app.mail.max-attempts:5}") int maxAttempts) {
+        this.transport = transport;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = Math.max(1, batchSize);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.worker = new Thread(this::run, "mail-dispatcher");
+        this.worker.setDaemon(true);
+
+        Gauge.builder("mail.queue.size", queue, BlockingQueue::size)
+                .description("Messages waiting for their first delivery attempt")
+                .register(meterRegistry);
+        Gauge.builder("mail.retry.size", retries, DelayQueue::size)
+                .description("Messages waiting for a retry")
+                .register(meterRegistry);
+        this.deliveryLatency = Timer.builder("mail.delivery.latency")
+                .description("Time from enqueue to successful delivery")
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("mail.batch.size")
+                .description("Messages handed to the transport per batch")
+                .register(meterRegistry);
+        this.sent = outcomeCounter(meterRegistry, "sent");
+        this.retried = outcomeCounter(meterRegistry, "retry");
+        this.failed = outcomeCounter(meterRegistry, "failed");
+        this.rejected = outcomeCounter(meterRegistry, "rejected");
+    }
+
+    private static Counter outcomeCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("mail.messages")
+                .description("Mail messages by outcome")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        worker.start();
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        worker.interrupt();
+        worker.join(10_000);
+    }
+
+    /**
+     * Queues a message for delivery. Returns false (and drops the message) if the queue is full.
+     */
+    public boolean enqueue(MailMessage message) {
+        if (queue.offer(new Envelope(message, System.nanoTime(), 0, 0))) return true;
+        rejected.increment();
+        log.warn("Mail queue full, dropping message to {}", message.to());
+        return false;
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                List<Envelope> batch = nextBatch();
+                if (!batch.isEmpty()) deliver(batch);
+            } catch (InterruptedException e) {
+                if (!running) break;
+            } catch (RuntimeException e) {
+                log.error("Mail dispatcher loop failed", e);
+            }
+        }
+        // last attempt for whatever is still queued (retries included, regardless of their backoff)
+        List<Envelope> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        remaining.addAll(retries);
+        retries.clear();
+        for (int from = 0; from < remaining.size(); from += batchSize) {
+            deliver(remaining.subList(from, Math.min(from + batchSize, remaining.size())));
+        }
+    }
+
+    private List<Envelope> nextBatch() throws InterruptedException {
+        List<Envelope> batch = new ArrayList<>(batchSize);
+        retries.drainTo(batch, batchSize);
+        if (batch.size() < batchSize) {
+            if (batch.isEmpty()) {
+                Envelope first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) return batch;
+                batch.add(first);
+            }
+            queue.drainTo(batch, batchSize - batch.size());
+        }
+        return batch;
+    }
+
+    private void deliver(List<Envelope> batch) {
+        List<MailMessage> messages = batch.stream().map(Envelope::message).toList();
+        batchSizes.record(batch.size());
+        List<MailMessage> failedMessages;
+        RuntimeException error;
+        try {
+            transport.send(messages);
+            failedMessages = List.of();
+            error = null;
+        } catch (MailDeliveryException e) {
+            failedMessages = e.getFailed();
+            error = e;
+        } catch (RuntimeException e) {
+            failedMessages = messages;
+            error = e;
+        }
+
+        Map<MailMessage, Boolean> failedSet = new IdentityHashMap<>();
+        failedMessages.forEach(m -> failedSet.put(m, Boolean.TRUE));
+        long now = System.nanoTime();
+        for (Envelope envelope : batch) {
+            if (!failedSet.containsKey(envelope.message())) {
+                sent.increment();
+                deliveryLatency.record(now - envelope.enqueuedAt(), TimeUnit.NANOSECONDS);
+                continue;
+            }
+            int attempts = envelope.attempts() + 1;
+            if (attempts >= maxAttempts || !running) {
+                failed.increment();
+                log.error("Giving up mail to {} after {} attempts", envelope.message().to(), attempts, error);
+            } else {
+                retried.increment();
+                log.warn("Mail to {} failed (attempt {}), will retry: {}", envelope.message().to(), attempts, error.getMessage());
+                retries.add(new Envelope(envelope.message(), envelope.enqueuedAt(), attempts, now + backoff(attempts).toNanos()));
+            }
+        }
+    }
+
+    static Duration backoff(int attempts) {
+        long factor = 1L << Math.min(attempts - 1, 20);
+        return Duration.ofMillis(Math.min(BASE_BACKOFF.toMillis() * factor, MAX_BACKOFF.toMillis()));
+    }
+
+    private record Envelope(MailMessage message, long enqueuedAt, int attempts, long retryAt) implements Delayed {
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(retryAt - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(retryAt, ((Envelope) other).retryAt);
+        }
+    }
+}
@@ -0,0 +1,4 @@
+package com.tigtech.persfinance.mail;
+
+public record MailMessage(String to, String subject, String body) {
+}
@@ -0,0 +1,14 @@
+package com.tigtech.persfinance.mail;
+
+import java.util.List;
+
+/**
+ * Delivers a batch of messages, ideally over a single connection/session.
+ */
+public interface MailTransport {
+
+    /**
+     * @throws MailDeliveryException if some or all messages could not be delivered
+     */
+    void send(List<MailMessage> batch);
+}
@@ -0,0 +1,29 @@
+package com.tigtech.persfinance.mail;
+
+import org.springframework.stereotype.Service;
+
+/**
+ * Builds the application's emails and hands them to {@link MailDispatcher}; callers never wait for delivery.
+ */
+@Service
+public class QueuedEmailService implements EmailService {
+
+    private final MailDispatcher dispatcher;
+
+    public QueuedEmailService(MailDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    @Override
+    public void sendPasswordReset(String toEmail, String resetToken, String resetUrl) {
+        String body = """
+                A password reset was requested for %s.
+
+                Use this link to choose a new password (valid for 2 hours):
+                %s
+
+                If you did not request it, you can ignore this email.
+                """.formatted(toEmail, resetUrl);
+        dispatcher.enqueue(new MailMessage(toEmail, "Password reset", body));
+    }
+}
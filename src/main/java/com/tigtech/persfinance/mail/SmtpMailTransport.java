@@ -0,0 +1,53 @@
+package com.tigtech.persfinance.mail;
+
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sends each batch through {@link JavaMailSender#send(SimpleMailMessage...)}, which reuses one SMTP
+ * connection for the whole batch and reports per-message failures.
+ */
+public class SmtpMailTransport implements MailTransport {
+
+    private final JavaMailSender mailSender;
+    private final String from;
+
+    public SmtpMailTransport(JavaMailSender mailSender, String from) {
+        this.mailSender = mailSender;
+        this.from = from;
+    }
+
+    @Override
+    public void send(List<MailMessage> batch) {
+        SimpleMailMessage[] messages = new SimpleMailMessage[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            MailMessage m = batch.get(i);
+            SimpleMailMessage msg = new SimpleMailMessage();
+            msg.setFrom(from);
+            msg.setTo(m.to());
+            msg.setSubject(m.subject());
+            msg.setText(m.body());
+            messages[i] = msg;
+        }
+        try {
+            mailSender.send(messages);
+        } catch (MailSendException e) {
+            List<MailMessage> failed = new ArrayList<>();
+            if (e.getFailedMessages().isEmpty()) {
+                failed.addAll(batch);
+            } else {
+                for (int i = 0; i < messages.length; i++) {
+                    if (e.getFailedMessages().containsKey(messages[i])) failed.add(batch.get(i));
+                }
+            }
+            throw new MailDeliveryException("SMTP delivery failed: " + e.getMessage(), failed, e);
+        } catch (MailException e) {
+            throw new MailDeliveryException("SMTP delivery failed: " + e.getMessage(), batch, e);
+        }
+    }
+}
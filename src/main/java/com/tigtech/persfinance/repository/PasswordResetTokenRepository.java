@@ -1,13 +1,43 @@
 package com.tigtech.persfinance.repository;
 
 import com.tigtech.persfinance.domain.PasswordResetToken;
+import com.tigtech.persfinance.domain.User;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface PasswordResetTokenRepository extends JpaRepository<PasswordResetToken, Long> {
-    Optional<PasswordResetToken> findByToken(String token);
-}
 
+    Optional<PasswordResetToken> findByTokenHash(byte[] tokenHash);
+
+    /** Rows of {@code [tokenHash, expiresAt]} for the tokens expiring after {@code after}. */
+    @Query("select t.tokenHash, t.expiresAt from PasswordResetToken t where t.expiresAt > :after")
+    List<Object[]> findHashesExpiringAfter(@Param("after") LocalDateTime after);
+
+    @Modifying
+    @Query("delete from PasswordResetToken t where t.user = :user")
+    int deleteByUser(@Param("user") User user);
+
+    /**
+     * Expired tokens, oldest first; served from the expires_at index so the sweeper never scans the table.
+     */
+    @Query("select t from PasswordResetToken t where t.expiresAt < :now order by t.expiresAt")
+    List<PasswordResetToken> findExpired(@Param("now") LocalDateTime now, Limit limit);
+
+    @Modifying
+    @Query("delete from PasswordResetToken t where t.id in :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+
+    long countByExpiresAtGreaterThanEqual(LocalDateTime now);
+
+    long countByExpiresAtLessThan(LocalDateTime now);
+}
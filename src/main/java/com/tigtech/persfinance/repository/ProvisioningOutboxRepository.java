@@ -0,0 +1,42 @@
+package com.tigtech.persfinance.repository;
+
+import com.tigtech.persfinance.domain.ProvisioningOutboxEntry;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ProvisioningOutboxRepository extends JpaRepository<ProvisioningOutboxEntry, Long> {
+
+    /**
+     * Due entries, locked with SKIP LOCKED so several instances can drain the outbox without picking the same rows.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("select e from ProvisioningOutboxEntry e where e.status = 'PENDING' and e.nextAttemptAt <= :now order by e.id")
+    List<ProvisioningOutboxEntry> lockDue(@Param("now") LocalDateTime now, Limit limit);
+
+    /** Ids of the entries provisioned or given up on before {@code before}, oldest first. */
+    @Query("select e.id from ProvisioningOutboxEntry e where e.status <> 'PENDING' and e.processedAt < :before order by e.processedAt")
+    List<Long> findProcessedBefore(@Param("before") LocalDateTime before, Limit limit);
+
+    @Modifying
+    @Query("delete from ProvisioningOutboxEntry e where e.id in :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("select min(e.createdAt) from ProvisioningOutboxEntry e where e.status = 'PENDING'")
+    LocalDateTime findOldestPendingCreatedAt();
+
+    long countByStatus(ProvisioningOutboxEntry.Status status);
+}
@@ -0,0 +1,21 @@
+package com.tigtech.persfinance.repository;
+
+import com.tigtech.persfinance.domain.SigningKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface SigningKeyRepository extends JpaRepository<SigningKey, String> {
+
+    List<SigningKey> findByExpiresAtAfterOrderByActivatesAtDesc(Instant now);
+
+    @Modifying
+    @Query("delete from SigningKey k where k.expiresAt <= :now")
+    int deleteExpired(@Param("now") Instant now);
+}
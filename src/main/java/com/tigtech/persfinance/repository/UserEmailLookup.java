@@ -0,0 +1,11 @@
+package com.tigtech.persfinance.repository;
+
+import com.tigtech.persfinance.domain.User;
+
+import java.util.Optional;
+
+/** Lookup of users by email through the natural-id cache rather than a query. */
+public interface UserEmailLookup {
+
+    Optional<User> findByEmail(String email);
+}
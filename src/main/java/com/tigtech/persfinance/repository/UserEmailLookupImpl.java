@@ -0,0 +1,27 @@
+package com.tigtech.persfinance.repository;
+
+import com.tigtech.persfinance.domain.User;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.Session;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+/**
+ * A derived {@code findByEmail} query would always hit the database (and the query cache is invalidated by any
+ * write to users); a natural-id load resolves email to id from the {@value User#EMAIL_CACHE_REGION} region and
+ * the entity from {@value User#CACHE_REGION}, querying only on a miss.
+ */
+class UserEmailLookupImpl implements UserEmailLookup {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<User> findByEmail(String email) {
+        if (email == null) return Optional.empty();
+        return entityManager.unwrap(Session.class).bySimpleNaturalId(User.class).loadOptional(email);
+    }
+}
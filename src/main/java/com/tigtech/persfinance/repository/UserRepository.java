@@ -1,14 +1,88 @@
 package com.tigtech.persfinance.repository;
 
 import com.tigtech.persfinance.domain.User;
+import com.tigtech.persfinance.web.dto.UserResponse;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
-public interface UserRepository extends JpaRepository<User, Long> {
-    Optional<User> findByEmail(String email);
-    Optional<User> findByProviderAndProviderId(String provider, String providerId);
-}
+public interface UserRepository extends JpaRepository<User, Long>, UserEmailLookup {
+    int EXPORT_FETCH_SIZE = 500;
+
+    Optional<User> findByProviderAndProviderIssuerAndProviderId(String provider, String providerIssuer, String providerId);
+
+    /**
+     * Links a user registered here to its identity provider account, unless it is already linked to one. Updates
+     * only these columns; returns the number of rows updated.
+     */
+    @Transactional
+    @Modifying
+    @Query("""
+            update User u set u.provider = :provider, u.providerIssuer = :providerIssuer, u.providerId = :providerId,
+                u.updatedAt = local datetime
+            where u.id = :id and u.providerId is null""")
+    int linkProvider(@Param("id") Long id, @Param("provider") String provider,
+                     @Param("providerIssuer") String providerIssuer, @Param("providerId") String providerId);
+
+    /**
+     * The user as it is in the database, not as the second-level cache last saw it: on another instance it may have
+     * changed up to {@code app.cache.users.ttl-seconds} ago. For credential and {@code active} checks.
+     */
+    @Transactional(readOnly = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHE_MODE, value = "IGNORE"))
+    @Query("select u from User u where u.email = :email")
+    Optional<User> findByEmailBypassingCache(@Param("email") String email);
+
+    @Query("select u.email from User u where u.email in :emails")
+    List<String> findExistingEmails(@Param("emails") Collection<String> emails);
 
+    /** Rows of {@code [id, email]}. */
+    @Query("select u.id, u.email from User u where u.email in :emails")
+    List<Object[]> findIdsByEmails(@Param("emails") Collection<String> emails);
+
+    /** Rows of {@code [photoUrl, number of users]} for the given photo URLs that are referenced at all. */
+    @Query("select u.photoUrl, count(u) from User u where u.photoUrl in :urls group by u.photoUrl")
+    List<Object[]> countPhotoReferences(@Param("urls") Collection<String> urls);
+
+    /**
+     * Keyset page: users with id greater than {@code afterId}, ordered by id, selecting only the
+     * {@link UserResponse} columns (no entities are loaded into the persistence context). Read-only, so it runs on
+     * a read replica when there is one.
+     */
+    @Transactional(readOnly = true)
+    @Query("""
+            select new com.tigtech.persfinance.web.dto.UserResponse(
+                u.id, u.firstName, u.lastName, u.email, u.photoUrl, u.role, u.active)
+            from User u
+            where u.id > :afterId
+            order by u.id""")
+    List<UserResponse> findPageAfter(@Param("afterId") long afterId, Limit limit);
+
+    /**
+     * Forward-only cursor over users for exports. Must be consumed inside a read-only transaction and closed;
+     * rows are pulled from the database {@value #EXPORT_FETCH_SIZE} at a time.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + EXPORT_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("""
+            select u from User u
+            where (:active is null or u.active = :active)
+              and (:role is null or u.role = :role)
+            order by u.id""")
+    Stream<User> streamForExport(@Param("active") Boolean active, @Param("role") String role);
+}
@@ -0,0 +1,104 @@
+package com.tigtech.persfinance.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link JwtDecoder} that remembers verified tokens until they expire, so a client sending the same access token on
+ * every request pays for signature verification and claim validation once per token rather than once per request.
+ * <p>
+ * Entries are keyed by the SHA-256 of the token and dropped at its {@code exp}; tokens without {@code exp} and
+ * failed verifications are never cached. At most {@code maxEntries} tokens are kept: when full, expired entries are
+ * purged (at most once a second) and, if there are still no free slots, new tokens are verified but not cached.
+ * As with the plain decoder, a token stays accepted until it expires.
+ */
+public class CachingJwtDecoder implements JwtDecoder {
+
+    private static final long PURGE_INTERVAL_MILLIS = 1000;
+
+    private record Key(long a, long b, long c, long d) {}
+
+    private final JwtDecoder delegate;
+    private final int maxEntries;
+    private final Clock clock;
+    private final Map<Key, Jwt> cache = new ConcurrentHashMap<>();
+    private volatile long lastPurge;
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public CachingJwtDecoder(JwtDecoder delegate, MeterRegistry meterRegistry, int maxEntries, Clock clock) {
+        this.delegate = delegate;
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+        this.hits = lookupCounter(meterRegistry, "hit");
+        this.misses = lookupCounter(meterRegistry, "miss");
+        Gauge.builder("security.jwt.cache.size", cache, Map::size)
+                .description("Verified access tokens cached until they expire")
+                .register(meterRegistry);
+    }
+
+    private static Counter lookupCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("security.jwt.cache.requests")
+                .description("Access token decodes by cache result")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Jwt decode(String token) throws JwtException {
+        if (maxEntries <= 0 || token == null) return delegate.decode(token);
+
+        Key key = key(token);
+        Instant now = clock.instant();
+        Jwt cached = cache.get(key);
+        if (cached != null) {
+            if (current(cached, now) && cached.getTokenValue().equals(token)) {
+                hits.increment();
+                return cached;
+            }
+            cache.remove(key, cached);
+        }
+        misses.increment();
+
+        Jwt jwt = delegate.decode(token);
+        if (jwt.getExpiresAt() != null && current(jwt, now)) {
+            if (cache.size() >= maxEntries) purgeExpired(now);
+            if (cache.size() < maxEntries) cache.put(key, jwt);
+        }
+        return jwt;
+    }
+
+    private static boolean current(Jwt jwt, Instant now) {
+        return jwt.getExpiresAt().isAfter(now) && (jwt.getNotBefore() == null || !jwt.getNotBefore().isAfter(now));
+    }
+
+    private void purgeExpired(Instant now) {
+        long millis = now.toEpochMilli();
+        if (millis - lastPurge < PURGE_INTERVAL_MILLIS) return;
+        lastPurge = millis;
+        cache.values().removeIf(jwt -> !jwt.getExpiresAt().isAfter(now));
+    }
+
+    private static Key key(String token) {
+        try {
+            ByteBuffer hash = ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII)));
+            return new Key(hash.getLong(), hash.getLong(), hash.getLong(), hash.getLong());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.tigtech.persfinance.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tigtech.persfinance.domain.User;
+import com.tigtech.persfinance.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Maps the subject of an access token to the local user's id.
+ * <p>
+ * Tokens of the {@link LocalTokenIssuer} carry the id as their subject. For Keycloak tokens the user is found by
+ * {@code provider=keycloak}, {@code provider_issuer=iss} and {@code provider_id=sub} (a subject is only unique within
+ * its realm), else created from the token claims on first sight. A user
+ * registered here (and provisioned to Keycloak by the outbox) is linked to the subject by email, but only for tokens
+ * of the primary realm ({@code spring.security.oauth2.resourceserver.jwt.issuer-uri}) with {@code email_verified}:
+ * any other trusted realm could issue a token with someone else's email. The link is saved, so later requests find
+ * the user by subject. A token that can neither be linked nor provisioned, because its email belongs to another
+ * user, has no local user.
+ * <p>
+ * Mappings are kept in memory, so only a subject's first request costs queries. At most {@code max-entries}
+ * subjects are kept, evicting the least used ones, and a mapping unused for {@code idle-ttl-seconds} is dropped.
+ * Deleting a user drops its mappings.
+ */
+@Component
+public class JwtUserResolver {
+
+    private static final Logger log = LoggerFactory.getLogger(JwtUserResolver.class);
+
+    public static final String PROVIDER = "keycloak";
+
+    private record Key(String issuer, String subject) {}
+
+    private final UserRepository userRepository;
+    private final EntityManagerFactory entityManagerFactory;
+    private final String localIssuer;
+    private final String primaryIssuer;
+    private final Cache<Key, Long> ids;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter provisioned;
+
+    public JwtUserResolver(UserRepository userRepository,
+                           EntityManagerFactory entityManagerFactory,
+                           ObjectProvider<LocalTokenIssuer> localTokenIssuer,
+                           MeterRegistry meterRegistry,
+                           @Value("${spring.security.oauth2.resourceserver.jwt.issuer-uri}") String primaryIssuer,
+                           @Value("${app.security.user-mapping.max-entries:100000}") long maxEntries,
+                           @Value("${app.security.user-mapping.idle-ttl-seconds:3600}") long idleTtlSeconds) {
+        this.userRepository = userRepository;
+        this.entityManagerFactory = entityManagerFactory;
+        LocalTokenIssuer local = localTokenIssuer.getIfAvailable();
+        this.localIssuer = local == null ? null : local.getIssuer();
+        this.primaryIssuer = primaryIssuer;
+        this.ids = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterAccess(Duration.ofSeconds(idleTtlSeconds))
+                .build();
+
+        this.hits = lookupCounter(meterRegistry, "hit");
+        this.misses = lookupCounter(meterRegistry, "miss");
+        this.provisioned = Counter.builder("security.user.provisioned")
+                .description("Local users created on the first request of a new token subject")
+                .register(meterRegistry);
+        Gauge.builder("security.user.mapping.size", ids, Cache::estimatedSize)
+                .description("Token subjects whose local user id is cached")
+                .register(meterRegistry);
+    }
+
+    private static Counter lookupCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("security.user.mapping.requests")
+                .description("Token subject to local user lookups by cache result")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void evictOnDelete() {
+        EventListenerRegistry listeners = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry().getService(EventListenerRegistry.class);
+        listeners.appendListeners(EventType.POST_DELETE, (PostDeleteEventListener) event -> {
+            if (event.getEntity() instanceof User) ids.asMap().values().removeIf(event.getId()::equals);
+        });
+    }
+
+    /** The local user id for the token's subject, or {@code null} if it has none and none can be created. */
+    public Long resolve(Jwt jwt) {
+        String subject = jwt.getSubject();
+        String issuer = jwt.getClaimAsString("iss");
+        if (subject == null || issuer == null) return null;
+        if (localIssuer != null && localIssuer.equals(issuer)) return parseId(subject);
+
+        Key key = new Key(issuer, subject);
+        Long id = ids.getIfPresent(key);
+        if (id != null) {
+            hits.increment();
+            return id;
+        }
+        misses.increment();
+        id = findOrProvision(jwt, issuer, subject);
+        if (id != null) ids.put(key, id);
+        return id;
+    }
+
+    private Long findOrProvision(Jwt jwt, String issuer, String subject) {
+        Optional<User> linked = findLinked(issuer, subject);
+        if (linked.isPresent()) return linked.get().getId();
+
+        String email = jwt.getClaimAsString("email");
+        if (email == null || email.isBlank()) return null;
+        Optional<User> byEmail = userRepository.findByEmail(email);
+        if (byEmail.isPresent()) return link(byEmail.get(), jwt, issuer, subject);
+
+        try {
+            User user = userRepository.save(User.builder()
+                    .firstName(firstNonBlank(jwt.getClaimAsString("given_name"), jwt.getClaimAsString("preferred_username"), email))
+                    .lastName(Objects.requireNonNullElse(jwt.getClaimAsString("family_name"), ""))
+                    .email(email)
+                    .provider(PROVIDER)
+                    .providerIssuer(issuer)
+                    .providerId(subject)
+                    .build());
+            provisioned.increment();
+            log.info("Provisioned user {} for token subject {}", user.getId(), subject);
+            return user.getId();
+        } catch (DataIntegrityViolationException e) {
+            // a concurrent first request created it, or the email was registered meanwhile
+            return findLinked(issuer, subject).map(User::getId).orElse(null);
+        }
+    }
+
+    private Long link(User user, Jwt jwt, String issuer, String subject) {
+        if (!primaryIssuer.equals(issuer) || !Boolean.TRUE.equals(jwt.getClaimAsBoolean("email_verified"))) {
+            log.warn("Token subject {} of {} has the email of user {} but cannot be linked to it", subject, issuer, user.getId());
+            return null;
+        }
+        if (userRepository.linkProvider(user.getId(), PROVIDER, issuer, subject) == 1) {
+            log.info("Linked user {} to token subject {}", user.getId(), subject);
+            return user.getId();
+        }
+        // already linked, to this subject by a concurrent request or to another one
+        return findLinked(issuer, subject).map(User::getId).orElse(null);
+    }
+
+    private Optional<User> findLinked(String issuer, String subject) {
+        return userRepository.findByProviderAndProviderIssuerAndProviderId(PROVIDER, issuer, subject);
+    }
+
+    private static Long parseId(String subject) {
+        try {
+            return Long.valueOf(subject);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String firstNonBlank(String... values) {
+        for (String v : values) {
+            if (v != null && !v.isBlank()) return v;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,327 @@
+package com.tigtech.persfinance.security;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSSigner;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.tigtech.persfinance.domain.SigningKey;
+import com.tigtech.persfinance.domain.User;
+import com.tigtech.persfinance.repository.SigningKeyRepository;
+import com.tigtech.persfinance.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.crypto.encrypt.Encryptors;
+import org.springframework.security.crypto.encrypt.TextEncryptor;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtValidators;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Issues access tokens itself instead of asking Keycloak ({@code app.auth.token-issuer=local}): credentials are
+ * checked against the BCrypt hash in {@code users.password} and the token is an RS256 JWT with the same claims the
+ * API reads from Keycloak tokens ({@code realm_access.roles}, {@code preferred_username}, {@code email}).
+ * <p>
+ * Signing keys live in {@code signing_keys}, so all instances sign with and publish the same keys. A new key is
+ * generated every {@code key-rotation-hours} and published {@code 2 * key-refresh-ms} before it starts signing, so
+ * every instance (and every JWKS client honouring the Cache-Control of the JWKS endpoint) already trusts it by then.
+ * Old keys keep verifying until the last token signed with them has expired, then are deleted. Private keys are
+ * stored AES-GCM encrypted with {@code jwt.secret} (or {@code key-encryption-password}) and
+ * {@code key-encryption-salt}; startup fails while either is left at its development default.
+ */
+@Component
+@ConditionalOnProperty(name = "app.auth.token-issuer", havingValue = "local")
+public class LocalTokenIssuer {
+
+    private static final Logger log = LoggerFactory.getLogger(LocalTokenIssuer.class);
+
+    private static final int KEY_SIZE = 2048;
+    private static final Duration MIN_RELOAD_INTERVAL = Duration.ofSeconds(5);
+    private static final String DEV_SECRET = "change_me_in_dev";
+
+    /** Token of a successful login, in seconds as in an OAuth2 token response. */
+    public record IssuedToken(String accessToken, long expiresIn) {}
+
+    private record Keys(RSAKey signingKey, JWSSigner signer, Instant signUntil, JWKSet publicKeys) {
+        static final Keys EMPTY = new Keys(null, null, Instant.MIN, new JWKSet());
+    }
+
+    private final UserRepository userRepository;
+    private final SigningKeyRepository keyRepository;
+    private final PasswordHashingService passwordHashing;
+    private final TransactionTemplate tx;
+    private final TextEncryptor encryptor;
+    private final String issuer;
+    private final Duration tokenTtl;
+    private final Duration rotation;
+    private final Duration prepublish;
+    private final NimbusJwtDecoder decoder;
+
+    private volatile Keys keys = Keys.EMPTY;
+    private final AtomicLong lastReload = new AtomicLong(System.nanoTime() - MIN_RELOAD_INTERVAL.toNanos());
+    // a login for an unknown email still costs one hash, so response times do not reveal which emails exist
+    private volatile String unknownUserHash;
+
+    private final Counter succeeded;
+    private final Counter rejected;
+    private final Timer signTimer;
+
+    public LocalTokenIssuer(UserRepository userRepository,
+                            SigningKeyRepository keyRepository,
+                            PasswordHashingService passwordHashing,
+                            PlatformTransactionManager transactionManager,
+                            MeterRegistry meterRegistry,
+                            @Value("${app.auth.local.issuer}") String issuer,
+                            @Value("${jwt.expiration-ms:3600000}") long tokenTtlMillis,
+                            @Value("${app.auth.local.key-rotation-hours:24}") long rotationHours,
+                            @Value("${app.auth.local.key-refresh-ms:60000}") long refreshMillis,
+                            @Value("${app.auth.local.key-encryption-password:${jwt.secret}}") String encryptionPassword,
+                            @Value("${app.auth.local.key-encryption-salt:}") String encryptionSalt) {
+        if (encryptionPassword.isBlank() || DEV_SECRET.equals(encryptionPassword)) {
+            throw new IllegalStateException("Set JWT_SECRET or AUTH_LOCAL_KEY_ENCRYPTION_PASSWORD to encrypt the local signing keys");
+        }
+        if (!encryptionSalt.matches("(?:[0-9a-fA-F]{2}){8,}")) {
+            throw new IllegalStateException("Set AUTH_LOCAL_KEY_ENCRYPTION_SALT to at least 16 hex characters to encrypt the local signing keys");
+        }
+        this.userRepository = userRepository;
+        this.keyRepository = keyRepository;
+        this.passwordHashing = passwordHashing;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.encryptor = Encryptors.delux(encryptionPassword, encryptionSalt);
+        this.issuer = issuer;
+        this.tokenTtl = Duration.ofMillis(tokenTtlMillis);
+        this.rotation = Duration.ofHours(rotationHours);
+        this.prepublish = Duration.ofMillis(2 * refreshMillis);
+
+        JWKSource<SecurityContext> publicKeys = (selector, context) -> {
+            List<JWK> matches = selector.select(keys.publicKeys());
+            // another instance may have added a key since the last refresh
+            if (matches.isEmpty() && reloadAllowed()) matches = selector.select(reload(Instant.now()).publicKeys());
+            return matches;
+        };
+        this.decoder = NimbusJwtDecoder.withJwkSource(publicKeys).build();
+        this.decoder.setJwtValidator(JwtValidators.createDefaultWithIssuer(issuer));
+
+        this.succeeded = loginCounter(meterRegistry, "success");
+        this.rejected = loginCounter(meterRegistry, "invalid_credentials");
+        this.signTimer = Timer.builder("auth.local.sign.duration")
+                .description("Time taken to build and sign a locally issued access token")
+                .register(meterRegistry);
+        Gauge.builder("auth.local.signing.keys", this, i -> i.keys.publicKeys().size())
+                .description("Signing keys currently published at the local JWKS endpoint")
+                .register(meterRegistry);
+    }
+
+    private static Counter loginCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("auth.local.logins")
+                .description("Logins handled by the local token issuer")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        refresh(Instant.now());
+        unknownUserHash = passwordHashing.encode(UUID.randomUUID().toString());
+        log.info("Issuing access tokens locally as {} (signing key {})", issuer, keys.signingKey().getKeyID());
+    }
+
+    public String getIssuer() {
+        return issuer;
+    }
+
+    /** Verifies tokens of this issuer against the published keys, without any network call. */
+    public JwtDecoder decoder() {
+        return decoder;
+    }
+
+    /** Public halves of the current keys, for the JWKS endpoint. */
+    public JWKSet publicKeys() {
+        return keys.publicKeys();
+    }
+
+    public Duration keyRefreshInterval() {
+        return prepublish.dividedBy(2);
+    }
+
+    /**
+     * Checks the credentials and, if they match an active user, signs a token for them. The hash is computed on
+     * the password hashing pool; the returned future is empty for unknown users, wrong passwords and users without
+     * a local password or that are deactivated.
+     *
+     * @throws PasswordHashingRejectedException if the hashing queue is full
+     */
+    public CompletableFuture<Optional<IssuedToken>> login(String email, String password) {
+        // not from the user cache: a password reset or deactivation on another instance must apply right away
+        Optional<User> user = userRepository.findByEmailBypassingCache(email);
+        Optional<String> hash = user.map(User::getPassword).filter(p -> !p.isBlank());
+        return passwordHashing.matchesAsync(password, hash.orElse(unknownUserHash)).thenApply(matches -> {
+            if (!matches || hash.isEmpty() || !user.get().isActive()) {
+                rejected.increment();
+                return Optional.empty();
+            }
+            succeeded.increment();
+            return Optional.of(issue(user.get()));
+        });
+    }
+
+    IssuedToken issue(User user) {
+        return signTimer.record(() -> {
+            Instant now = Instant.now();
+            Keys current = keys;
+            if (!now.isBefore(current.signUntil())) current = refresh(now);
+
+            JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                    .issuer(issuer)
+                    .subject(String.valueOf(user.getId()))
+                    .jwtID(UUID.randomUUID().toString())
+                    .issueTime(Date.from(now))
+                    .expirationTime(Date.from(now.plus(tokenTtl)))
+                    .claim("typ", "Bearer")
+                    .claim("realm_access", Map.of("roles", List.of(realmRole(user.getRole()))))
+                    .claim("preferred_username", user.getEmail())
+                    .claim("email", user.getEmail())
+                    .claim("given_name", user.getFirstName())
+                    .claim("family_name", user.getLastName())
+                    .build();
+            SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256)
+                    .keyID(current.signingKey().getKeyID()).build(), claims);
+            try {
+                jwt.sign(current.signer());
+            } catch (JOSEException e) {
+                throw new IllegalStateException("Could not sign access token", e);
+            }
+            return new IssuedToken(jwt.serialize(), tokenTtl.toSeconds());
+        });
+    }
+
+    /** ROLE_USER -> user: the converter in {@link SecurityConfig} maps it back to ROLE_USER. */
+    private static String realmRole(String role) {
+        String name = role == null || role.isBlank() ? "user" : role;
+        if (name.startsWith("ROLE_")) name = name.substring("ROLE_".length());
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    @Scheduled(fixedDelayString = "${app.auth.local.key-refresh-ms:60000}",
+            initialDelayString = "${app.auth.local.key-refresh-ms:60000}")
+    public void refresh() {
+        try {
+            refresh(Instant.now());
+        } catch (RuntimeException ex) {
+            log.warn("Signing key refresh failed; keeping the current keys", ex);
+        }
+    }
+
+    /**
+     * Deletes expired keys, adds the next key when the newest one is due for rotation, and reloads the key set.
+     * With no key able to sign (first start, or no instance ran for longer than the rotation period) a key is
+     * generated that signs right away.
+     */
+    synchronized Keys refresh(Instant now) {
+        tx.executeWithoutResult(status -> keyRepository.deleteExpired(now));
+        List<SigningKey> stored = keyRepository.findByExpiresAtAfterOrderByActivatesAtDesc(now);
+        if (signingKey(stored, now) == null) {
+            stored = withNewKey(stored, now, now);
+        } else if (!stored.get(0).getActivatesAt().plus(rotation).minus(prepublish).isAfter(now)) {
+            stored = withNewKey(stored, now, now.plus(prepublish));
+        }
+        return load(stored, now);
+    }
+
+    private boolean reloadAllowed() {
+        long last = lastReload.get();
+        return System.nanoTime() - last >= MIN_RELOAD_INTERVAL.toNanos() && lastReload.compareAndSet(last, System.nanoTime());
+    }
+
+    private synchronized Keys reload(Instant now) {
+        return load(keyRepository.findByExpiresAtAfterOrderByActivatesAtDesc(now), now);
+    }
+
+    private Keys load(List<SigningKey> stored, Instant now) {
+        SigningKey signing = signingKey(stored, now);
+        if (signing == null) throw new IllegalStateException("No signing key available");
+        try {
+            List<JWK> published = new ArrayList<>(stored.size());
+            for (SigningKey key : stored) published.add(JWK.parse(key.getPublicJwk()));
+            RSAKey signingKey = RSAKey.parse(encryptor.decrypt(signing.getEncryptedPrivateJwk()));
+            Keys loaded = new Keys(signingKey, new RSASSASigner(signingKey), signUntil(signing), new JWKSet(published));
+            keys = loaded;
+            lastReload.set(System.nanoTime());
+            return loaded;
+        } catch (ParseException | JOSEException e) {
+            throw new IllegalStateException("Unreadable signing key " + signing.getId(), e);
+        }
+    }
+
+    /** The newest key that has been published long enough to sign and still outlives the tokens it signs. */
+    private SigningKey signingKey(List<SigningKey> stored, Instant now) {
+        for (SigningKey key : stored) {
+            if (!key.getActivatesAt().isAfter(now) && signUntil(key).isAfter(now)) return key;
+        }
+        return null;
+    }
+
+    private Instant signUntil(SigningKey key) {
+        return key.getExpiresAt().minus(tokenTtl);
+    }
+
+    private List<SigningKey> withNewKey(List<SigningKey> stored, Instant now, Instant activatesAt) {
+        RSAKey key;
+        try {
+            key = new RSAKeyGenerator(KEY_SIZE)
+                    .keyID(UUID.randomUUID().toString())
+                    .keyUse(KeyUse.SIGNATURE)
+                    .algorithm(JWSAlgorithm.RS256)
+                    .generate();
+        } catch (JOSEException e) {
+            throw new IllegalStateException("Could not generate signing key", e);
+        }
+        SigningKey entity = keyRepository.save(SigningKey.builder()
+                .id(key.getKeyID())
+                .publicJwk(key.toPublicJWK().toJSONString())
+                .encryptedPrivateJwk(encryptor.encrypt(key.toJSONString()))
+                .createdAt(now)
+                .activatesAt(activatesAt)
+                // signs until its successor takes over (with one prepublish period of slack), then verifies its tokens
+                .expiresAt(activatesAt.plus(rotation).plus(prepublish).plus(tokenTtl))
+                .build());
+        log.info("Generated signing key {}, signing from {}", entity.getId(), activatesAt);
+        List<SigningKey> updated = new ArrayList<>(stored.size() + 1);
+        updated.add(entity);
+        updated.addAll(stored);
+        return updated;
+    }
+}
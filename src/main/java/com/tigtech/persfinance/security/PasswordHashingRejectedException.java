@@ -0,0 +1,11 @@
+package com.tigtech.persfinance.security;
+
+/**
+ * Thrown when the password hashing pool is saturated; the request should be retried later.
+ */
+public class PasswordHashingRejectedException extends RuntimeException {
+
+    public PasswordHashingRejectedException() {
+        super("Password hashing capacity exceeded");
+    }
+}
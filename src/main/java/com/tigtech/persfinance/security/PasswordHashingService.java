@@ -0,0 +1,203 @@
+package com.tigtech.persfinance.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The application's {@link PasswordEncoder}: BCrypt executed on a dedicated, bounded pool so that
+ * bursts of registrations/resets cannot tie up every request thread burning CPU.
+ * <p>
+ * When the pool's queue is full callers get a {@link PasswordHashingRejectedException} (mapped to 429)
+ * instead of waiting. The BCrypt cost is calibrated at startup so one hash takes about
+ * {@code app.password-hashing.target-ms} on this host, unless {@code app.password-hashing.cost} is set.
+ */
+@Component
+public class PasswordHashingService implements PasswordEncoder {
+
+    private static final Logger log = LoggerFactory.getLogger(PasswordHashingService.class);
+
+    static final int MIN_COST = 10;
+    static final int MAX_COST = 16;
+
+    private final BCryptPasswordEncoder encoder;
+    private final int cost;
+    private final int threads;
+    private final ThreadPoolExecutor pool;
+
+    private final Timer encodeTimer;
+    private final Timer matchesTimer;
+    private final Counter rejected;
+
+    public PasswordHashingService(MeterRegistry meterRegistry,
+                                  @Value("${app.password-hashing.target-ms:250}") long targetMillis,
+                                  @Value("${app.password-hashing.cost:0}") int fixedCost,
+                                  @Value("${app.password-hashing.threads:0}") int threads,
+                                  @Value("${app.password-hashing.queue-capacity:64}") int queueCapacity) {
+        this.cost = fixedCost > 0 ? fixedCost : calibrate(targetMillis);
+        this.encoder = new BCryptPasswordEncoder(cost);
+        this.threads = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors());
+
+        AtomicInteger n = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(this.threads, this.threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                r -> {
+                    Thread t = new Thread(r, "password-hash-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.pool.prestartAllCoreThreads();
+
+        this.encodeTimer = hashTimer(meterRegistry, "encode");
+        this.matchesTimer = hashTimer(meterRegistry, "matches");
+        this.rejected = Counter.builder("password.hash.rejected")
+                .description("Password hashing requests rejected because the hashing queue was full")
+                .register(meterRegistry);
+        Gauge.builder("password.hash.queue", pool, p -> p.getQueue().size())
+                .description("Password hashing requests waiting for a hashing thread")
+                .register(meterRegistry);
+        Gauge.builder("password.hash.active", pool, ThreadPoolExecutor::getActiveCount)
+                .description("Password hashes currently being computed")
+                .register(meterRegistry);
+        Gauge.builder("password.hash.cost", () -> cost)
+                .description("BCrypt cost factor in use")
+                .register(meterRegistry);
+
+        log.info("Password hashing: BCrypt cost {}, {} threads, queue capacity {}", cost, this.threads, queueCapacity);
+    }
+
+    private static Timer hashTimer(MeterRegistry meterRegistry, String operation) {
+        return Timer.builder("password.hash.duration")
+                .description("Time spent computing BCrypt hashes (excluding queueing)")
+                .tag("operation", operation)
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdown();
+    }
+
+    public int getCost() {
+        return cost;
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return await(submit(() -> encodeTimer.record(() -> encoder.encode(rawPassword))));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return await(submit(() -> matchesTimer.record(() -> encoder.matches(rawPassword, encodedPassword))));
+    }
+
+    /**
+     * {@link #matches} without waiting: the returned future completes on a hashing thread, so an async caller
+     * does not hold its own thread for the duration of the hash.
+     *
+     * @throws PasswordHashingRejectedException if the hashing queue is full
+     */
+    public CompletableFuture<Boolean> matchesAsync(CharSequence rawPassword, String encodedPassword) {
+        try {
+            return CompletableFuture.supplyAsync(() -> matchesTimer.record(() -> encoder.matches(rawPassword, encodedPassword)), pool);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new PasswordHashingRejectedException();
+        }
+    }
+
+    /** True if {@code encodedPassword} was produced with a lower cost than the current one. */
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return encoder.upgradeEncoding(encodedPassword);
+    }
+
+    /**
+     * Hashes many passwords for batch jobs. Submits at most one hash per hashing thread at a time, so a batch
+     * shares the pool with interactive requests without filling its queue and causing their rejection; when the
+     * queue is already full, the hash runs on the calling thread instead.
+     */
+    public List<String> encodeAll(List<? extends CharSequence> rawPasswords) {
+        List<String> hashes = new ArrayList<>(rawPasswords.size());
+        for (int from = 0; from < rawPasswords.size(); from += threads) {
+            List<Future<String>> window = new ArrayList<>(threads);
+            for (CharSequence raw : rawPasswords.subList(from, Math.min(from + threads, rawPasswords.size()))) {
+                window.add(submitBlocking(() -> encodeTimer.record(() -> encoder.encode(raw))));
+            }
+            for (Future<String> f : window) hashes.add(await(f));
+        }
+        return hashes;
+    }
+
+    private <T> Future<T> submit(Callable<T> task) {
+        try {
+            return pool.submit(task);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new PasswordHashingRejectedException();
+        }
+    }
+
+    private <T> Future<T> submitBlocking(Callable<T> task) {
+        FutureTask<T> future = new FutureTask<>(task);
+        try {
+            pool.execute(future);
+        } catch (RejectedExecutionException e) {
+            if (pool.isShutdown()) throw new IllegalStateException("Password hashing pool is shut down", e);
+            // queue full of interactive requests: the batch hashes on its own thread rather than taking their place
+            future.run();
+        }
+        return future;
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while hashing password", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        }
+    }
+
+    /**
+     * Picks the highest cost whose estimated hash time stays within {@code targetMillis}, never below
+     * {@value #MIN_COST}; each cost step doubles the work, so one measurement at a known cost is enough.
+     */
+    static int calibrate(long targetMillis) {
+        BCryptPasswordEncoder probe = new BCryptPasswordEncoder(MIN_COST);
+        probe.encode("calibration-warmup");
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            probe.encode("calibration-password");
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        double millisAtCost = best / 1_000_000.0;
+        int cost = MIN_COST;
+        while (cost < MAX_COST && millisAtCost * 2 <= targetMillis) {
+            millisAtCost *= 2;
+            cost++;
+        }
+        log.info("Calibrated BCrypt cost {} (~{} ms per hash, target {} ms)", cost, Math.round(millisAtCost), targetMillis);
+        return cost;
+    }
+}
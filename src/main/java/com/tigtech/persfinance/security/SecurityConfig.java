@@ -1,5 +1,8 @@
 package com.tigtech.persfinance.security;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.convert.converter.Converter;
@@ -10,20 +13,23 @@ import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.oauth2.jwt.Jwt;
-import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
 import org.springframework.security.web.SecurityFilterChain;
 
+import java.time.Clock;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 @Configuration
 @EnableMethodSecurity
 public class SecurityConfig {
 
+    private static final int MAX_INTERNED_ROLE_SETS = 1024;
+
     /**
      * Interface “truque” do Baeldung para ajudar com generics no DI.
      * Não tem corpo. Não tem @Bean.
@@ -33,44 +39,85 @@ public class SecurityConfig {
     /**
      * Lê roles do Keycloak: realm_access.roles
      * e converte para authorities do Spring: ROLE_<role>
+     * <p>
+     * Os conjuntos de authorities ficam internados por lista de roles: tokens com as mesmas roles
+     * (quase todos) recebem a mesma lista imutável, sem re-alocar a cada request.
      */
-    @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
-    }
-    
     @Bean
     AuthoritiesConverter realmRolesAuthoritiesConverter() {
+        Map<List<?>, List<GrantedAuthority>> interned = new ConcurrentHashMap<>();
         return claims -> {
-            Object realmAccessObj = claims.get("realm_access");
-            if (!(realmAccessObj instanceof Map<?, ?> realmAccess)) return List.of();
-
-            Object rolesObj = realmAccess.get("roles");
-            if (!(rolesObj instanceof Collection<?> roles)) return List.of();
-
-            return roles.stream()
-                    .filter(r -> r != null)
-                    .map(Object::toString)
-                    .map(String::trim)
-                    .filter(s -> !s.isBlank())
-                    .map(role -> new SimpleGrantedAuthority("ROLE_" + role.toUpperCase()))
-                    .map(GrantedAuthority.class::cast)
-                    .toList();
+            Collection<?> roles = realmRoles(claims);
+            if (roles == null) return List.of();
+            if (!(roles instanceof List<?> list) || hasNull(list)) return toAuthorities(roles);
+
+            List<GrantedAuthority> authorities = interned.get(list);
+            if (authorities != null) return authorities;
+            authorities = toAuthorities(list);
+            if (interned.size() < MAX_INTERNED_ROLE_SETS) interned.putIfAbsent(List.copyOf(list), authorities);
+            return authorities;
         };
     }
 
+    // contains(null) throws NPE on immutable lists (List.of), which reject null elements
+    private static boolean hasNull(List<?> list) {
+        for (Object o : list) {
+            if (o == null) return true;
+        }
+        return false;
+    }
+
+    /** realm_access.roles, ou null se o token não tiver. */
+    static Collection<?> realmRoles(Map<String, Object> claims) {
+        Object realmAccessObj = claims.get("realm_access");
+        if (!(realmAccessObj instanceof Map<?, ?> realmAccess)) return null;
+
+        Object rolesObj = realmAccess.get("roles");
+        return rolesObj instanceof Collection<?> roles ? roles : null;
+    }
+
+    static List<GrantedAuthority> toAuthorities(Collection<?> roles) {
+        return roles.stream()
+                .filter(r -> r != null)
+                .map(Object::toString)
+                .map(String::trim)
+                .filter(s -> !s.isBlank())
+                .map(role -> new SimpleGrantedAuthority("ROLE_" + role.toUpperCase()))
+                .map(GrantedAuthority.class::cast)
+                .toList();
+    }
+
     /**
-     * Adapter do Spring: usa o AuthoritiesConverter para produzir authorities a partir do Jwt.
+     * Adapter do Spring: usa o AuthoritiesConverter para produzir authorities a partir do Jwt,
+     * e o {@link JwtUserResolver} para o principal com o id do usuário local (principal.id).
      */
     @Bean
-    Converter<Jwt, AbstractAuthenticationToken> jwtAuthenticationConverter(AuthoritiesConverter authoritiesConverter) {
-        JwtAuthenticationConverter converter = new JwtAuthenticationConverter();
-        converter.setJwtGrantedAuthoritiesConverter(jwt -> authoritiesConverter.convert(jwt.getClaims()));
-        return converter;
+    Converter<Jwt, AbstractAuthenticationToken> jwtAuthenticationConverter(AuthoritiesConverter authoritiesConverter,
+                                                                           JwtUserResolver userResolver) {
+        return userJwtAuthenticationConverter(authoritiesConverter, userResolver::resolve);
     }
 
+    static Converter<Jwt, AbstractAuthenticationToken> userJwtAuthenticationConverter(AuthoritiesConverter authoritiesConverter,
+                                                                                      Function<Jwt, Long> userIds) {
+        return jwt -> new UserJwtAuthenticationToken(jwt, authoritiesConverter.convert(jwt.getClaims()),
+                new UserPrincipal(userIds.apply(jwt), jwt.getSubject()));
+    }
 
-
+    /**
+     * Decoder dos issuers confiáveis (um por realm do Keycloak, ver {@link TrustedIssuers}),
+     * com cache dos tokens já verificados até o exp.
+     * Com app.auth.token-issuer=local, os tokens emitidos por esta aplicação também são aceitos,
+     * verificados com as chaves locais sem passar pela rede.
+     */
+    @Bean
+    JwtDecoder cachingJwtDecoder(TrustedIssuers trustedIssuers,
+                                 ObjectProvider<LocalTokenIssuer> localTokenIssuer,
+                                 @Value("${app.security.jwt-cache.max-entries:10000}") int maxEntries,
+                                 MeterRegistry meterRegistry) {
+        localTokenIssuer.ifAvailable(local -> trustedIssuers.trust(local.getIssuer(), local.decoder()));
+        JwtDecoder issuerDecoder = trustedIssuers::decode;
+        return new CachingJwtDecoder(issuerDecoder, meterRegistry, maxEntries, Clock.systemUTC());
+    }
 
     /**
      * SecurityFilterChain do Resource Server com JWT + stateless.
@@ -107,6 +154,16 @@ public class SecurityConfig {
                         "/actuator/mappings"
                 ).permitAll()
 
+                // Descoberta e chaves públicas do emissor local (app.auth.token-issuer=local)
+                .requestMatchers(HttpMethod.GET,
+                        "/.well-known/openid-configuration",
+                        "/.well-known/jwks.json"
+                ).permitAll()
+
+                // Content-addressed photos: the URL is the content hash, so they are served without authentication
+                .requestMatchers(HttpMethod.GET, "/uploads/blobs/**").permitAll()
+                .requestMatchers(HttpMethod.HEAD, "/uploads/blobs/**").permitAll()
+
                 // Protected
                 .requestMatchers(HttpMethod.GET, "/api/auth/me").authenticated()
 
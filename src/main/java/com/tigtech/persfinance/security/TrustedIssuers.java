@@ -0,0 +1,272 @@
+package com.tigtech.persfinance.security;
+
+import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.jwk.JWKMatcher;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.jwk.source.JWKSourceBuilder;
+import com.nimbusds.jose.jwk.source.RateLimitReachedException;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jose.util.Resource;
+import com.nimbusds.jose.util.ResourceRetriever;
+import com.nimbusds.jwt.JWTParser;
+import com.tigtech.persfinance.service.KeycloakHttpClient;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.JwtValidators;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Verifies access tokens from any of the trusted issuers ({@code app.security.jwt.trusted-issuers}, e.g. one per
+ * Keycloak realm). The token's {@code iss} picks the issuer; tokens from other issuers are rejected before any
+ * network call.
+ * <p>
+ * Each issuer gets its own decoder, created on first use from OIDC discovery, or ahead of time by a background
+ * prefetch at startup so the first requests do not wait for discovery and the JWKS download. Keys are cached for
+ * {@code jwks-cache-ttl-seconds} and refreshed in the background {@code jwks-refresh-ahead-seconds} before they
+ * expire, so key rotation is picked up without a request ever waiting for it. A token signed with an unknown
+ * {@code kid} triggers a refetch, at most once per {@code jwks-min-refetch-interval-seconds} per issuer, so a
+ * flood of forged {@code kid}s cannot turn into a flood of JWKS requests. A failed discovery is retried no sooner
+ * than the same interval.
+ * <p>
+ * Tokens issued by this application itself ({@link LocalTokenIssuer}) are verified in-process, with the issuer's own
+ * key set, see {@link #trust(String, JwtDecoder)}.
+ */
+@Component
+public class TrustedIssuers {
+
+    private static final Logger log = LoggerFactory.getLogger(TrustedIssuers.class);
+
+    private static final Duration JWKS_REFRESH_TIMEOUT = Duration.ofSeconds(15);
+
+    private final KeycloakHttpClient httpClient;
+    // trust() may add an issuer while the prefetch thread iterates
+    private final Map<String, Issuer> issuers = new ConcurrentHashMap<>();
+    private final boolean prefetch;
+    private final Duration cacheTtl;
+    private final Duration refreshAhead;
+    private final Duration minRefetchInterval;
+    private final ResourceRetriever retriever;
+
+    private final Counter untrusted;
+    private final Counter malformed;
+
+    public TrustedIssuers(KeycloakHttpClient httpClient,
+                          MeterRegistry meterRegistry,
+                          @Value("${app.security.jwt.trusted-issuers}") List<String> trustedIssuers,
+                          @Value("${app.security.jwt.prefetch:true}") boolean prefetch,
+                          @Value("${app.security.jwt.jwks-cache-ttl-seconds:300}") long cacheTtlSeconds,
+                          @Value("${app.security.jwt.jwks-refresh-ahead-seconds:30}") long refreshAheadSeconds,
+                          @Value("${app.security.jwt.jwks-min-refetch-interval-seconds:30}") long minRefetchSeconds) {
+        this.httpClient = httpClient;
+        this.prefetch = prefetch;
+        this.cacheTtl = Duration.ofSeconds(cacheTtlSeconds);
+        this.refreshAhead = Duration.ofSeconds(refreshAheadSeconds);
+        this.minRefetchInterval = Duration.ofSeconds(minRefetchSeconds);
+        this.retriever = this::retrieve;
+        for (String issuer : trustedIssuers) {
+            String uri = issuer.trim();
+            if (!uri.isEmpty()) issuers.put(uri, new Issuer(uri));
+        }
+        if (issuers.isEmpty()) throw new IllegalStateException("app.security.jwt.trusted-issuers is empty");
+
+        this.untrusted = rejectedCounter(meterRegistry, "untrusted_issuer");
+        this.malformed = rejectedCounter(meterRegistry, "malformed");
+        Gauge.builder("security.jwt.issuers.ready", issuers, m -> m.values().stream().filter(i -> i.decoder != null).count())
+                .description("Trusted issuers whose discovery document and keys have been loaded")
+                .register(meterRegistry);
+        log.info("Trusting access tokens from {}", issuers.keySet());
+    }
+
+    private static Counter rejectedCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("security.jwt.rejected")
+                .description("Access tokens rejected before signature verification")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Trusts {@code uri} with an already built decoder instead of discovery. Called while the context starts,
+     * before any token is decoded.
+     */
+    void trust(String uri, JwtDecoder decoder) {
+        issuers.put(uri, new Issuer(uri, decoder));
+        log.info("Trusting access tokens from {} (verified in-process)", uri);
+    }
+
+    @PostConstruct
+    void startPrefetch() {
+        if (!prefetch) return;
+        // overlaps with the rest of startup; requests arriving before it is done just initialize on demand
+        Thread thread = new Thread(this::prefetchAll, "jwks-prefetch");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void prefetchAll() {
+        for (Issuer issuer : issuers.values()) {
+            try {
+                issuer.decoder();
+            } catch (RuntimeException e) {
+                log.warn("Could not prefetch keys for {}: {}", issuer.uri, e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    void close() {
+        for (Issuer issuer : issuers.values()) issuer.close();
+    }
+
+    /**
+     * Verifies the token with the decoder of the issuer it claims.
+     *
+     * @throws BadJwtException if it is malformed, from an untrusted issuer, or invalid
+     * @throws JwtException if the issuer's keys cannot be loaded
+     */
+    public Jwt decode(String token) throws JwtException {
+        String iss;
+        try {
+            iss = JWTParser.parse(token).getJWTClaimsSet().getIssuer();
+        } catch (ParseException e) {
+            malformed.increment();
+            throw new BadJwtException("Malformed token: " + e.getMessage(), e);
+        }
+        Issuer issuer = iss == null ? null : issuers.get(iss);
+        if (issuer == null) {
+            untrusted.increment();
+            throw new BadJwtException("Untrusted issuer: " + iss);
+        }
+        try {
+            return issuer.decoder().decode(token);
+        } catch (JwtException e) {
+            // an unknown kid within the refetch interval: the token is invalid, not the key source broken
+            if (!(e instanceof BadJwtException) && e.getCause() instanceof RateLimitReachedException) {
+                throw new BadJwtException("No signing key matches the token", e);
+            }
+            throw e;
+        }
+    }
+
+    /** JWKS downloads go through the Keycloak client: same timeouts, HTTP/2 and per-call metrics. */
+    private Resource retrieve(URL url) throws IOException {
+        KeycloakHttpClient.Response response = await(httpClient.get("jwks", toUri(url), null));
+        if (!response.is2xx()) throw new IOException("JWKS request to " + url + " failed with status " + response.status());
+        return new Resource(response.body(), "application/json");
+    }
+
+    private static KeycloakHttpClient.Response await(CompletableFuture<KeycloakHttpClient.Response> call) throws IOException {
+        try {
+            return call.join();
+        } catch (CompletionException e) {
+            throw new IOException(e.getCause() != null ? e.getCause().getMessage() : e.getMessage(), e.getCause());
+        }
+    }
+
+    private static URI toUri(URL url) throws IOException {
+        try {
+            return url.toURI();
+        } catch (URISyntaxException e) {
+            throw new IOException("Invalid URL " + url, e);
+        }
+    }
+
+    private final class Issuer {
+
+        final String uri;
+        volatile JwtDecoder decoder;
+        private JWKSource<SecurityContext> keys;
+        private long retryAt;
+
+        Issuer(String uri) {
+            this.uri = uri;
+        }
+
+        Issuer(String uri, JwtDecoder decoder) {
+            this.uri = uri;
+            this.decoder = decoder;
+        }
+
+        JwtDecoder decoder() {
+            JwtDecoder current = decoder;
+            if (current != null) return current;
+            synchronized (this) {
+                if (decoder != null) return decoder;
+                if (System.nanoTime() - retryAt < 0) throw new JwtException("Keys for " + uri + " are not available yet");
+                try {
+                    decoder = create();
+                    return decoder;
+                } catch (IOException | RuntimeException e) {
+                    retryAt = System.nanoTime() + minRefetchInterval.toNanos();
+                    throw new JwtException("Could not load keys for " + uri + ": " + e.getMessage(), e);
+                }
+            }
+        }
+
+        private NimbusJwtDecoder create() throws IOException {
+            String jwksUri = discoverJwksUri();
+            keys = JWKSourceBuilder.<SecurityContext>create(new URL(jwksUri), retriever)
+                    .cache(cacheTtl.toMillis(), JWKS_REFRESH_TIMEOUT.toMillis())
+                    .refreshAheadCache(refreshAhead.toMillis(), true)
+                    .rateLimited(minRefetchInterval.toMillis())
+                    .build();
+            try {
+                // download the keys now rather than on the first token
+                keys.get(new JWKSelector(new JWKMatcher.Builder().build()), null);
+            } catch (KeySourceException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+            NimbusJwtDecoder created = NimbusJwtDecoder.withJwkSource(keys).build();
+            created.setJwtValidator(JwtValidators.createDefaultWithIssuer(uri));
+            log.info("Loaded signing keys for {} from {}", uri, jwksUri);
+            return created;
+        }
+
+        private String discoverJwksUri() throws IOException {
+            KeycloakHttpClient.Response response = await(httpClient.get("oidc_discovery",
+                    URI.create(uri.replaceAll("/$", "") + "/.well-known/openid-configuration"), null));
+            if (!response.is2xx()) throw new IOException("OIDC discovery failed with status " + response.status());
+            Map<?, ?> configuration = httpClient.readJson(response, Map.class);
+            if (!uri.equals(configuration.get("issuer"))) {
+                throw new IOException("Discovery document is for issuer " + configuration.get("issuer"));
+            }
+            Object jwksUri = configuration.get("jwks_uri");
+            if (!(jwksUri instanceof String s)) throw new IOException("Discovery document has no jwks_uri");
+            return s;
+        }
+
+        synchronized void close() {
+            if (keys instanceof Closeable closeable) {
+                try {
+                    closeable.close();
+                } catch (IOException e) {
+                    log.debug("Closing key source for {} failed", uri, e);
+                }
+            }
+        }
+    }
+}
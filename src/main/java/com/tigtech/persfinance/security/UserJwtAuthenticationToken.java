@@ -0,0 +1,23 @@
+package com.tigtech.persfinance.security;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+
+import java.util.Collection;
+
+/** A {@link JwtAuthenticationToken} whose principal is the {@link UserPrincipal} instead of the {@link Jwt}. */
+public class UserJwtAuthenticationToken extends JwtAuthenticationToken {
+
+    private final UserPrincipal principal;
+
+    public UserJwtAuthenticationToken(Jwt jwt, Collection<? extends GrantedAuthority> authorities, UserPrincipal principal) {
+        super(jwt, authorities, principal.subject());
+        this.principal = principal;
+    }
+
+    @Override
+    public UserPrincipal getPrincipal() {
+        return principal;
+    }
+}
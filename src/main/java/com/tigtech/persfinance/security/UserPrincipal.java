@@ -0,0 +1,17 @@
+package com.tigtech.persfinance.security;
+
+import org.springframework.security.core.AuthenticatedPrincipal;
+
+import java.io.Serializable;
+
+/**
+ * Principal of a request authenticated by an access token: the token's subject and the local {@code users.id} it
+ * maps to ({@code null} if it maps to none), so authorization rules can say {@code #id == principal.id}.
+ */
+public record UserPrincipal(Long id, String subject) implements AuthenticatedPrincipal, Serializable {
+
+    @Override
+    public String getName() {
+        return subject;
+    }
+}
@@ -1,9 +1,12 @@
 package com.tigtech.persfinance.service;
 
+import com.tigtech.persfinance.domain.User;
 import com.tigtech.persfinance.web.dto.ForgotPasswordRequest;
+import com.tigtech.persfinance.web.dto.RegisterRequest;
 import com.tigtech.persfinance.web.dto.ResetPasswordRequest;
 
 public interface AuthService {
+    User register(RegisterRequest request);
     void forgotPassword(ForgotPasswordRequest request);
     void resetPassword(ResetPasswordRequest request);
 }
@@ -0,0 +1,73 @@
+package com.tigtech.persfinance.service;
+
+/**
+ * Bloom filter over keys that are already uniformly distributed hashes (at least 16 bytes, e.g. SHA-256),
+ * so the k probe positions are derived from the key bytes by double hashing instead of rehashing the key.
+ * <p>
+ * One bit per position; keys cannot be removed, the filter is rebuilt instead. Adding a key twice is harmless.
+ * Writes must be serialized by the caller; reads may run concurrently with them and at worst miss a key being added.
+ */
+class BloomFilter {
+
+    private final long[] bits;
+    private final long size;
+    private final int hashFunctions;
+    private long entries;
+
+    BloomFilter(long expectedEntries, double falsePositiveRate) {
+        long n = Math.max(1, expectedEntries);
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.size = Math.min(Math.max(m, 64), (Integer.MAX_VALUE - 8) * 64L);
+        this.bits = new long[(int) ((size + 63) / 64)];
+        this.hashFunctions = Math.max(1, (int) Math.round((double) size / n * Math.log(2)));
+    }
+
+    void add(byte[] key) {
+        long h1 = readLong(key, 0);
+        long h2 = readLong(key, 8) | 1;
+        for (int i = 0; i < hashFunctions; i++) {
+            long idx = index(h1, h2, i);
+            bits[(int) (idx >>> 6)] |= 1L << idx;
+        }
+        entries++;
+    }
+
+    boolean mightContain(byte[] key) {
+        long h1 = readLong(key, 0);
+        long h2 = readLong(key, 8) | 1;
+        for (int i = 0; i < hashFunctions; i++) {
+            long idx = index(h1, h2, i);
+            if ((bits[(int) (idx >>> 6)] & (1L << idx)) == 0) return false;
+        }
+        return true;
+    }
+
+    /** Keys added, counting a key added twice twice. */
+    long entries() {
+        return entries;
+    }
+
+    /** Number of bits. */
+    long size() {
+        return size;
+    }
+
+    int hashFunctions() {
+        return hashFunctions;
+    }
+
+    /** Theoretical false positive rate for the current number of entries: (1 - e^(-kn/m))^k. */
+    double expectedFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-(double) hashFunctions * entries / size), hashFunctions);
+    }
+
+    private long index(long h1, long h2, int i) {
+        return Math.floorMod(h1 + i * h2, size);
+    }
+
+    private static long readLong(byte[] key, int offset) {
+        long v = 0;
+        for (int i = offset; i < offset + 8; i++) v = (v << 8) | (key[i] & 0xFF);
+        return v;
+    }
+}
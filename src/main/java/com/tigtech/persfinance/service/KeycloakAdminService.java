@@ -1,65 +1,106 @@
 package com.tigtech.persfinance.service;
 
 import com.tigtech.persfinance.security.AuthProvider;
-import com.tigtech.persfinance.web.dto.RegisterRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.http.*;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestClientException;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
 
+import java.net.URI;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
 
 @Service
 public class KeycloakAdminService {
 
     private static final Logger log = LoggerFactory.getLogger(KeycloakAdminService.class);
 
-    private final RestTemplate restTemplate;
+    private final KeycloakHttpClient httpClient;
     private final AuthProvider authProvider;
     private final KeycloakTokenService keycloakTokenService;
 
-    public KeycloakAdminService(RestTemplate restTemplate, AuthProvider authProvider, KeycloakTokenService keycloakTokenService) {
-        this.restTemplate = restTemplate;
+    public KeycloakAdminService(KeycloakHttpClient httpClient, AuthProvider authProvider, KeycloakTokenService keycloakTokenService) {
+        this.httpClient = httpClient;
         this.authProvider = authProvider;
         this.keycloakTokenService = keycloakTokenService;
     }
 
-    public void createUser(RegisterRequest request) {
-        String adminAccessToken = keycloakTokenService.getAdminAccessToken();
-
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        headers.setBearerAuth(adminAccessToken);
-
+    /**
+     * Creates the user in the realm. Completes with false if Keycloak reports that the username/email already exists.
+     */
+    public CompletableFuture<Boolean> createUserAsync(String email, String firstName, String lastName, String password) {
         Map<String, Object> credential = Map.of(
                 "type", "password",
-                "value", request.getPassword(),
+                "value", password,
                 "temporary", false
         );
 
         Map<String, Object> kcUser = Map.of(
-                "username", request.getEmail(),
-                "email", request.getEmail(),
-                "firstName", request.getFirstName(),
-                "lastName", request.getLastName(),
+                "username", email,
+                "email", email,
+                "firstName", firstName,
+                "lastName", lastName,
                 "enabled", true,
                 "emailVerified", false,
                 "credentials", List.of(credential)
         );
 
-        HttpEntity<Map<String, Object>> entity = new HttpEntity<>(kcUser, headers);
+        String uri = authProvider.getKcAdminBase() + "/users";
+        return withAdminToken("create user",
+                adminAccessToken -> httpClient.postJson("create_user", uri, adminAccessToken, kcUser))
+                .thenApply(resp -> {
+                    if (resp.status() == 409) return false;
+                    if (!resp.is2xx()) {
+                        throw new IllegalStateException("Keycloak user creation failed with status " + resp.status() + ": " + resp.body());
+                    }
+                    return true;
+                });
+    }
+
+    /**
+     * Exact username lookup, used to keep provisioning idempotent when a create is retried.
+     */
+    public CompletableFuture<Boolean> userExistsAsync(String username) {
+        URI uri = UriComponentsBuilder.fromUriString(authProvider.getKcAdminBase() + "/users")
+                .queryParam("username", username)
+                .queryParam("exact", true)
+                .queryParam("briefRepresentation", true)
+                .encode()
+                .build()
+                .toUri();
+
+        return withAdminToken("find user", adminAccessToken -> httpClient.get("find_user", uri, adminAccessToken))
+                .thenApply(resp -> {
+                    if (!resp.is2xx()) {
+                        throw new IllegalStateException("Keycloak user lookup failed with status " + resp.status());
+                    }
+                    List<?> users = httpClient.readJson(resp, List.class);
+                    return users != null && !users.isEmpty();
+                });
+    }
 
-        try {
-            ResponseEntity<Void> response = restTemplate.postForEntity(authProvider.getKcAdminBase() + "/users", entity, Void.class);
-            if (!response.getStatusCode().is2xxSuccessful()) {
-                throw new IllegalStateException("Keycloak user creation failed with status " + response.getStatusCode());
-            }
-        } catch (RestClientException ex) {
-            log.warn("Keycloak admin create user failed", ex);
-            throw new IllegalStateException("Keycloak admin create user failed: " + ex.getMessage(), ex);
-        }
+    /**
+     * Runs {@code call} with the cached admin token; if Keycloak answers 401 (token revoked on the Keycloak side)
+     * the token is dropped and the call is retried once with a fresh one. Transport failures complete the future
+     * with an {@link IllegalStateException}.
+     */
+    private CompletableFuture<KeycloakHttpClient.Response> withAdminToken(
+            String operation, Function<String, CompletableFuture<KeycloakHttpClient.Response>> call) {
+        return keycloakTokenService.getAdminAccessTokenAsync()
+                .thenCompose(adminAccessToken -> call.apply(adminAccessToken).thenCompose(resp -> {
+                    if (resp.status() != 401) return CompletableFuture.completedFuture(resp);
+                    log.info("Keycloak rejected cached admin token, retrying with a new one");
+                    keycloakTokenService.invalidate(adminAccessToken);
+                    return keycloakTokenService.getAdminAccessTokenAsync().thenCompose(call);
+                }))
+                .exceptionally(ex -> {
+                    Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                    if (cause instanceof IllegalStateException ise) throw ise;
+                    log.warn("Keycloak admin {} failed", operation, cause);
+                    throw new IllegalStateException("Keycloak admin " + operation + " failed: " + cause.getMessage(), cause);
+                });
     }
 }
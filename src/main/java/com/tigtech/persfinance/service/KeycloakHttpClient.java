@@ -0,0 +1,144 @@
+package com.tigtech.persfinance.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Non-blocking client for all Keycloak calls (token endpoint, admin API), on top of {@link HttpClient}.
+ * <p>
+ * HTTP/2 is negotiated when Keycloak supports it, so concurrent calls are multiplexed over one connection;
+ * otherwise it falls back to HTTP/1.1 with keep-alive. Calls never block the caller: every method returns
+ * a future that completes with the status and body for any HTTP status (4xx/5xx included) and completes
+ * exceptionally only on transport failures (connection refused, timeout, ...).
+ * <p>
+ * At most {@code keycloak.http.max-concurrent-requests} calls are in flight; further callers wait up to
+ * {@code keycloak.http.acquire-timeout-ms} for a slot and then fail like a timed-out call, so a slow Keycloak
+ * cannot pile up unbounded work. {@code keycloak.http.in-flight} and {@code keycloak.http.pending} show how close
+ * to the limit it runs.
+ */
+@Component
+public class KeycloakHttpClient {
+
+    public record Response(int status, String body) {
+
+        public boolean is2xx() {
+            return status >= 200 && status < 300;
+        }
+    }
+
+    private final HttpClient httpClient;
+    private final JsonMapper jsonMapper;
+    private final MeterRegistry meterRegistry;
+    private final Duration requestTimeout;
+    private final Semaphore permits;
+    private final int maxConcurrentRequests;
+    private final long acquireTimeoutMs;
+
+    public KeycloakHttpClient(JsonMapper jsonMapper,
+                              MeterRegistry meterRegistry,
+                              @Value("${keycloak.http.version:HTTP_2}") HttpClient.Version version,
+                              @Value("${keycloak.http.connect-timeout-ms:2000}") long connectTimeoutMs,
+                              @Value("${keycloak.http.read-timeout-ms:5000}") long readTimeoutMs,
+                              @Value("${keycloak.http.max-concurrent-requests:20}") int maxConcurrentRequests,
+                              @Value("${keycloak.http.acquire-timeout-ms:1000}") long acquireTimeoutMs) {
+        this.jsonMapper = jsonMapper;
+        this.meterRegistry = meterRegistry;
+        this.requestTimeout = Duration.ofMillis(readTimeoutMs);
+        this.httpClient = HttpClient.newBuilder()
+                .version(version)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+        this.maxConcurrentRequests = Math.max(1, maxConcurrentRequests);
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.permits = new Semaphore(this.maxConcurrentRequests, true);
+
+        Gauge.builder("keycloak.http.in-flight", permits, p -> this.maxConcurrentRequests - p.availablePermits())
+                .description("Calls to Keycloak currently in flight")
+                .register(meterRegistry);
+        Gauge.builder("keycloak.http.pending", permits, Semaphore::getQueueLength)
+                .description("Calls to Keycloak waiting for a free slot")
+                .register(meterRegistry);
+    }
+
+    public CompletableFuture<Response> postForm(String operation, String uri, Map<String, String> form) {
+        StringJoiner body = new StringJoiner("&");
+        form.forEach((k, v) -> body.add(URLEncoder.encode(k, StandardCharsets.UTF_8) + "=" + URLEncoder.encode(v, StandardCharsets.UTF_8)));
+        HttpRequest request = request(URI.create(uri), null)
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                .build();
+        return send(operation, request);
+    }
+
+    public CompletableFuture<Response> postJson(String operation, String uri, String bearerToken, Object payload) {
+        HttpRequest request = request(URI.create(uri), bearerToken)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(jsonMapper.writeValueAsBytes(payload)))
+                .build();
+        return send(operation, request);
+    }
+
+    public CompletableFuture<Response> get(String operation, URI uri, String bearerToken) {
+        return send(operation, request(uri, bearerToken).GET().build());
+    }
+
+    public <T> T readJson(Response response, Class<T> type) {
+        return jsonMapper.readValue(response.body(), type);
+    }
+
+    private HttpRequest.Builder request(URI uri, String bearerToken) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                .timeout(requestTimeout)
+                .header("Accept", "application/json");
+        if (bearerToken != null) builder.header("Authorization", "Bearer " + bearerToken);
+        return builder;
+    }
+
+    private CompletableFuture<Response> send(String operation, HttpRequest request) {
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                return CompletableFuture.failedFuture(new HttpTimeoutException(
+                        "No free slot for a Keycloak call within " + acquireTimeoutMs + " ms"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+        Timer.Sample sample = Timer.start(meterRegistry);
+        CompletableFuture<HttpResponse<String>> call;
+        try {
+            call = httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        return call
+                .whenComplete((response, ex) -> permits.release())
+                .whenComplete((response, ex) -> sample.stop(Timer.builder("keycloak.http.requests")
+                        .description("Calls to Keycloak by operation and response status")
+                        .tag("operation", operation)
+                        .tag("method", request.method())
+                        .tag("status", ex == null ? String.valueOf(response.statusCode()) : "IO_ERROR")
+                        .register(meterRegistry)))
+                .thenApply(response -> new Response(response.statusCode(), response.body()));
+    }
+}
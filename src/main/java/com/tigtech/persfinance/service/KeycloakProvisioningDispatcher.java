@@ -0,0 +1,254 @@
+package com.tigtech.persfinance.service;
+
+import com.tigtech.persfinance.domain.ProvisioningOutboxEntry;
+import com.tigtech.persfinance.domain.ProvisioningOutboxEntry.Status;
+import com.tigtech.persfinance.repository.ProvisioningOutboxRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drains the Keycloak provisioning outbox in batches.
+ * <p>
+ * A batch is claimed in a short transaction (rows locked with SKIP LOCKED and leased by pushing
+ * {@code next_attempt_at} forward), then the entries are sent to Keycloak outside of any transaction, with up to
+ * {@code app.outbox.concurrency} requests in flight (pipelined over the shared Keycloak client), and their outcomes
+ * are saved together in one transaction.
+ * Entries are idempotent: an existing Keycloak user with the same username counts as success.
+ * Failures are retried with exponential backoff until {@code app.outbox.max-attempts}.
+ * <p>
+ * Processed entries (provisioned or given up on) are deleted {@code app.outbox.retention-days} after they were
+ * processed, in batches of {@code app.outbox.batch-size} as the password reset token sweeper does.
+ */
+@Component
+public class KeycloakProvisioningDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(KeycloakProvisioningDispatcher.class);
+
+    private static final Duration BASE_BACKOFF = Duration.ofSeconds(5);
+    private static final Duration MAX_BACKOFF = Duration.ofMinutes(15);
+    private static final int MAX_BATCHES_PER_RUN = 20;
+    private static final int MAX_PURGE_BATCHES_PER_RUN = 100;
+
+    private final ProvisioningOutboxRepository repository;
+    private final KeycloakProvisioningOutbox outbox;
+    private final KeycloakAdminService keycloakAdminService;
+    private final TransactionTemplate tx;
+
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration lease;
+    private final int concurrency;
+    private final Duration retention;
+
+    private final AtomicLong lagSeconds = new AtomicLong();
+    private final AtomicLong pending = new AtomicLong();
+    private final Counter created;
+    private final Counter alreadyExisted;
+    private final Counter retried;
+    private final Counter failed;
+    private final Counter purged;
+
+    public KeycloakProvisioningDispatcher(ProvisioningOutboxRepository repository,
+                                          KeycloakProvisioningOutbox outbox,
+                                          KeycloakAdminService keycloakAdminService,
+                                          PlatformTransactionManager transactionManager,
+                                          MeterRegistry meterRegistry,
+                                          @Value("${app.outbox.batch-size:50}") int batchSize,
+                                          @Value("${app.outbox.max-attempts:10}") int maxAttempts,
+                                          @Value("${app.outbox.lease-seconds:60}") long leaseSeconds,
+                                          @Value("${app.outbox.concurrency:16}") int concurrency,
+                                          @Value("${app.outbox.retention-days:7}") long retentionDays) {
+        this.repository = repository;
+        this.outbox = outbox;
+        this.keycloakAdminService = keycloakAdminService;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.lease = Duration.ofSeconds(leaseSeconds);
+        this.concurrency = Math.max(1, concurrency);
+        this.retention = Duration.ofDays(retentionDays);
+
+        Gauge.builder("keycloak.provisioning.lag", lagSeconds, AtomicLong::get)
+                .description("Age of the oldest user still waiting to be provisioned in Keycloak")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        Gauge.builder("keycloak.provisioning.pending", pending, AtomicLong::get)
+                .description("Outbox entries waiting to be provisioned in Keycloak")
+                .register(meterRegistry);
+        this.created = dispatchCounter(meterRegistry, "created");
+        this.alreadyExisted = dispatchCounter(meterRegistry, "already_exists");
+        this.retried = dispatchCounter(meterRegistry, "retry");
+        this.failed = dispatchCounter(meterRegistry, "failed");
+        this.purged = Counter.builder("keycloak.provisioning.purged")
+                .description("Processed outbox entries deleted after the retention period")
+                .register(meterRegistry);
+    }
+
+    private static Counter dispatchCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("keycloak.provisioning.dispatch")
+                .description("Keycloak provisioning attempts by outcome")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${app.outbox.poll-interval-ms:2000}")
+    public void drain() {
+        try {
+            for (int i = 0; i < MAX_BATCHES_PER_RUN; i++) {
+                List<ProvisioningOutboxEntry> batch = claimBatch();
+                dispatchAll(batch);
+                if (batch.size() < batchSize || Thread.currentThread().isInterrupted()) break;
+            }
+        } finally {
+            refreshGauges();
+        }
+    }
+
+    List<ProvisioningOutboxEntry> claimBatch() {
+        return tx.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            List<ProvisioningOutboxEntry> due = repository.lockDue(now, Limit.of(batchSize));
+            // lease the rows: if this instance dies mid-batch they become due again after the lease
+            due.forEach(e -> e.setNextAttemptAt(now.plus(lease)));
+            return due;
+        });
+    }
+
+    private void dispatchAll(List<ProvisioningOutboxEntry> batch) {
+        if (batch.isEmpty()) return;
+        Semaphore permits = new Semaphore(concurrency);
+        CompletableFuture<?>[] inFlight = new CompletableFuture<?>[batch.size()];
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                permits.acquire();
+                inFlight[i] = dispatch(batch.get(i)).whenComplete((v, ex) -> permits.release());
+            }
+        } catch (InterruptedException e) {
+            // save what already came back; entries still in flight or not sent yet keep their lease and are
+            // picked up again once it expires
+            List<ProvisioningOutboxEntry> finished = new ArrayList<>();
+            for (int i = 0; i < batch.size() && inFlight[i] != null; i++) {
+                if (inFlight[i].isDone()) finished.add(batch.get(i));
+            }
+            if (!finished.isEmpty()) tx.executeWithoutResult(status -> repository.saveAll(finished));
+            Thread.currentThread().interrupt();
+            return;
+        }
+        CompletableFuture.allOf(inFlight).join();
+        tx.executeWithoutResult(status -> repository.saveAll(batch));
+    }
+
+    /**
+     * Sends one entry to Keycloak and records the outcome on the entry; the returned future never fails.
+     */
+    CompletableFuture<Void> dispatch(ProvisioningOutboxEntry entry) {
+        CompletableFuture<Boolean> newlyCreated;
+        try {
+            newlyCreated = keycloakAdminService.userExistsAsync(entry.getEmail())
+                    .thenCompose(exists -> exists
+                            ? CompletableFuture.completedFuture(false)
+                            : keycloakAdminService.createUserAsync(entry.getEmail(), entry.getFirstName(), entry.getLastName(),
+                                    outbox.decryptPassword(entry)));
+        } catch (RuntimeException ex) {
+            newlyCreated = CompletableFuture.failedFuture(ex);
+        }
+        return newlyCreated.handle((wasCreated, ex) -> {
+            if (ex == null) {
+                (wasCreated ? created : alreadyExisted).increment();
+                entry.setStatus(Status.DONE);
+                entry.setEncryptedPassword(null);
+                entry.setLastError(null);
+                entry.setProcessedAt(LocalDateTime.now());
+            } else {
+                recordFailure(entry, ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+            }
+            return null;
+        });
+    }
+
+    private void recordFailure(ProvisioningOutboxEntry entry, Throwable ex) {
+        int attempts = entry.getAttempts() + 1;
+        entry.setAttempts(attempts);
+        entry.setLastError(truncate(ex.getMessage()));
+        if (attempts >= maxAttempts) {
+            log.error("Giving up provisioning {} in Keycloak after {} attempts", entry.getEmail(), attempts, ex);
+            entry.setStatus(Status.FAILED);
+            entry.setEncryptedPassword(null);
+            entry.setProcessedAt(LocalDateTime.now());
+            failed.increment();
+        } else {
+            log.warn("Provisioning {} in Keycloak failed (attempt {}), will retry: {}", entry.getEmail(), attempts, ex.getMessage());
+            entry.setNextAttemptAt(LocalDateTime.now().plus(backoff(attempts)));
+            retried.increment();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.outbox.purge-interval-ms:3600000}",
+            initialDelayString = "${app.outbox.purge-initial-delay-ms:60000}")
+    public void purge() {
+        try {
+            long deleted = purgeProcessed();
+            if (deleted > 0) log.info("Deleted {} processed Keycloak provisioning outbox entries", deleted);
+        } catch (RuntimeException ex) {
+            log.warn("Keycloak provisioning outbox purge failed", ex);
+        }
+    }
+
+    long purgeProcessed() {
+        LocalDateTime before = LocalDateTime.now().minus(retention);
+        long total = 0;
+        for (int i = 0; i < MAX_PURGE_BATCHES_PER_RUN; i++) {
+            Integer deleted = tx.execute(status -> {
+                List<Long> ids = repository.findProcessedBefore(before, Limit.of(batchSize));
+                return ids.isEmpty() ? 0 : repository.deleteByIdIn(ids);
+            });
+            int n = deleted == null ? 0 : deleted;
+            total += n;
+            purged.increment(n);
+            if (n < batchSize) break;
+        }
+        return total;
+    }
+
+    static Duration backoff(int attempts) {
+        long factor = 1L << Math.min(attempts - 1, 16);
+        long millis = Math.min(BASE_BACKOFF.toMillis() * factor, MAX_BACKOFF.toMillis());
+        // +/- 20% jitter so entries that failed together do not retry together
+        long jitter = (long) (millis * 0.2 * (ThreadLocalRandom.current().nextDouble() * 2 - 1));
+        return Duration.ofMillis(millis + jitter);
+    }
+
+    private void refreshGauges() {
+        try {
+            LocalDateTime oldest = repository.findOldestPendingCreatedAt();
+            lagSeconds.set(oldest == null ? 0 : Math.max(0, Duration.between(oldest, LocalDateTime.now()).toSeconds()));
+            pending.set(repository.countByStatus(Status.PENDING));
+        } catch (RuntimeException ex) {
+            log.debug("Unable to refresh provisioning outbox gauges", ex);
+        }
+    }
+
+    private static String truncate(String message) {
+        if (message == null) return null;
+        return message.length() <= 1000 ? message : message.substring(0, 1000);
+    }
+}
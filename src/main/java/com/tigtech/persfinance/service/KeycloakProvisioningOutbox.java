@@ -0,0 +1,67 @@
+package com.tigtech.persfinance.service;
+
+import com.tigtech.persfinance.domain.ProvisioningOutboxEntry;
+import com.tigtech.persfinance.domain.User;
+import com.tigtech.persfinance.repository.ProvisioningOutboxRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.encrypt.Encryptors;
+import org.springframework.security.crypto.encrypt.TextEncryptor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+/**
+ * Write side of the Keycloak provisioning outbox.
+ * <p>
+ * Keycloak needs the plain initial password to create the credential, so it is kept AES-GCM encrypted
+ * in the outbox row until the dispatcher has provisioned the user or given up, then wiped. It is encrypted with
+ * {@code jwt.secret} (or {@code app.outbox.encryption-password}) and {@code app.outbox.encryption-salt}; startup
+ * fails while either is left at its development default.
+ */
+@Component
+public class KeycloakProvisioningOutbox {
+
+    private static final String DEV_SECRET = "change_me_in_dev";
+
+    private final ProvisioningOutboxRepository repository;
+    private final TextEncryptor encryptor;
+
+    public KeycloakProvisioningOutbox(ProvisioningOutboxRepository repository,
+                                      @Value("${app.outbox.encryption-password}") String encryptionPassword,
+                                      @Value("${app.outbox.encryption-salt:}") String encryptionSalt) {
+        if (encryptionPassword.isBlank() || DEV_SECRET.equals(encryptionPassword)) {
+            throw new IllegalStateException("Set JWT_SECRET or OUTBOX_ENCRYPTION_PASSWORD to encrypt the passwords in the provisioning outbox");
+        }
+        if (!encryptionSalt.matches("(?:[0-9a-fA-F]{2}){8,}")) {
+            throw new IllegalStateException("Set OUTBOX_ENCRYPTION_SALT to at least 16 hex characters to encrypt the passwords in the provisioning outbox");
+        }
+        this.repository = repository;
+        this.encryptor = Encryptors.delux(encryptionPassword, encryptionSalt);
+    }
+
+    /**
+     * Must run inside the transaction that inserts the user, so both rows commit (or roll back) together.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public ProvisioningOutboxEntry enqueue(User user, String rawPassword) {
+        return repository.save(newEntry(user, rawPassword, LocalDateTime.now()));
+    }
+
+    ProvisioningOutboxEntry newEntry(User user, String rawPassword, LocalDateTime now) {
+        return ProvisioningOutboxEntry.builder()
+                .userId(user.getId())
+                .email(user.getEmail())
+                .firstName(user.getFirstName())
+                .lastName(user.getLastName())
+                .encryptedPassword(encryptor.encrypt(rawPassword))
+                .nextAttemptAt(now)
+                .createdAt(now)
+                .build();
+    }
+
+    String decryptPassword(ProvisioningOutboxEntry entry) {
+        return entry.getEncryptedPassword() == null ? null : encryptor.decrypt(entry.getEncryptedPassword());
+    }
+}
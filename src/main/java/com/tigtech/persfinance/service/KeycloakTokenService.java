@@ -1,55 +1,229 @@
 package com.tigtech.persfinance.service;
 
 import com.tigtech.persfinance.security.AuthProvider;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.util.LinkedMultiValueMap;
-import org.springframework.util.MultiValueMap;
-import org.springframework.web.client.RestClientException;
-import org.springframework.web.client.RestTemplate;
 
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Obtains and caches the Keycloak admin access token (master realm).
+ * <p>
+ * The token is reused until it is about to expire. Inside the refresh window the cached token is still
+ * served while a single background refresh runs (refresh_token grant when available, password grant otherwise).
+ * Concurrent callers that find no usable token share one in-flight request instead of each hitting Keycloak.
+ */
 @Service
 public class KeycloakTokenService {
 
     private static final Logger log = LoggerFactory.getLogger(KeycloakTokenService.class);
 
-    private final RestTemplate restTemplate;
+    private final KeycloakHttpClient httpClient;
     private final AuthProvider authProvider;
+    private final Duration refreshSkew;
+    private final Clock clock;
 
-    public KeycloakTokenService(RestTemplate restTemplate, AuthProvider authProvider) {
-        this.restTemplate = restTemplate;
+    private final AtomicReference<CompletableFuture<AdminToken>> inFlight = new AtomicReference<>();
+    private volatile AdminToken cached;
+
+    private final Counter cacheHits;
+    private final Counter cacheMisses;
+    private final Counter passwordGrants;
+    private final Counter refreshGrants;
+    private final Counter grantFailures;
+
+    @Autowired
+    public KeycloakTokenService(KeycloakHttpClient httpClient,
+                                AuthProvider authProvider,
+                                MeterRegistry meterRegistry,
+                                @Value("${keycloak.admin-token.refresh-skew-seconds:30}") long refreshSkewSeconds) {
+        this(httpClient, authProvider, meterRegistry, Duration.ofSeconds(refreshSkewSeconds), Clock.systemUTC());
+    }
+
+    KeycloakTokenService(KeycloakHttpClient httpClient, AuthProvider authProvider,
+                         MeterRegistry meterRegistry, Duration refreshSkew, Clock clock) {
+        this.httpClient = httpClient;
         this.authProvider = authProvider;
+        this.refreshSkew = refreshSkew;
+        this.clock = clock;
+
+        this.cacheHits = Counter.builder("keycloak.admin.token.cache")
+                .description("Admin token lookups served from cache or by a fresh token request")
+                .tag("result", "hit").register(meterRegistry);
+        this.cacheMisses = Counter.builder("keycloak.admin.token.cache")
+                .description("Admin token lookups served from cache or by a fresh token request")
+                .tag("result", "miss").register(meterRegistry);
+        this.passwordGrants = Counter.builder("keycloak.admin.token.requests")
+                .description("Token requests sent to the Keycloak master realm")
+                .tag("grant", "password").register(meterRegistry);
+        this.refreshGrants = Counter.builder("keycloak.admin.token.requests")
+                .description("Token requests sent to the Keycloak master realm")
+                .tag("grant", "refresh_token").register(meterRegistry);
+        this.grantFailures = Counter.builder("keycloak.admin.token.failures")
+                .description("Failed token requests to the Keycloak master realm")
+                .register(meterRegistry);
     }
 
     public String getAdminAccessToken() {
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+        try {
+            return getAdminAccessTokenAsync().join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) throw cause;
+            throw ex;
+        }
+    }
+
+    public CompletableFuture<String> getAdminAccessTokenAsync() {
+        Instant now = clock.instant();
+        AdminToken token = cached;
+        if (token != null && now.isBefore(token.expiresAt())) {
+            cacheHits.increment();
+            if (!now.isBefore(token.expiresAt().minus(refreshSkew))) {
+                refreshInBackground();
+            }
+            return CompletableFuture.completedFuture(token.accessToken());
+        }
 
-        MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
-        form.add("grant_type", "password");
-        form.add("client_id", authProvider.getKcAdminClientId());
-        form.add("username", authProvider.getKcAdminUsername());
-        form.add("password", authProvider.getKcAdminPassword());
+        cacheMisses.increment();
+        return refresh().thenApply(AdminToken::accessToken);
+    }
 
-        HttpEntity<MultiValueMap<String, String>> entity = new HttpEntity<>(form, headers);
+    /**
+     * Drops the cached token, e.g. after Keycloak rejected it with 401 (session revoked, realm restarted).
+     */
+    public void invalidate(String accessToken) {
+        AdminToken token = cached;
+        if (token != null && token.accessToken().equals(accessToken)) {
+            cached = null;
+        }
+    }
 
+    private void refreshInBackground() {
+        if (inFlight.get() != null) return;
+        refresh().exceptionally(ex -> {
+            // the current token is still valid; the next caller after expiry retries
+            log.debug("Background refresh of Keycloak admin token failed", ex);
+            return null;
+        });
+    }
+
+    /**
+     * Single-flight: the first caller sends the token request, everybody else gets the same future.
+     */
+    private CompletableFuture<AdminToken> refresh() {
+        CompletableFuture<AdminToken> mine = new CompletableFuture<>();
+        CompletableFuture<AdminToken> existing = inFlight.compareAndExchange(null, mine);
+        if (existing != null) return existing;
+
+        // another refresh may have finished between our cache miss and winning the slot
+        AdminToken current = cached;
+        if (current != null && clock.instant().isBefore(current.expiresAt().minus(refreshSkew))) {
+            inFlight.set(null);
+            mine.complete(current);
+            return mine;
+        }
+
+        CompletableFuture<AdminToken> request;
         try {
-            ResponseEntity<Map> resp = restTemplate.postForEntity(authProvider.getKcAdminTokenUri(), entity, Map.class);
-            if (!resp.getStatusCode().is2xxSuccessful() || resp.getBody() == null || !resp.getBody().containsKey("access_token")) {
-                throw new IllegalStateException("Failed to obtain admin access token from Keycloak, status=" + resp.getStatusCode());
+            request = requestToken(cached);
+        } catch (RuntimeException ex) {
+            request = CompletableFuture.failedFuture(ex);
+        }
+        request.whenComplete((token, ex) -> {
+            if (ex == null) cached = token;
+            inFlight.set(null);
+            if (ex == null) {
+                mine.complete(token);
+            } else {
+                mine.completeExceptionally(ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
             }
-            return (String) resp.getBody().get("access_token");
-        } catch (RestClientException ex) {
-            log.warn("Keycloak admin token request failed", ex);
-            throw new IllegalStateException("Error obtaining admin access token from Keycloak: " + ex.getMessage(), ex);
+        });
+        return mine;
+    }
+
+    private CompletableFuture<AdminToken> requestToken(AdminToken previous) {
+        Instant now = clock.instant();
+        if (previous != null && previous.refreshToken() != null && now.isBefore(previous.refreshExpiresAt())) {
+            return tokenGrant(refreshTokenForm(previous.refreshToken()), refreshGrants)
+                    .exceptionallyCompose(ex -> {
+                        log.debug("Keycloak admin refresh_token grant failed, falling back to password grant", ex);
+                        return tokenGrant(passwordForm(), passwordGrants);
+                    });
         }
+        return tokenGrant(passwordForm(), passwordGrants);
+    }
+
+    private Map<String, String> passwordForm() {
+        Map<String, String> form = new LinkedHashMap<>();
+        form.put("grant_type", "password");
+        form.put("client_id", authProvider.getKcAdminClientId());
+        form.put("username", authProvider.getKcAdminUsername());
+        form.put("password", authProvider.getKcAdminPassword());
+        return form;
+    }
+
+    private Map<String, String> refreshTokenForm(String refreshToken) {
+        Map<String, String> form = new LinkedHashMap<>();
+        form.put("grant_type", "refresh_token");
+        form.put("client_id", authProvider.getKcAdminClientId());
+        form.put("refresh_token", refreshToken);
+        return form;
     }
-}
 
+    private CompletableFuture<AdminToken> tokenGrant(Map<String, String> form, Counter grantCounter) {
+        grantCounter.increment();
+        Instant requestedAt = clock.instant();
+        return httpClient.postForm("admin_token", authProvider.getKcAdminTokenUri(), form)
+                .handle((resp, ex) -> {
+                    if (ex != null) {
+                        grantFailures.increment();
+                        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                        log.warn("Keycloak admin token request failed", cause);
+                        throw new IllegalStateException("Error obtaining admin access token from Keycloak: " + cause.getMessage(), cause);
+                    }
+                    Map<?, ?> body = resp.is2xx() ? httpClient.readJson(resp, Map.class) : null;
+                    if (body == null || !body.containsKey("access_token")) {
+                        grantFailures.increment();
+                        throw new IllegalStateException("Failed to obtain admin access token from Keycloak, status=" + resp.status());
+                    }
+                    return AdminToken.from(body, requestedAt);
+                });
+    }
+
+    /**
+     * Expiry instants are computed from the moment the request was sent, so network latency only makes them
+     * more conservative.
+     */
+    record AdminToken(String accessToken, Instant expiresAt, String refreshToken, Instant refreshExpiresAt) {
+
+        static AdminToken from(Map<?, ?> body, Instant requestedAt) {
+            String accessToken = (String) body.get("access_token");
+            long expiresIn = seconds(body.get("expires_in"), 60);
+            String refreshToken = (String) body.get("refresh_token");
+            long refreshExpiresIn = seconds(body.get("refresh_expires_in"), 0);
+            return new AdminToken(
+                    accessToken,
+                    requestedAt.plusSeconds(expiresIn),
+                    refreshToken,
+                    requestedAt.plusSeconds(refreshExpiresIn));
+        }
+
+        private static long seconds(Object value, long fallback) {
+            if (value instanceof Number n) return n.longValue();
+            if (value instanceof String s && !s.isBlank()) return Long.parseLong(s.trim());
+            return fallback;
+        }
+    }
+}
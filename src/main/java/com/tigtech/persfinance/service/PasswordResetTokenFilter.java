@@ -0,0 +1,198 @@
+package com.tigtech.persfinance.service;
+
+import com.tigtech.persfinance.repository.PasswordResetTokenRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory filter of the hashes of valid password reset tokens, so that made-up tokens submitted to
+ * /api/auth/reset are rejected without a database query.
+ * <p>
+ * It is a Bloom filter: a negative answer is definitive, a positive one still has to be confirmed against the table.
+ * Hashes are added before the token row is committed and never removed; used and expired tokens leave the filter
+ * when it is rebuilt from the table, at startup and then every {@code app.password-reset.filter.rebuild-interval-ms}.
+ * Until the first rebuild completes every token is let through.
+ * <p>
+ * Each instance has its own filter, and tokens issued by other instances reach it through the table: on a miss, the
+ * filter first catches up with the tokens that expire after the latest one it has seen, which are the ones issued
+ * since, and answers again. Catching up takes one small query and runs at most once per
+ * {@code app.password-reset.filter.catch-up-interval-ms}, so a flood of made-up tokens costs at most that many
+ * queries; a token issued elsewhere less than that interval before it is used may be rejected once.
+ */
+@Component
+public class PasswordResetTokenFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(PasswordResetTokenFilter.class);
+
+    // a token committed this long after another one with a later expiry is still caught up with
+    private static final Duration CATCH_UP_OVERLAP = Duration.ofSeconds(30);
+
+    private final PasswordResetTokenRepository repository;
+    private final boolean enabled;
+    private final long expectedTokens;
+    private final double targetFalsePositiveRate;
+    private final long catchUpIntervalNanos;
+
+    private volatile BloomFilter filter;
+    private volatile boolean ready;
+    // hashes added while a rebuild is scanning the table, replayed onto the new filter
+    private List<byte[]> addedDuringRebuild;
+    // latest expiry among the tokens loaded from the table
+    private LocalDateTime loadedUpTo = LocalDateTime.MIN;
+
+    private final ReentrantLock catchUpLock = new ReentrantLock();
+    private long lastCatchUp;
+
+    private final Counter rejected;
+    private final Counter passed;
+    private final Counter falsePositives;
+    private final Counter catchUps;
+
+    public PasswordResetTokenFilter(PasswordResetTokenRepository repository,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${app.password-reset.filter.enabled:true}") boolean enabled,
+                                    @Value("${app.password-reset.filter.expected-tokens:100000}") long expectedTokens,
+                                    @Value("${app.password-reset.filter.false-positive-rate:0.01}") double targetFalsePositiveRate,
+                                    @Value("${app.password-reset.filter.catch-up-interval-ms:1000}") long catchUpIntervalMs) {
+        this.repository = repository;
+        this.enabled = enabled;
+        this.expectedTokens = expectedTokens;
+        this.targetFalsePositiveRate = targetFalsePositiveRate;
+        this.catchUpIntervalNanos = Duration.ofMillis(catchUpIntervalMs).toNanos();
+        this.lastCatchUp = System.nanoTime() - catchUpIntervalNanos;
+        this.filter = new BloomFilter(expectedTokens, targetFalsePositiveRate);
+
+        this.rejected = lookupCounter(meterRegistry, "rejected");
+        this.passed = lookupCounter(meterRegistry, "passed");
+        this.falsePositives = Counter.builder("password.reset.filter.false_positives")
+                .description("Tokens the filter let through that were not found in the database")
+                .register(meterRegistry);
+        this.catchUps = Counter.builder("password.reset.filter.catch_ups")
+                .description("Queries for tokens issued since the reset token filter last loaded the table")
+                .register(meterRegistry);
+        Gauge.builder("password.reset.filter.entries", this, f -> f.filter.entries())
+                .description("Token hashes currently in the reset token filter")
+                .register(meterRegistry);
+        Gauge.builder("password.reset.filter.fpp.expected", this, f -> f.filter.expectedFalsePositiveRate())
+                .description("Theoretical false positive rate of the reset token filter at its current load")
+                .register(meterRegistry);
+        Gauge.builder("password.reset.filter.fpp.observed", this, PasswordResetTokenFilter::observedFalsePositiveRate)
+                .description("False positives among unknown tokens checked since startup")
+                .register(meterRegistry);
+    }
+
+    private static Counter lookupCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("password.reset.filter.lookups")
+                .description("Reset token lookups by filter outcome")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * False if the token hash is certainly not a valid token; true if it may be, and must be checked in the database.
+     */
+    public boolean mightContain(byte[] tokenHash) {
+        if (!enabled || !ready) return true;
+        boolean result = filter.mightContain(tokenHash) || catchUp(tokenHash);
+        (result ? passed : rejected).increment();
+        return result;
+    }
+
+    /** Records that a token let through by {@link #mightContain} was not in the table. */
+    public void recordMiss() {
+        if (enabled && ready) falsePositives.increment();
+    }
+
+    /** Call before the token row is committed. */
+    public synchronized void add(byte[] tokenHash) {
+        filter.add(tokenHash);
+        if (addedDuringRebuild != null) addedDuringRebuild.add(tokenHash);
+    }
+
+    /** Loads the tokens issued since the table was last read, unless that was less than the interval ago. */
+    private boolean catchUp(byte[] tokenHash) {
+        long missedAt = System.nanoTime();
+        catchUpLock.lock();
+        try {
+            // a catch-up that ran while this thread waited may have brought the token in
+            if (filter.mightContain(tokenHash)) return true;
+            if (missedAt - lastCatchUp < catchUpIntervalNanos) return false;
+            lastCatchUp = System.nanoTime();
+            catchUps.increment();
+            LocalDateTime now = LocalDateTime.now();
+            LocalDateTime from = loadedUpTo();
+            // tokens expiring before now are not valid anyway
+            List<Object[]> rows = repository.findHashesExpiringAfter(
+                    from.isAfter(now.plus(CATCH_UP_OVERLAP)) ? from.minus(CATCH_UP_OVERLAP) : now);
+            synchronized (this) {
+                for (Object[] row : rows) add((byte[]) row[0]);
+                loaded(rows);
+            }
+            return filter.mightContain(tokenHash);
+        } catch (RuntimeException ex) {
+            log.warn("Unable to catch up the reset token filter with the table", ex);
+            return true;
+        } finally {
+            catchUpLock.unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.password-reset.filter.rebuild-interval-ms:60000}")
+    public void rebuild() {
+        if (!enabled) return;
+        synchronized (this) {
+            addedDuringRebuild = new ArrayList<>();
+        }
+        try {
+            long start = System.nanoTime();
+            List<Object[]> rows = repository.findHashesExpiringAfter(LocalDateTime.now());
+            // grow past the configured size rather than let the false positive rate climb
+            BloomFilter fresh = new BloomFilter(Math.max(expectedTokens, rows.size() * 2L), targetFalsePositiveRate);
+            for (Object[] row : rows) fresh.add((byte[]) row[0]);
+            synchronized (this) {
+                addedDuringRebuild.forEach(fresh::add);
+                filter = fresh;
+                loaded(rows);
+            }
+            if (!ready) {
+                log.info("Reset token filter built with {} tokens in {} ms ({} bits, {} hash functions)",
+                        rows.size(), (System.nanoTime() - start) / 1_000_000, fresh.size(), fresh.hashFunctions());
+            }
+            ready = true;
+        } catch (RuntimeException ex) {
+            log.warn("Unable to rebuild reset token filter", ex);
+        } finally {
+            synchronized (this) {
+                addedDuringRebuild = null;
+            }
+        }
+    }
+
+    private synchronized LocalDateTime loadedUpTo() {
+        return loadedUpTo;
+    }
+
+    private void loaded(List<Object[]> rows) {
+        for (Object[] row : rows) {
+            LocalDateTime expiresAt = (LocalDateTime) row[1];
+            if (expiresAt.isAfter(loadedUpTo)) loadedUpTo = expiresAt;
+        }
+    }
+
+    private double observedFalsePositiveRate() {
+        double unknown = falsePositives.count() + rejected.count();
+        return unknown == 0 ? 0 : falsePositives.count() / unknown;
+    }
+}
@@ -0,0 +1,109 @@
+package com.tigtech.persfinance.service;
+
+import com.tigtech.persfinance.domain.PasswordResetToken;
+import com.tigtech.persfinance.repository.PasswordResetTokenRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deletes expired password reset tokens.
+ * <p>
+ * Each run deletes at most {@code app.password-reset.sweep-batch-size} rows per transaction, picked through the
+ * expires_at index, so a large backlog is removed as a series of short transactions instead of one long
+ * delete holding locks on the table. A run stops after {@value #MAX_BATCHES_PER_RUN} batches; the rest is
+ * left for the next run.
+ */
+@Component
+public class PasswordResetTokenSweeper {
+
+    private static final Logger log = LoggerFactory.getLogger(PasswordResetTokenSweeper.class);
+
+    private static final int MAX_BATCHES_PER_RUN = 100;
+
+    private final PasswordResetTokenRepository repository;
+    private final TransactionTemplate tx;
+    private final int batchSize;
+
+    private final AtomicLong live = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final Timer sweepTimer;
+    private final Counter swept;
+
+    public PasswordResetTokenSweeper(PasswordResetTokenRepository repository,
+                                     PlatformTransactionManager transactionManager,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${app.password-reset.sweep-batch-size:500}") int batchSize) {
+        this.repository = repository;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.batchSize = Math.max(1, batchSize);
+
+        Gauge.builder("password.reset.tokens", live, AtomicLong::get)
+                .description("Password reset tokens by state, as of the last sweep")
+                .tag("state", "live")
+                .register(meterRegistry);
+        Gauge.builder("password.reset.tokens", expired, AtomicLong::get)
+                .description("Password reset tokens by state, as of the last sweep")
+                .tag("state", "expired")
+                .register(meterRegistry);
+        this.sweepTimer = Timer.builder("password.reset.sweep.duration")
+                .description("Time taken by one run of the expired password reset token sweeper")
+                .register(meterRegistry);
+        this.swept = Counter.builder("password.reset.tokens.swept")
+                .description("Expired password reset tokens deleted by the sweeper")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${app.password-reset.sweep-interval-ms:600000}",
+            initialDelayString = "${app.password-reset.sweep-initial-delay-ms:60000}")
+    public void sweep() {
+        try {
+            long deleted = sweepTimer.record(this::deleteExpired);
+            if (deleted > 0) log.info("Deleted {} expired password reset tokens", deleted);
+        } catch (RuntimeException ex) {
+            log.warn("Password reset token sweep failed", ex);
+        } finally {
+            refreshGauges();
+        }
+    }
+
+    long deleteExpired() {
+        LocalDateTime now = LocalDateTime.now();
+        long total = 0;
+        for (int i = 0; i < MAX_BATCHES_PER_RUN; i++) {
+            Integer deleted = tx.execute(status -> {
+                List<PasswordResetToken> expiredTokens = repository.findExpired(now, Limit.of(batchSize));
+                if (expiredTokens.isEmpty()) return 0;
+                return repository.deleteByIdIn(expiredTokens.stream().map(PasswordResetToken::getId).toList());
+            });
+            int n = deleted == null ? 0 : deleted;
+            total += n;
+            swept.increment(n);
+            if (n < batchSize) break;
+        }
+        return total;
+    }
+
+    private void refreshGauges() {
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            live.set(repository.countByExpiresAtGreaterThanEqual(now));
+            expired.set(repository.countByExpiresAtLessThan(now));
+        } catch (RuntimeException ex) {
+            log.debug("Unable to refresh password reset token gauges", ex);
+        }
+    }
+}
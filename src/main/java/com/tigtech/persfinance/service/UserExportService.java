@@ -0,0 +1,146 @@
+package com.tigtech.persfinance.service;
+
+import com.tigtech.persfinance.domain.User;
+import com.tigtech.persfinance.repository.UserRepository;
+import com.tigtech.persfinance.web.dto.UserResponse;
+import jakarta.persistence.EntityManager;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+
+/**
+ * Writes users to an output stream straight from a database cursor.
+ * Each row is mapped and then detached, so memory use does not grow with the size of the table. The rows bypass the
+ * second-level cache: an export would otherwise push out every user actually in use.
+ */
+@Service
+public class UserExportService {
+
+    public static final String NDJSON_VALUE = "application/x-ndjson";
+    public static final String CSV_VALUE = "text/csv";
+
+    private static final byte[] CSV_HEADER = "id,nome,sobrenome,email,fotoUrl,role,ativo\n".getBytes(StandardCharsets.UTF_8);
+
+    public enum Format {
+        NDJSON(MediaType.parseMediaType(NDJSON_VALUE), "ndjson"),
+        CSV(MediaType.parseMediaType(CSV_VALUE + ";charset=UTF-8"), "csv");
+
+        private final MediaType mediaType;
+        private final String extension;
+
+        Format(MediaType mediaType, String extension) {
+            this.mediaType = mediaType;
+            this.extension = extension;
+        }
+
+        public MediaType mediaType() {
+            return mediaType;
+        }
+
+        public String extension() {
+            return extension;
+        }
+
+        public static Format parse(String value) {
+            if (value == null) return null;
+            for (Format f : values()) {
+                if (f.extension.equalsIgnoreCase(value.trim())) return f;
+            }
+            return null;
+        }
+    }
+
+    private final UserRepository userRepository;
+    private final EntityManager entityManager;
+    private final TransactionTemplate readOnlyTx;
+    private final JsonMapper jsonMapper;
+
+    public UserExportService(UserRepository userRepository,
+                             EntityManager entityManager,
+                             PlatformTransactionManager transactionManager,
+                             JsonMapper jsonMapper) {
+        this.userRepository = userRepository;
+        this.entityManager = entityManager;
+        this.jsonMapper = jsonMapper;
+        this.readOnlyTx = new TransactionTemplate(transactionManager);
+        this.readOnlyTx.setReadOnly(true);
+    }
+
+    public void export(Format format, Boolean active, String role, OutputStream target) throws IOException {
+        OutputStream out = new BufferedOutputStream(target, 64 * 1024);
+        try {
+            // the cursor (and the fetch size) only work while the transaction holds the connection
+            readOnlyTx.executeWithoutResult(status -> {
+                // for the session, not the query: the cursor materializes users after the query has run
+                entityManager.unwrap(Session.class).setCacheMode(CacheMode.IGNORE);
+                try (Stream<User> users = userRepository.streamForExport(active, normalizeRole(role))) {
+                    if (format == Format.CSV) out.write(CSV_HEADER);
+                    int written = 0;
+                    for (User u : (Iterable<User>) users::iterator) {
+                        UserResponse dto = UserResponse.of(u);
+                        entityManager.detach(u);
+                        if (format == Format.CSV) {
+                            writeCsv(dto, out);
+                        } else {
+                            out.write(jsonMapper.writeValueAsBytes(dto));
+                            out.write('\n');
+                        }
+                        if (++written % UserRepository.EXPORT_FETCH_SIZE == 0) {
+                            out.flush();
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        out.flush();
+    }
+
+    private static void writeCsv(UserResponse r, OutputStream out) throws IOException {
+        StringBuilder line = new StringBuilder(128)
+                .append(r.getId()).append(',')
+                .append(csv(r.getNome())).append(',')
+                .append(csv(r.getSobrenome())).append(',')
+                .append(csv(r.getEmail())).append(',')
+                .append(csv(r.getFotoUrl())).append(',')
+                .append(csv(r.getRole())).append(',')
+                .append(r.isAtivo())
+                .append('\n');
+        out.write(line.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String csv(String value) {
+        if (value == null || value.isEmpty()) return "";
+        String v = value;
+        // keep spreadsheet tools from evaluating user-controlled text as a formula
+        char first = v.charAt(0);
+        if (first == '=' || first == '+' || first == '-' || first == '@') {
+            v = "'" + v;
+        }
+        if (v.indexOf(',') >= 0 || v.indexOf('"') >= 0 || v.indexOf('\n') >= 0 || v.indexOf('\r') >= 0) {
+            return '"' + v.replace("\"", "\"\"") + '"';
+        }
+        return v;
+    }
+
+    /** Accepts both "admin" and "ROLE_ADMIN". */
+    private static String normalizeRole(String role) {
+        if (role == null || role.isBlank()) return null;
+        String r = role.trim().toUpperCase();
+        return r.startsWith("ROLE_") ? r : "ROLE_" + r;
+    }
+}
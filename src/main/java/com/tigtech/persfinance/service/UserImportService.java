@@ -0,0 +1,280 @@
+package com.tigtech.persfinance.service;
+
+import com.tigtech.persfinance.domain.ProvisioningOutboxEntry;
+import com.tigtech.persfinance.domain.User;
+import com.tigtech.persfinance.repository.UserRepository;
+import com.tigtech.persfinance.security.PasswordHashingService;
+import com.tigtech.persfinance.web.dto.RegisterRequest;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Bulk user import. Rows are processed in chunks: each chunk is validated, checked against existing emails
+ * with one query, hashed in parallel on the shared password hashing pool, and inserted together with its Keycloak outbox rows
+ * using JDBC batches in a single transaction. Keycloak provisioning then happens through the outbox.
+ */
+@Service
+public class UserImportService {
+
+    private static final Logger log = LoggerFactory.getLogger(UserImportService.class);
+
+    private static final String INSERT_USER = """
+            insert into users (first_name, last_name, email, password, provider, role, active, created_at, updated_at)
+            values (?, ?, ?, ?, 'local', 'ROLE_USER', true, ?, ?)""";
+
+    private static final String INSERT_OUTBOX = """
+            insert into keycloak_provisioning_outbox
+                (user_id, email, first_name, last_name, encrypted_password, status, attempts, next_attempt_at, created_at)
+            values (?, ?, ?, ?, ?, 'PENDING', 0, ?, ?)""";
+
+    public enum RowStatus { IMPORTED, DUPLICATE, INVALID, ERROR }
+
+    public record ImportRow(int row, String firstName, String lastName, String email, String password) {}
+
+    public record RowResult(int row, String email, RowStatus status, String error) {}
+
+    public record Summary(int total, int imported, int duplicates, int invalid, int errors) {}
+
+    private final UserRepository userRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final PasswordHashingService passwordHashingService;
+    private final KeycloakProvisioningOutbox provisioningOutbox;
+    private final Validator validator;
+    private final TransactionTemplate tx;
+    private final int chunkSize;
+
+    public UserImportService(UserRepository userRepository,
+                             JdbcTemplate jdbcTemplate,
+                             PasswordHashingService passwordHashingService,
+                             KeycloakProvisioningOutbox provisioningOutbox,
+                             Validator validator,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${app.import.chunk-size:500}") int chunkSize) {
+        this.userRepository = userRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.passwordHashingService = passwordHashingService;
+        this.provisioningOutbox = provisioningOutbox;
+        this.validator = validator;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Imports all rows, reporting one result per row to {@code sink} as each chunk completes.
+     */
+    public Summary importRows(Iterator<ImportRow> rows, Consumer<RowResult> sink) {
+        Set<String> seenInFile = new HashSet<>();
+        int[] counts = new int[RowStatus.values().length];
+        Consumer<RowResult> counting = r -> {
+            counts[r.status().ordinal()]++;
+            sink.accept(r);
+        };
+
+        List<ImportRow> chunk = new ArrayList<>(chunkSize);
+        int total = 0;
+        while (rows.hasNext()) {
+            chunk.add(rows.next());
+            total++;
+            if (chunk.size() == chunkSize) {
+                processChunk(chunk, seenInFile, counting);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) processChunk(chunk, seenInFile, counting);
+
+        return new Summary(total,
+                counts[RowStatus.IMPORTED.ordinal()],
+                counts[RowStatus.DUPLICATE.ordinal()],
+                counts[RowStatus.INVALID.ordinal()],
+                counts[RowStatus.ERROR.ordinal()]);
+    }
+
+    private void processChunk(List<ImportRow> chunk, Set<String> seenInFile, Consumer<RowResult> sink) {
+        List<ImportRow> candidates = new ArrayList<>(chunk.size());
+        for (ImportRow row : chunk) {
+            String error = validate(row);
+            if (error != null) {
+                sink.accept(new RowResult(row.row(), row.email(), RowStatus.INVALID, error));
+            } else if (!seenInFile.add(row.email())) {
+                sink.accept(new RowResult(row.row(), row.email(), RowStatus.DUPLICATE, "Email repeated in file"));
+            } else {
+                candidates.add(row);
+            }
+        }
+        if (candidates.isEmpty()) return;
+
+        List<String> hashes = hashAll(candidates);
+        try {
+            insertChunk(candidates, hashes, sink);
+        } catch (DataIntegrityViolationException e) {
+            // someone registered one of these emails between our check and the insert; re-check once
+            log.info("Import chunk hit a concurrent insert, retrying with a fresh duplicate check");
+            try {
+                insertChunk(candidates, hashes, sink);
+            } catch (RuntimeException retryEx) {
+                log.warn("Import chunk failed", retryEx);
+                candidates.forEach(r -> sink.accept(new RowResult(r.row(), r.email(), RowStatus.ERROR, "Chunk could not be saved")));
+            }
+        } catch (RuntimeException e) {
+            log.warn("Import chunk failed", e);
+            candidates.forEach(r -> sink.accept(new RowResult(r.row(), r.email(), RowStatus.ERROR, "Chunk could not be saved")));
+        }
+    }
+
+    private void insertChunk(List<ImportRow> candidates, List<String> hashes, Consumer<RowResult> sink) {
+        List<RowResult> results = tx.execute(status -> {
+            Set<String> existing = new HashSet<>(userRepository.findExistingEmails(
+                    candidates.stream().map(ImportRow::email).toList()));
+
+            List<RowResult> out = new ArrayList<>(candidates.size());
+            List<Object[]> userArgs = new ArrayList<>(candidates.size());
+            List<ImportRow> inserted = new ArrayList<>(candidates.size());
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            for (int i = 0; i < candidates.size(); i++) {
+                ImportRow row = candidates.get(i);
+                if (existing.contains(row.email())) {
+                    out.add(new RowResult(row.row(), row.email(), RowStatus.DUPLICATE, "Email already in use"));
+                    continue;
+                }
+                userArgs.add(new Object[]{row.firstName(), row.lastName(), row.email(), hashes.get(i), now, now});
+                inserted.add(row);
+            }
+            if (inserted.isEmpty()) return out;
+
+            jdbcTemplate.batchUpdate(INSERT_USER, userArgs);
+
+            Map<String, Long> ids = new HashMap<>();
+            for (Object[] idAndEmail : userRepository.findIdsByEmails(inserted.stream().map(ImportRow::email).toList())) {
+                ids.put((String) idAndEmail[1], (Long) idAndEmail[0]);
+            }
+
+            LocalDateTime enqueuedAt = now.toLocalDateTime();
+            List<Object[]> outboxArgs = new ArrayList<>(inserted.size());
+            for (ImportRow row : inserted) {
+                User user = User.builder()
+                        .id(ids.get(row.email()))
+                        .email(row.email())
+                        .firstName(row.firstName())
+                        .lastName(row.lastName())
+                        .build();
+                ProvisioningOutboxEntry e = provisioningOutbox.newEntry(user, row.password(), enqueuedAt);
+                outboxArgs.add(new Object[]{e.getUserId(), e.getEmail(), e.getFirstName(), e.getLastName(),
+                        e.getEncryptedPassword(), now, now});
+                out.add(new RowResult(row.row(), row.email(), RowStatus.IMPORTED, null));
+            }
+            jdbcTemplate.batchUpdate(INSERT_OUTBOX, outboxArgs);
+            return out;
+        });
+        results.forEach(sink);
+    }
+
+    private List<String> hashAll(List<ImportRow> rows) {
+        return passwordHashingService.encodeAll(rows.stream().map(ImportRow::password).toList());
+    }
+
+    private String validate(ImportRow row) {
+        RegisterRequest request = new RegisterRequest();
+        request.setFirstName(row.firstName());
+        request.setLastName(row.lastName());
+        request.setEmail(row.email());
+        request.setPassword(row.password());
+        Set<ConstraintViolation<RegisterRequest>> violations = validator.validate(request);
+        if (violations.isEmpty()) return null;
+        StringJoiner msg = new StringJoiner("; ");
+        violations.stream()
+                .sorted(Comparator.comparing(v -> v.getPropertyPath().toString()))
+                .forEach(v -> msg.add(v.getPropertyPath() + " " + v.getMessage()));
+        return msg.toString();
+    }
+
+    /**
+     * Lazily reads {@code firstName,lastName,email,password} rows from CSV. A header line is skipped if present.
+     */
+    public static Iterator<ImportRow> csvRows(BufferedReader reader) {
+        return new Iterator<>() {
+            private int lineNo = 0;
+            private ImportRow next = advance();
+
+            private ImportRow advance() {
+                try {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        lineNo++;
+                        if (line.isBlank()) continue;
+                        List<String> f = parseCsvLine(line);
+                        if (lineNo == 1 && !f.isEmpty() && f.get(0).trim().equalsIgnoreCase("firstName")) continue;
+                        return new ImportRow(lineNo, field(f, 0), field(f, 1), field(f, 2), field(f, 3));
+                    }
+                    return null;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public ImportRow next() {
+                if (next == null) throw new NoSuchElementException();
+                ImportRow current = next;
+                next = advance();
+                return current;
+            }
+        };
+    }
+
+    private static String field(List<String> fields, int i) {
+        if (i >= fields.size()) return null;
+        String v = fields.get(i).trim();
+        return v.isEmpty() ? null : v;
+    }
+
+    static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>(4);
+        StringBuilder cur = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        cur.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    cur.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(cur.toString());
+                cur.setLength(0);
+            } else {
+                cur.append(c);
+            }
+        }
+        fields.add(cur.toString());
+        return fields;
+    }
+}
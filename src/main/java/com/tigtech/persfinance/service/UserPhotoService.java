@@ -0,0 +1,35 @@
+package com.tigtech.persfinance.service;
+
+import com.tigtech.persfinance.repository.UserRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * The database side of a photo upload. Both steps run in read-write transactions, so they read the primary even
+ * with read replicas: a user read from a lagging replica and saved back would overwrite newer columns (such as a
+ * password just reset) with stale values, and a user who has just registered would not be found. The upload itself
+ * happens between the two, outside any transaction.
+ */
+@Service
+public class UserPhotoService {
+
+    private final UserRepository userRepository;
+
+    public UserPhotoService(UserRepository userRepository) {
+        this.userRepository = userRepository;
+    }
+
+    @Transactional
+    public boolean exists(Long id) {
+        return userRepository.existsById(id);
+    }
+
+    /** Sets the user's photo URL; false if the user no longer exists. */
+    @Transactional
+    public boolean updatePhotoUrl(Long id, String url) {
+        return userRepository.findById(id).map(user -> {
+            user.setPhotoUrl(url);
+            return true;
+        }).orElse(false);
+    }
+}
@@ -6,55 +6,108 @@ import com.tigtech.persfinance.mail.EmailService;
 import com.tigtech.persfinance.repository.PasswordResetTokenRepository;
 import com.tigtech.persfinance.repository.UserRepository;
 import com.tigtech.persfinance.service.AuthService;
+import com.tigtech.persfinance.service.KeycloakProvisioningOutbox;
+import com.tigtech.persfinance.service.PasswordResetTokenFilter;
 import com.tigtech.persfinance.web.dto.ForgotPasswordRequest;
+import com.tigtech.persfinance.web.dto.RegisterRequest;
 import com.tigtech.persfinance.web.dto.ResetPasswordRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.Optional;
-import java.util.UUID;
 
 @Service
 public class AuthServiceImpl implements AuthService {
 
+    private static final Logger log = LoggerFactory.getLogger(AuthServiceImpl.class);
+
     private final UserRepository userRepository;
     private final PasswordResetTokenRepository tokenRepository;
     private final EmailService emailService;
     private final PasswordEncoder passwordEncoder;
+    private final KeycloakProvisioningOutbox provisioningOutbox;
+    private final PasswordResetTokenFilter tokenFilter;
 
-    public AuthServiceImpl(UserRepository userRepository, PasswordResetTokenRepository tokenRepository, EmailService emailService, PasswordEncoder passwordEncoder) {
+    public AuthServiceImpl(UserRepository userRepository, PasswordResetTokenRepository tokenRepository, EmailService emailService, PasswordEncoder passwordEncoder, KeycloakProvisioningOutbox provisioningOutbox, PasswordResetTokenFilter tokenFilter) {
         this.userRepository = userRepository;
         this.tokenRepository = tokenRepository;
         this.emailService = emailService;
         this.passwordEncoder = passwordEncoder;
+        this.provisioningOutbox = provisioningOutbox;
+        this.tokenFilter = tokenFilter;
     }
 
+    /**
+     * Saves the local user and queues its Keycloak provisioning in one transaction;
+     * the Keycloak calls happen later in KeycloakProvisioningDispatcher.
+     */
     @Override
+    @Transactional
+    public User register(RegisterRequest request) {
+        User user = User.builder()
+                .firstName(request.getFirstName())
+                .lastName(request.getLastName())
+                .email(request.getEmail())
+                .password(passwordEncoder.encode(request.getPassword()))
+                .provider("local")
+                .role("ROLE_USER")
+                .active(true)
+                .build();
+        userRepository.save(user);
+        provisioningOutbox.enqueue(user, request.getPassword());
+        return user;
+    }
+
+    /**
+     * Issues a new reset token, invalidating any token the user was sent before. Only the token's hash is stored.
+     */
+    @Override
+    @Transactional
     public void forgotPassword(ForgotPasswordRequest request) {
         Optional<User> userOpt = userRepository.findByEmail(request.getEmail());
         if (userOpt.isEmpty()) return;
         User user = userOpt.get();
-        String token = UUID.randomUUID().toString();
+        invalidateTokens(user);
+        String token = PasswordResetToken.generateToken();
         PasswordResetToken prt = PasswordResetToken.of(
                 token,
                 user,
                 LocalDateTime.now().plusHours(2)
         );
+        tokenFilter.add(prt.getTokenHash());
         tokenRepository.save(prt);
         String resetUrl = System.getenv().getOrDefault("APP_CLIENT_BASE_URL", "http://localhost:3000") + "/reset?token=" + token;
         emailService.sendPasswordReset(user.getEmail(), token, resetUrl);
     }
 
     @Override
+    @Transactional
     public void resetPassword(ResetPasswordRequest request) {
-        Optional<PasswordResetToken> t = tokenRepository.findByToken(request.getToken());
-        if (t.isEmpty()) return;
+        if (request.getToken() == null) return;
+        byte[] tokenHash = PasswordResetToken.hash(request.getToken());
+        // unknown tokens (guessing, floods) are answered from memory
+        if (!tokenFilter.mightContain(tokenHash)) return;
+        Optional<PasswordResetToken> t = tokenRepository.findByTokenHash(tokenHash);
+        if (t.isEmpty()) {
+            tokenFilter.recordMiss();
+            return;
+        }
         PasswordResetToken prt = t.get();
         if (prt.isExpired()) return;
         User user = prt.getUser();
+        if (user.getPassword() != null && passwordEncoder.upgradeEncoding(user.getPassword())) {
+            log.info("Replacing weaker password hash of user {} with current BCrypt cost", user.getId());
+        }
         user.setPassword(passwordEncoder.encode(request.getNovaSenha()));
         userRepository.save(user);
-        tokenRepository.delete(prt);
+        invalidateTokens(user);
+    }
+
+    private void invalidateTokens(User user) {
+        tokenRepository.deleteByUser(user);
     }
 }
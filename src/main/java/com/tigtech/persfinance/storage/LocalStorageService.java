@@ -1,52 +1,288 @@
 package com.tigtech.persfinance.storage;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * Simple local filesystem storage implementation.
  * Keeps the same interface so the rest of the app doesn't need changes.
+ * <p>
+ * Photos are streamed into a temporary file under {@code <upload-dir>/.tmp} while their SHA-256 and size are computed,
+ * then renamed into place, so a partially written photo is never visible under its final name. Storage is
+ * content-addressed: a photo lives at {@code blobs/<h0h1>/<h2h3>/<sha256>.<ext>}, with the extension derived from the
+ * detected format. Uploading content that is already stored writes nothing and only refreshes the blob's
+ * modification time, which protects it from {@link PhotoGarbageCollector} for the grace period. Blobs are never
+ * deleted on upload, since other users may reference them; unreferenced ones are removed by the collector.
+ * Resized variants live under {@code variants/<h0h1>/<h2h3>/<sha256>-<size>.<ext>} and go with their photo.
  */
 @Service
+@ConditionalOnProperty(name = "app.storage.backend", havingValue = "local", matchIfMissing = true)
 public class LocalStorageService implements StorageService {
 
+    private static final int BUFFER_SIZE = 128 * 1024;
+    private static final String URL_PREFIX = "/uploads/";
+    private static final String OCTET_STREAM = "application/octet-stream";
+
     private final Path baseDir;
+    private final Path blobDir;
+    private final Path variantDir;
+    private final Path tmpDir;
+    private final long maxPhotoBytes;
+
+    private final Counter dedupHits;
+    private final Counter dedupBytes;
 
-    public LocalStorageService(@Value("${app.upload-dir:uploads}") String uploadDir) throws IOException {
+    public LocalStorageService(@Value("${app.upload-dir:uploads}") String uploadDir,
+                               @Value("${app.storage.max-photo-bytes:20971520}") long maxPhotoBytes,
+                               MeterRegistry meterRegistry) throws IOException {
         this.baseDir = Path.of(uploadDir).toAbsolutePath();
-        if (!Files.exists(baseDir)) {
-            Files.createDirectories(baseDir);
+        this.blobDir = baseDir.resolve("blobs");
+        this.variantDir = baseDir.resolve("variants");
+        this.tmpDir = baseDir.resolve(".tmp");
+        this.maxPhotoBytes = maxPhotoBytes;
+        Files.createDirectories(tmpDir);
+
+        this.dedupHits = Counter.builder("storage.photos.deduplicated")
+                .description("Uploads whose content was already stored")
+                .register(meterRegistry);
+        this.dedupBytes = Counter.builder("storage.photos.deduplicated.bytes")
+                .description("Bytes not written because the uploaded content was already stored")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public StoredPhoto storeUserPhoto(InputStream content, long contentLength, String userId) throws IOException {
+        if (contentLength > maxPhotoBytes) throw tooLarge();
+
+        Path tmp = Files.createTempFile(tmpDir, "upload-", ".part");
+        try {
+            MessageDigest sha256 = sha256();
+            // filled completely before each write/hash: one write per 128 KB, not per socket read
+            byte[] chunk = new byte[BUFFER_SIZE];
+            PhotoType type = null;
+            long size = 0;
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                int n;
+                while ((n = content.readNBytes(chunk, 0, chunk.length)) > 0) {
+                    if (type == null) {
+                        type = PhotoType.detect(ByteBuffer.wrap(chunk, 0, n)).orElseThrow(() -> new PhotoRejectedException(
+                                PhotoRejectedException.Reason.UNSUPPORTED_TYPE, "Photo must be a JPEG, PNG, GIF or WebP image"));
+                    }
+                    size += n;
+                    // stop reading as soon as the limit is crossed, whatever Content-Length said
+                    if (size > maxPhotoBytes) throw tooLarge();
+                    sha256.update(chunk, 0, n);
+                    ByteBuffer buffer = ByteBuffer.wrap(chunk, 0, n);
+                    while (buffer.hasRemaining()) out.write(buffer);
+                }
+            }
+            if (type == null) throw new PhotoRejectedException(PhotoRejectedException.Reason.UNSUPPORTED_TYPE, "Photo is empty");
+
+            String hash = HexFormat.of().formatHex(sha256.digest());
+            String relative = "blobs/" + hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash + "." + type.extension();
+            Path target = baseDir.resolve(relative);
+            if (!reuse(target)) {
+                Files.createDirectories(target.getParent());
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                dedupHits.increment();
+                dedupBytes.increment(size);
+            }
+            return new StoredPhoto(URL_PREFIX + relative, hash, size, type);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /** True if the blob already exists; its modification time is then refreshed. */
+    private static boolean reuse(Path blob) throws IOException {
+        try {
+            Files.setLastModifiedTime(blob, FileTime.fromMillis(System.currentTimeMillis()));
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
         }
     }
 
     @Override
-    public String uploadUserPhoto(MultipartFile file, String userId) throws Exception {
-        String safeFileName = System.currentTimeMillis() + "_" + file.getOriginalFilename();
-        Path userDir = baseDir.resolve("users").resolve(userId);
-        if (!Files.exists(userDir)) Files.createDirectories(userDir);
-        Path target = userDir.resolve(safeFileName);
+    public Optional<PhotoFile> findPhoto(String url) throws IOException {
+        Path p = resolve(url);
+        if (p == null || !(p.startsWith(blobDir) || p.startsWith(baseDir.resolve("users")))) return Optional.empty();
+        BasicFileAttributes attrs;
         try {
-            Files.copy(file.getInputStream(), target, StandardCopyOption.REPLACE_EXISTING);
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to store file", e);
+            attrs = Files.readAttributes(p, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+        if (!attrs.isRegularFile()) return Optional.empty();
+
+        String sha256 = null;
+        String contentType;
+        if (p.startsWith(blobDir)) {
+            String name = p.getFileName().toString();
+            int dot = name.lastIndexOf('.');
+            sha256 = name.substring(0, dot);
+            String extension = name.substring(dot + 1);
+            contentType = Arrays.stream(PhotoType.values()).filter(t -> t.extension().equals(extension))
+                    .map(PhotoType::contentType).findFirst().orElse(OCTET_STREAM);
+        } else {
+            // files from before content addressing kept the client's file name, so look at the content instead
+            byte[] head = new byte[PhotoType.SIGNATURE_LENGTH];
+            int n;
+            try (InputStream in = Files.newInputStream(p)) {
+                n = in.readNBytes(head, 0, head.length);
+            }
+            contentType = PhotoType.detect(ByteBuffer.wrap(head, 0, n)).map(PhotoType::contentType).orElse(OCTET_STREAM);
+        }
+        return Optional.of(new PhotoFile(p, null, attrs.size(), attrs.lastModifiedTime().toInstant(), contentType, sha256));
+    }
+
+    @Override
+    public InputStream openPhoto(String url) throws IOException {
+        Path p = resolve(url);
+        if (p == null) throw new NoSuchFileException(url);
+        return Files.newInputStream(p);
+    }
+
+    @Override
+    public void storeVariant(String url, int size, PhotoType type, byte[] content) throws IOException {
+        String hash = blobHash(url);
+        if (hash == null) throw new IllegalArgumentException("Not a content-addressed photo: " + url);
+        Path target = variantPath(hash, size, type);
+        Files.createDirectories(target.getParent());
+        Path tmp = Files.createTempFile(tmpDir, "variant-", ".part");
+        try {
+            Files.write(tmp, content);
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    @Override
+    public Optional<PhotoFile> findVariant(String url, int size) throws IOException {
+        String hash = blobHash(url);
+        if (hash == null) return Optional.empty();
+        for (PhotoType type : PhotoType.values()) {
+            Path p = variantPath(hash, size, type);
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(p, BasicFileAttributes.class);
+                return Optional.of(new PhotoFile(p, null, attrs.size(), attrs.lastModifiedTime().toInstant(), type.contentType(), hash));
+            } catch (NoSuchFileException e) {
+                // try the next format
+            }
+        }
+        return Optional.empty();
+    }
+
+    /** The content hash of a content-addressed photo URL, or null. */
+    private String blobHash(String url) {
+        Path p = resolve(url);
+        if (p == null || !p.startsWith(blobDir)) return null;
+        String name = p.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot == 64 ? name.substring(0, dot) : null;
+    }
+
+    private Path variantPath(String hash, int size, PhotoType type) {
+        return variantDir.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash + "-" + size + "." + type.extension());
+    }
+
+    private void deleteVariants(String hash) throws IOException {
+        Path dir = variantDir.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4));
+        if (!Files.isDirectory(dir)) return;
+        try (var variants = Files.newDirectoryStream(dir, hash + "-*")) {
+            for (Path variant : variants) Files.deleteIfExists(variant);
+        }
+    }
+
+    @Override
+    public Stream<PhotoBlob> listPhotos() throws IOException {
+        // blobs plus the per-user files written before photos were content-addressed
+        Path legacyDir = baseDir.resolve("users");
+        Stream<Path> blobs = Files.isDirectory(blobDir) ? Files.walk(blobDir) : Stream.empty();
+        Stream<Path> legacy = Files.isDirectory(legacyDir) ? Files.walk(legacyDir) : Stream.empty();
+        return Stream.concat(blobs, legacy)
+                .map(path -> {
+                    try {
+                        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                        if (!attrs.isRegularFile()) return null;
+                        return new PhotoBlob(URL_PREFIX + baseDir.relativize(path).toString().replace('\\', '/'),
+                                attrs.size(), attrs.lastModifiedTime().toInstant());
+                    } catch (NoSuchFileException e) {
+                        return null;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                })
+                .filter(blob -> blob != null);
+    }
+
+    private PhotoRejectedException tooLarge() {
+        return new PhotoRejectedException(PhotoRejectedException.Reason.TOO_LARGE,
+                "Photo exceeds the maximum size of " + maxPhotoBytes + " bytes");
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    @Override
+    public boolean deleteIfNotModifiedSince(String url, Instant cutoff) throws IOException {
+        Path p = resolve(url);
+        if (p == null) return false;
+        try {
+            // re-read here rather than trusting the listing: an upload may have reused the blob since
+            if (Files.getLastModifiedTime(p).toInstant().isAfter(cutoff)) return false;
+            boolean deleted = Files.deleteIfExists(p);
+            String hash = blobHash(url);
+            if (deleted && hash != null) deleteVariants(hash);
+            return deleted;
+        } catch (NoSuchFileException e) {
+            return false;
         }
-        return "/uploads/users/" + userId + "/" + safeFileName;
     }
 
     @Override
     public void delete(String pathOrUrl) throws Exception {
         if (pathOrUrl == null) return;
         if (pathOrUrl.startsWith("http://") || pathOrUrl.startsWith("https://")) return;
-        Path p = baseDir.resolve(pathOrUrl.replaceFirst("^/", ""));
-        File f = p.toFile();
-        if (f.exists()) f.delete();
+        Path p = resolve(pathOrUrl);
+        if (p != null) Files.deleteIfExists(p);
     }
-}
 
+    /** File for a photo URL or upload-relative path; null if it points outside the upload directory. */
+    private Path resolve(String pathOrUrl) {
+        String relative = pathOrUrl.startsWith(URL_PREFIX) ? pathOrUrl.substring(URL_PREFIX.length()) : pathOrUrl.replaceFirst("^/", "");
+        Path p = baseDir.resolve(relative).normalize();
+        return p.startsWith(baseDir) && !p.startsWith(tmpDir) ? p : null;
+    }
+}
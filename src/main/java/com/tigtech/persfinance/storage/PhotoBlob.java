@@ -0,0 +1,10 @@
+package com.tigtech.persfinance.storage;
+
+import java.time.Instant;
+
+/**
+ * A stored photo as listed by {@link StorageService#listPhotos()}: its URL (as kept in users.photo_url), size and
+ * last write or reuse.
+ */
+public record PhotoBlob(String url, long size, Instant lastModified) {
+}
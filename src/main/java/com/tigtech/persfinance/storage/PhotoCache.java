@@ -0,0 +1,92 @@
+package com.tigtech.persfinance.storage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-memory copy of the most recently requested small photos, bounded by total size
+ * ({@code app.storage.photo-cache.max-bytes}) and evicted least recently used first. Only immutable
+ * (content-addressed) photos up to {@code app.storage.photo-cache.max-object-bytes} are cached, so entries never go
+ * stale; a photo deleted by the garbage collector is no longer referenced and simply ages out.
+ */
+@Component
+public class PhotoCache {
+
+    public record Entry(PhotoFile photo, byte[] content) {
+    }
+
+    private final long maxBytes;
+    private final long maxObjectBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long bytes;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public PhotoCache(MeterRegistry meterRegistry,
+                      @Value("${app.storage.photo-cache.max-bytes:33554432}") long maxBytes,
+                      @Value("${app.storage.photo-cache.max-object-bytes:262144}") long maxObjectBytes) {
+        this.maxBytes = maxBytes;
+        this.maxObjectBytes = Math.min(maxObjectBytes, maxBytes);
+
+        this.hits = lookupCounter(meterRegistry, "hit");
+        this.misses = lookupCounter(meterRegistry, "miss");
+        this.evictions = Counter.builder("storage.photo.cache.evictions")
+                .description("Photos evicted from the in-memory photo cache to make room")
+                .register(meterRegistry);
+        Gauge.builder("storage.photo.cache.size", this, PhotoCache::bytes)
+                .description("Bytes held by the in-memory photo cache")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("storage.photo.cache.entries", this, PhotoCache::entryCount)
+                .description("Photos held by the in-memory photo cache")
+                .register(meterRegistry);
+    }
+
+    private static Counter lookupCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("storage.photo.cache.requests")
+                .description("Photo cache lookups by result")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    public synchronized Entry get(String url) {
+        Entry entry = entries.get(url);
+        (entry != null ? hits : misses).increment();
+        return entry;
+    }
+
+    /** True if a photo like this one would be kept by {@link #put}. */
+    public boolean admits(PhotoFile photo) {
+        return photo.immutable() && photo.size() <= maxObjectBytes;
+    }
+
+    public synchronized void put(String url, Entry entry) {
+        if (!admits(entry.photo())) return;
+        Entry previous = entries.put(url, entry);
+        if (previous != null) bytes -= previous.content().length;
+        bytes += entry.content().length;
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().getValue().content().length;
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    synchronized long bytes() {
+        return bytes;
+    }
+
+    synchronized int entryCount() {
+        return entries.size();
+    }
+}
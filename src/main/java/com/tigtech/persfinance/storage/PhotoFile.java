@@ -0,0 +1,17 @@
+package com.tigtech.persfinance.storage;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Instant;
+
+/**
+ * A stored photo resolved for serving. {@code sha256} is the content hash for content-addressed photos and null for
+ * photos stored before content addressing, which are not immutable. Photos on the local filesystem have a
+ * {@code path}; photos in a remote object store have none and are served by redirecting to {@code location}.
+ */
+public record PhotoFile(Path path, URI location, long size, Instant lastModified, String contentType, String sha256) {
+
+    public boolean immutable() {
+        return sha256 != null;
+    }
+}
@@ -0,0 +1,145 @@
+package com.tigtech.persfinance.storage;
+
+import com.tigtech.persfinance.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Removes stored photos that no user references any more.
+ * <p>
+ * A photo's reference count is the number of users whose {@code photo_url} points at it. The collector walks the
+ * stored photos in batches of {@code app.storage.gc.batch-size}, counting references for a whole batch in one query,
+ * and deletes the unreferenced ones that have not been written or reused for {@code app.storage.gc.grace-minutes}
+ * (an upload stores the photo before the user row is updated, so a fresh blob is briefly unreferenced).
+ * <p>
+ * Each run also refreshes gauges for the number and size of stored photos, and for the space saved by
+ * deduplication (what storing every reference separately would take, minus what is stored).
+ */
+@Component
+public class PhotoGarbageCollector {
+
+    private static final Logger log = LoggerFactory.getLogger(PhotoGarbageCollector.class);
+
+    public record Result(long scanned, long deleted, long reclaimedBytes) {
+    }
+
+    private final StorageService storageService;
+    private final UserRepository userRepository;
+    private final int batchSize;
+    private final Duration grace;
+
+    private final Timer gcTimer;
+    private final Counter deletedCounter;
+    private final Counter reclaimedCounter;
+    private final AtomicLong blobCount = new AtomicLong();
+    private final AtomicLong storedBytes = new AtomicLong();
+    private final AtomicLong savedBytes = new AtomicLong();
+
+    public PhotoGarbageCollector(StorageService storageService,
+                                 UserRepository userRepository,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${app.storage.gc.batch-size:500}") int batchSize,
+                                 @Value("${app.storage.gc.grace-minutes:60}") long graceMinutes) {
+        this.storageService = storageService;
+        this.userRepository = userRepository;
+        this.batchSize = Math.max(1, batchSize);
+        this.grace = Duration.ofMinutes(graceMinutes);
+
+        this.gcTimer = Timer.builder("storage.gc.duration")
+                .description("Time taken by one photo garbage collection run")
+                .register(meterRegistry);
+        this.deletedCounter = Counter.builder("storage.gc.deleted")
+                .description("Unreferenced photos deleted by the garbage collector")
+                .register(meterRegistry);
+        this.reclaimedCounter = Counter.builder("storage.gc.reclaimed.bytes")
+                .description("Bytes freed by the photo garbage collector")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("storage.photos.blobs", blobCount, AtomicLong::get)
+                .description("Stored photos, as of the last garbage collection")
+                .register(meterRegistry);
+        Gauge.builder("storage.photos.stored.bytes", storedBytes, AtomicLong::get)
+                .description("Bytes used by stored photos, as of the last garbage collection")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("storage.photos.saved.bytes", savedBytes, AtomicLong::get)
+                .description("Bytes saved by storing photos shared by several users once, as of the last garbage collection")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${app.storage.gc.interval-ms:3600000}",
+            initialDelayString = "${app.storage.gc.initial-delay-ms:300000}")
+    public void collect() {
+        try {
+            Result result = gcTimer.record(this::run);
+            if (result.deleted() > 0) {
+                log.info("Photo GC deleted {} of {} photos, {} bytes reclaimed", result.deleted(), result.scanned(), result.reclaimedBytes());
+            }
+        } catch (RuntimeException ex) {
+            log.warn("Photo garbage collection failed", ex);
+        }
+    }
+
+    Result run() {
+        Instant cutoff = Instant.now().minus(grace);
+        long scanned = 0, deleted = 0, reclaimed = 0, stored = 0, saved = 0;
+        try (Stream<PhotoBlob> photos = storageService.listPhotos()) {
+            Iterator<PhotoBlob> it = photos.iterator();
+            List<PhotoBlob> batch = new ArrayList<>(batchSize);
+            while (it.hasNext()) {
+                batch.add(it.next());
+                if (batch.size() < batchSize && it.hasNext()) continue;
+
+                Map<String, Long> references = countReferences(batch);
+                for (PhotoBlob photo : batch) {
+                    scanned++;
+                    long refs = references.getOrDefault(photo.url(), 0L);
+                    if (refs == 0 && photo.lastModified().isBefore(cutoff) && storageService.deleteIfNotModifiedSince(photo.url(), cutoff)) {
+                        deleted++;
+                        reclaimed += photo.size();
+                        continue;
+                    }
+                    stored += photo.size();
+                    if (refs > 1) saved += (refs - 1) * photo.size();
+                }
+                batch.clear();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        deletedCounter.increment(deleted);
+        reclaimedCounter.increment(reclaimed);
+        blobCount.set(scanned - deleted);
+        storedBytes.set(stored);
+        savedBytes.set(saved);
+        return new Result(scanned, deleted, reclaimed);
+    }
+
+    private Map<String, Long> countReferences(List<PhotoBlob> batch) {
+        Map<String, Long> references = new HashMap<>();
+        for (Object[] row : userRepository.countPhotoReferences(batch.stream().map(PhotoBlob::url).toList())) {
+            references.put((String) row[0], (Long) row[1]);
+        }
+        return references;
+    }
+}
@@ -0,0 +1,20 @@
+package com.tigtech.persfinance.storage;
+
+/**
+ * Thrown when an uploaded photo is refused before being stored: too large, or not in a supported format.
+ */
+public class PhotoRejectedException extends RuntimeException {
+
+    public enum Reason { TOO_LARGE, UNSUPPORTED_TYPE }
+
+    private final Reason reason;
+
+    public PhotoRejectedException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+}
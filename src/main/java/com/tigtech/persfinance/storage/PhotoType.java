@@ -0,0 +1,53 @@
+package com.tigtech.persfinance.storage;
+
+import java.nio.ByteBuffer;
+import java.util.Optional;
+
+/**
+ * Accepted photo formats, recognised by their leading bytes rather than by the client's file name or content type.
+ */
+public enum PhotoType {
+
+    JPEG("image/jpeg", "jpg"),
+    PNG("image/png", "png"),
+    GIF("image/gif", "gif"),
+    WEBP("image/webp", "webp");
+
+    /** Bytes needed to tell the formats apart. */
+    static final int SIGNATURE_LENGTH = 12;
+
+    private final String contentType;
+    private final String extension;
+
+    PhotoType(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+
+    public String contentType() {
+        return contentType;
+    }
+
+    public String extension() {
+        return extension;
+    }
+
+    /**
+     * Detects the format from the first bytes of {@code head} (from position 0 up to its limit).
+     */
+    static Optional<PhotoType> detect(ByteBuffer head) {
+        if (startsWith(head, 0, 0xFF, 0xD8, 0xFF)) return Optional.of(JPEG);
+        if (startsWith(head, 0, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) return Optional.of(PNG);
+        if (startsWith(head, 0, 'G', 'I', 'F', '8')) return Optional.of(GIF);
+        if (startsWith(head, 0, 'R', 'I', 'F', 'F') && startsWith(head, 8, 'W', 'E', 'B', 'P')) return Optional.of(WEBP);
+        return Optional.empty();
+    }
+
+    private static boolean startsWith(ByteBuffer head, int offset, int... signature) {
+        if (head.limit() < offset + signature.length) return false;
+        for (int i = 0; i < signature.length; i++) {
+            if ((head.get(offset + i) & 0xFF) != signature[i]) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,252 @@
+package com.tigtech.persfinance.storage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates resized variants of uploaded photos in the background.
+ * <p>
+ * For every content-addressed JPEG, PNG or GIF photo, one variant per size in {@code app.storage.variants.sizes}
+ * (longest side, in pixels) is written through {@link StorageService#storeVariant}: JPEG when the image is opaque,
+ * PNG when it has transparency. Photos smaller than a size are re-encoded at their own dimensions, so every size
+ * exists once the photo has been processed. Work runs on a bounded pool ({@code app.storage.variants.threads},
+ * {@code app.storage.variants.queue-capacity}); when the queue is full the photo is skipped and picked up again
+ * the next time one of its variants is requested.
+ */
+@Component
+public class PhotoVariantPipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(PhotoVariantPipeline.class);
+
+    /** Larger images are not decoded (decompression bombs). */
+    static final long MAX_PIXELS = 50_000_000L;
+    private static final int MAX_REMEMBERED_FAILURES = 10_000;
+
+    private final StorageService storageService;
+    private final int[] sizes;
+    private final float jpegQuality;
+    private final ThreadPoolExecutor pool;
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final Set<String> failed = ConcurrentHashMap.newKeySet();
+
+    private final Timer duration;
+    private final Counter generated;
+    private final Counter failures;
+    private final Counter rejected;
+
+    public PhotoVariantPipeline(StorageService storageService,
+                                MeterRegistry meterRegistry,
+                                @Value("${app.storage.variants.sizes:64,256,1024}") int[] sizes,
+                                @Value("${app.storage.variants.jpeg-quality:0.85}") float jpegQuality,
+                                @Value("${app.storage.variants.threads:2}") int threads,
+                                @Value("${app.storage.variants.queue-capacity:200}") int queueCapacity) {
+        this.storageService = storageService;
+        this.sizes = Arrays.stream(sizes).filter(s -> s > 0).sorted().distinct().toArray();
+        this.jpegQuality = jpegQuality;
+
+        AtomicInteger n = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(Math.max(1, threads), Math.max(1, threads), 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                r -> {
+                    Thread t = new Thread(r, "photo-variants-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    t.setPriority(Thread.NORM_PRIORITY - 1);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        Gauge.builder("storage.variants.queue", pool, p -> p.getQueue().size())
+                .description("Photos waiting for their variants to be generated")
+                .register(meterRegistry);
+        Gauge.builder("storage.variants.active", pool, ThreadPoolExecutor::getActiveCount)
+                .description("Photos whose variants are being generated")
+                .register(meterRegistry);
+        this.duration = Timer.builder("storage.variants.duration")
+                .description("Time to generate all variants of one photo")
+                .register(meterRegistry);
+        this.generated = photoCounter(meterRegistry, "generated");
+        this.failures = photoCounter(meterRegistry, "failed");
+        this.rejected = photoCounter(meterRegistry, "rejected");
+    }
+
+    private static Counter photoCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("storage.variants.photos")
+                .description("Photos processed by the variant pipeline, by outcome")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * The variant size to serve for a requested size: the smallest one at least as large, or 0 (the original) if
+     * the request is larger than every variant.
+     */
+    public int pick(int requested) {
+        for (int size : sizes) {
+            if (size >= requested) return size;
+        }
+        return 0;
+    }
+
+    /** True if variants can be generated for photos of this content type. */
+    public boolean supports(PhotoFile photo) {
+        return photo.immutable() && sizes.length > 0 && !PhotoType.WEBP.contentType().equals(photo.contentType());
+    }
+
+    /**
+     * Queues variant generation for the photo at {@code url}; returns immediately. Requests for a photo that is
+     * already queued, or whose variants could not be generated before, are ignored.
+     */
+    public void submit(String url) {
+        if (sizes.length == 0 || failed.contains(url) || !pending.add(url)) return;
+        try {
+            pool.execute(() -> {
+                try {
+                    duration.record(() -> {
+                        try {
+                            generate(url);
+                        } catch (IOException | RuntimeException e) {
+                            failures.increment();
+                            if (failed.size() >= MAX_REMEMBERED_FAILURES) failed.clear();
+                            failed.add(url);
+                            log.warn("Could not generate variants of {}: {}", url, e.toString());
+                        }
+                    });
+                } finally {
+                    pending.remove(url);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(url);
+            rejected.increment();
+            log.debug("Variant queue full, skipping {}", url);
+        }
+    }
+
+    void generate(String url) throws IOException {
+        PhotoFile original = storageService.findPhoto(url).orElse(null);
+        if (original == null || !supports(original)) return;
+
+        BufferedImage image = decode(url, original);
+        // largest first, each size scaled from the previous one
+        for (int i = sizes.length - 1; i >= 0; i--) {
+            image = scale(image, sizes[i]);
+            PhotoType type = image.getColorModel().hasAlpha() ? PhotoType.PNG : PhotoType.JPEG;
+            storageService.storeVariant(url, sizes[i], type, encode(image, type));
+        }
+        generated.increment();
+    }
+
+    /**
+     * Decodes the photo, skipping pixels at read time when it is much larger than the largest variant. Photos in a
+     * remote store are streamed, buffered in memory rather than in ImageIO's temporary file cache.
+     */
+    private BufferedImage decode(String url, PhotoFile photo) throws IOException {
+        try (InputStream remote = photo.path() == null ? storageService.openPhoto(url) : null;
+             ImageInputStream in = remote != null ? new MemoryCacheImageInputStream(remote)
+                     : ImageIO.createImageInputStream(photo.path().toFile())) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) throw new IOException("No image reader for " + photo.contentType());
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > MAX_PIXELS) throw new IOException("Image too large: " + width + "x" + height);
+                ImageReadParam param = reader.getDefaultReadParam();
+                // keep at least twice the largest variant so the final downscale stays smooth
+                int step = Math.max(1, Math.max(width, height) / (sizes[sizes.length - 1] * 2));
+                if (step > 1) param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Scales so the longest side is at most {@code size}, halving repeatedly before the last bilinear step (which
+     * keeps quality close to area averaging at a fraction of its cost). Always returns an INT_RGB/INT_ARGB image.
+     */
+    static BufferedImage scale(BufferedImage source, int size) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        double ratio = Math.min(1.0, (double) size / Math.max(width, height));
+        int targetWidth = Math.max(1, (int) Math.round(width * ratio));
+        int targetHeight = Math.max(1, (int) Math.round(height * ratio));
+        int type = source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+
+        BufferedImage current = source;
+        do {
+            int w = Math.max(targetWidth, current.getWidth() / 2);
+            int h = Math.max(targetHeight, current.getHeight() / 2);
+            if (current.getWidth() == targetWidth && current.getHeight() == targetHeight && current.getType() == type) break;
+            BufferedImage next = new BufferedImage(w, h, type);
+            Graphics2D g = next.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(current, 0, 0, w, h, null);
+            } finally {
+                g.dispose();
+            }
+            current = next;
+        } while (current.getWidth() != targetWidth || current.getHeight() != targetHeight);
+        return current;
+    }
+
+    private byte[] encode(BufferedImage image, PhotoType type) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (type == PhotoType.PNG) {
+            ImageIO.write(image, "png", out);
+            return out.toByteArray();
+        }
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,256 @@
+package com.tigtech.persfinance.storage;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Minimal S3 REST client on {@link HttpClient}, signing requests with AWS Signature Version 4. It works against AWS
+ * and S3-compatible servers (MinIO, Ceph, R2, ...), in path-style ({@code endpoint/bucket/key}) or virtual-hosted
+ * style ({@code bucket.endpoint/key}). Like {@code KeycloakHttpClient}, calls are asynchronous and complete normally
+ * for any HTTP status; only transport failures complete exceptionally.
+ */
+class S3Client {
+
+    static final String UNSIGNED_PAYLOAD = "UNSIGNED-PAYLOAD";
+    static final String EMPTY_SHA256 = "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+
+    private static final DateTimeFormatter AMZ_DATE = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+    private static final DateTimeFormatter SCOPE_DATE = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    record Response(int status, Map<String, List<String>> headers, byte[] body) {
+
+        boolean is2xx() {
+            return status >= 200 && status < 300;
+        }
+
+        String header(String name) {
+            return headers.entrySet().stream()
+                    .filter(e -> e.getKey().equalsIgnoreCase(name) && !e.getValue().isEmpty())
+                    .map(e -> e.getValue().get(0))
+                    .findFirst().orElse(null);
+        }
+
+        Document xml() throws IOException {
+            return parseXml(body);
+        }
+
+        /** Text of the first element with this tag name, or null. */
+        String xmlText(String tag) throws IOException {
+            var nodes = xml().getElementsByTagName(tag);
+            return nodes.getLength() == 0 ? null : nodes.item(0).getTextContent();
+        }
+
+        String bodyText() {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+
+    private final HttpClient httpClient;
+    private final URI endpoint;
+    private final String region;
+    private final String bucket;
+    private final String accessKey;
+    private final String secretKey;
+    private final boolean pathStyle;
+    private final Duration requestTimeout;
+    private final MeterRegistry meterRegistry;
+    private final Clock clock;
+
+    S3Client(HttpClient httpClient, URI endpoint, String region, String bucket, String accessKey, String secretKey,
+             boolean pathStyle, Duration requestTimeout, MeterRegistry meterRegistry, Clock clock) {
+        this.httpClient = httpClient;
+        this.endpoint = endpoint;
+        this.region = region;
+        this.bucket = bucket;
+        this.accessKey = accessKey;
+        this.secretKey = secretKey;
+        this.pathStyle = pathStyle;
+        this.requestTimeout = requestTimeout;
+        this.meterRegistry = meterRegistry;
+        this.clock = clock;
+    }
+
+    /**
+     * Sends a signed request. {@code headers} (lower-case names) are signed along with host, x-amz-date and
+     * x-amz-content-sha256; a null body sends no content. Bodies are sent as {@code UNSIGNED-PAYLOAD}, so they are
+     * not hashed twice (photos are already hashed while they are read).
+     */
+    CompletableFuture<Response> send(String operation, String method, String key, Map<String, String> query,
+                                     Map<String, String> headers, HttpRequest.BodyPublisher body) {
+        String payloadHash = body == null ? EMPTY_SHA256 : UNSIGNED_PAYLOAD;
+        HttpRequest.Builder builder = signedRequest(method, key, query, headers, payloadHash)
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : body);
+        return send(operation, builder.build(), HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(r -> new Response(r.statusCode(), r.headers().map(), r.body()));
+    }
+
+    /** GET returning the body as a stream, for large objects. The caller must close it. */
+    CompletableFuture<HttpResponse<InputStream>> getStream(String operation, String key) {
+        HttpRequest request = signedRequest("GET", key, Map.of(), Map.of(), EMPTY_SHA256).GET().build();
+        return send(operation, request, HttpResponse.BodyHandlers.ofInputStream());
+    }
+
+    /** Presigned GET URL for the object, valid for {@code expiry} (at most 7 days). */
+    URI presignGet(String key, Duration expiry) {
+        ZonedDateTime now = ZonedDateTime.now(clock).withZoneSameInstant(ZoneOffset.UTC);
+        String amzDate = AMZ_DATE.format(now);
+        String scope = SCOPE_DATE.format(now) + "/" + region + "/s3/aws4_request";
+
+        Map<String, String> query = new TreeMap<>();
+        query.put("X-Amz-Algorithm", "AWS4-HMAC-SHA256");
+        query.put("X-Amz-Credential", accessKey + "/" + scope);
+        query.put("X-Amz-Date", amzDate);
+        query.put("X-Amz-Expires", String.valueOf(expiry.toSeconds()));
+        query.put("X-Amz-SignedHeaders", "host");
+        URI uri = objectUri(key, query);
+
+        String canonicalRequest = "GET\n" + uri.getRawPath() + "\n" + uri.getRawQuery() + "\n"
+                + "host:" + hostHeader() + "\n\nhost\n" + UNSIGNED_PAYLOAD;
+        String signature = signature(amzDate, scope, canonicalRequest, now);
+        return URI.create(uri + "&X-Amz-Signature=" + signature);
+    }
+
+    private HttpRequest.Builder signedRequest(String method, String key, Map<String, String> query,
+                                              Map<String, String> headers, String payloadHash) {
+        ZonedDateTime now = ZonedDateTime.now(clock).withZoneSameInstant(ZoneOffset.UTC);
+        URI uri = objectUri(key, query);
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri).timeout(requestTimeout);
+        signedHeaders(method, uri, headers, payloadHash, now).forEach((name, value) -> {
+            if (!name.equals("host")) builder.header(name, value);
+        });
+        return builder;
+    }
+
+    /**
+     * All headers to send for a request, including x-amz-date, x-amz-content-sha256 and authorization
+     * ("host" is included for signing; the HTTP client sets it itself).
+     */
+    Map<String, String> signedHeaders(String method, URI uri, Map<String, String> headers, String payloadHash, ZonedDateTime now) {
+        String amzDate = AMZ_DATE.format(now);
+        String scope = SCOPE_DATE.format(now) + "/" + region + "/s3/aws4_request";
+
+        TreeMap<String, String> signed = new TreeMap<>();
+        headers.forEach((name, value) -> signed.put(name.toLowerCase(), value.trim()));
+        signed.put("host", hostHeader());
+        signed.put("x-amz-content-sha256", payloadHash);
+        signed.put("x-amz-date", amzDate);
+
+        StringBuilder canonicalHeaders = new StringBuilder();
+        signed.forEach((name, value) -> canonicalHeaders.append(name).append(':').append(value).append('\n'));
+        String signedNames = String.join(";", signed.keySet());
+        String canonicalRequest = method + "\n" + uri.getRawPath() + "\n" + (uri.getRawQuery() == null ? "" : uri.getRawQuery()) + "\n"
+                + canonicalHeaders + "\n" + signedNames + "\n" + payloadHash;
+
+        signed.put("authorization", "AWS4-HMAC-SHA256 Credential=" + accessKey + "/" + scope
+                + ", SignedHeaders=" + signedNames + ", Signature=" + signature(amzDate, scope, canonicalRequest, now));
+        return signed;
+    }
+
+    /** Object URI with the query in canonical (sorted, RFC 3986 encoded) form, so it is sent exactly as signed. */
+    URI objectUri(String key, Map<String, String> query) {
+        StringBuilder path = new StringBuilder();
+        if (pathStyle) path.append('/').append(encode(bucket));
+        for (String segment : key.split("/", -1)) path.append('/').append(encode(segment));
+
+        StringJoiner canonicalQuery = new StringJoiner("&");
+        new TreeMap<>(query).forEach((name, value) -> canonicalQuery.add(encode(name) + "=" + encode(value)));
+        String scheme = endpoint.getScheme();
+        String authority = pathStyle ? endpoint.getRawAuthority() : bucket + "." + endpoint.getRawAuthority();
+        return URI.create(scheme + "://" + authority + path + (query.isEmpty() ? "" : "?" + canonicalQuery));
+    }
+
+    private String hostHeader() {
+        return pathStyle ? endpoint.getRawAuthority() : bucket + "." + endpoint.getRawAuthority();
+    }
+
+    private String signature(String amzDate, String scope, String canonicalRequest, ZonedDateTime now) {
+        String stringToSign = "AWS4-HMAC-SHA256\n" + amzDate + "\n" + scope + "\n" + hex(sha256(canonicalRequest.getBytes(StandardCharsets.UTF_8)));
+        byte[] key = hmac(("AWS4" + secretKey).getBytes(StandardCharsets.UTF_8), SCOPE_DATE.format(now));
+        key = hmac(key, region);
+        key = hmac(key, "s3");
+        key = hmac(key, "aws4_request");
+        return hex(hmac(key, stringToSign));
+    }
+
+    private <T> CompletableFuture<HttpResponse<T>> send(String operation, HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        return httpClient.sendAsync(request, handler)
+                .whenComplete((response, ex) -> sample.stop(Timer.builder("storage.s3.requests")
+                        .description("Calls to the S3 storage backend by operation and response status")
+                        .tag("operation", operation)
+                        .tag("method", request.method())
+                        .tag("status", ex == null ? String.valueOf(response.statusCode()) : "IO_ERROR")
+                        .register(meterRegistry)));
+    }
+
+    /** RFC 3986 percent-encoding as required by SigV4 (unreserved characters are left as they are). */
+    static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8)
+                .replace("+", "%20")
+                .replace("*", "%2A")
+                .replace("%7E", "~");
+    }
+
+    static Document parseXml(byte[] xml) throws IOException {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            return factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml));
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException("Invalid XML response from S3", e);
+        }
+    }
+
+    private static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static byte[] hmac(byte[] key, String data) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        return HexFormat.of().formatHex(bytes);
+    }
+}
@@ -0,0 +1,539 @@
+package com.tigtech.persfinance.storage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.file.NoSuchFileException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Photo storage in an S3-compatible object store (AWS S3, MinIO, ...), selected with {@code app.storage.backend=s3}.
+ * <p>
+ * Objects use the same content-addressed layout as {@link LocalStorageService} ({@code blobs/...},
+ * {@code variants/...}). Uploads are read in {@code app.storage.s3.part-size-bytes} chunks while their SHA-256 is
+ * computed: a photo that fits in one chunk is written with a single PUT; a larger one goes to a temporary
+ * {@code tmp/<uuid>} object as a multipart upload, with up to {@code app.storage.s3.upload-concurrency} parts in
+ * flight while the next one is read, so memory per upload is bounded by {@code part-size × concurrency}. Once the
+ * hash is known it is copied server-side to its blob key and the temporary object deleted. Content that is already
+ * stored is not written again; the existing object is copied onto itself, which refreshes its modification time
+ * for {@link PhotoGarbageCollector}. A lifecycle rule expiring {@code tmp/} and incomplete multipart uploads after a
+ * day cleans up after uploads interrupted by a crash.
+ * <p>
+ * Photo URLs are {@code <public-base-url><key>} when a CDN or public bucket URL is configured, otherwise
+ * {@code /uploads/<key>}, which {@code PhotoController} answers with a redirect to a presigned URL.
+ */
+@Service
+@ConditionalOnProperty(name = "app.storage.backend", havingValue = "s3")
+public class S3StorageService implements StorageService {
+
+    private static final Logger log = LoggerFactory.getLogger(S3StorageService.class);
+
+    private static final String URL_PREFIX = "/uploads/";
+    private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+    private static final String OCTET_STREAM = "application/octet-stream";
+    private static final int LIST_PAGE_SIZE = 1000;
+
+    private final S3Client s3;
+    private final String bucket;
+    private final int partSize;
+    private final int uploadConcurrency;
+    private final Duration presignExpiry;
+    private final String publicBaseUrl;
+    private final long maxPhotoBytes;
+
+    private final Counter dedupHits;
+    private final Counter dedupBytes;
+    private final Counter singleUploads;
+    private final Counter multipartUploads;
+
+    public S3StorageService(@Value("${app.storage.s3.endpoint}") String endpoint,
+                            @Value("${app.storage.s3.region:us-east-1}") String region,
+                            @Value("${app.storage.s3.bucket}") String bucket,
+                            @Value("${app.storage.s3.access-key}") String accessKey,
+                            @Value("${app.storage.s3.secret-key}") String secretKey,
+                            @Value("${app.storage.s3.path-style:true}") boolean pathStyle,
+                            @Value("${app.storage.s3.part-size-bytes:8388608}") int partSize,
+                            @Value("${app.storage.s3.upload-concurrency:4}") int uploadConcurrency,
+                            @Value("${app.storage.s3.presign-expiry-seconds:900}") long presignExpirySeconds,
+                            @Value("${app.storage.s3.public-base-url:}") String publicBaseUrl,
+                            @Value("${app.storage.s3.request-timeout-ms:30000}") long requestTimeoutMs,
+                            @Value("${app.storage.max-photo-bytes:20971520}") long maxPhotoBytes,
+                            MeterRegistry meterRegistry) {
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+        this.s3 = new S3Client(httpClient, URI.create(endpoint), region, bucket, accessKey, secretKey, pathStyle,
+                Duration.ofMillis(requestTimeoutMs), meterRegistry, Clock.systemUTC());
+        this.bucket = bucket;
+        this.partSize = partSize;
+        this.uploadConcurrency = Math.max(1, uploadConcurrency);
+        this.presignExpiry = Duration.ofSeconds(presignExpirySeconds);
+        this.publicBaseUrl = publicBaseUrl.isEmpty() || publicBaseUrl.endsWith("/") ? publicBaseUrl : publicBaseUrl + "/";
+        this.maxPhotoBytes = maxPhotoBytes;
+
+        this.dedupHits = Counter.builder("storage.photos.deduplicated")
+                .description("Uploads whose content was already stored")
+                .register(meterRegistry);
+        this.dedupBytes = Counter.builder("storage.photos.deduplicated.bytes")
+                .description("Bytes not written because the uploaded content was already stored")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.singleUploads = uploadCounter(meterRegistry, "single");
+        this.multipartUploads = uploadCounter(meterRegistry, "multipart");
+        log.info("Photo storage: S3 bucket {} at {}, {} byte parts, {} parallel part uploads",
+                bucket, endpoint, partSize, this.uploadConcurrency);
+    }
+
+    private static Counter uploadCounter(MeterRegistry meterRegistry, String mode) {
+        return Counter.builder("storage.s3.uploads")
+                .description("Photos written to S3 by upload mode")
+                .tag("mode", mode)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public StoredPhoto storeUserPhoto(InputStream content, long contentLength, String userId) throws IOException {
+        if (contentLength > maxPhotoBytes) throw tooLarge();
+
+        byte[] first = new byte[partSize];
+        int n = content.readNBytes(first, 0, first.length);
+        if (n == 0) throw new PhotoRejectedException(PhotoRejectedException.Reason.UNSUPPORTED_TYPE, "Photo is empty");
+        PhotoType type = PhotoType.detect(ByteBuffer.wrap(first, 0, n)).orElseThrow(() -> new PhotoRejectedException(
+                PhotoRejectedException.Reason.UNSUPPORTED_TYPE, "Photo must be a JPEG, PNG, GIF or WebP image"));
+        if (n < first.length) return storeSingle(first, n, type);
+        return storeMultipart(content, first, type);
+    }
+
+    private StoredPhoto storeSingle(byte[] content, int size, PhotoType type) throws IOException {
+        if (size > maxPhotoBytes) throw tooLarge();
+        MessageDigest sha256 = sha256();
+        sha256.update(content, 0, size);
+        String hash = HexFormat.of().formatHex(sha256.digest());
+        String key = blobKey(hash, type);
+        if (reuse(key, type)) {
+            dedupHits.increment();
+            dedupBytes.increment(size);
+        } else {
+            check("put", key, await("put", s3.send("put_object", "PUT", key, Map.of(), objectHeaders(type),
+                    HttpRequest.BodyPublishers.ofByteArray(content, 0, size))));
+            singleUploads.increment();
+        }
+        return new StoredPhoto(url(key), hash, size, type);
+    }
+
+    private StoredPhoto storeMultipart(InputStream content, byte[] first, PhotoType type) throws IOException {
+        String tmpKey = "tmp/" + UUID.randomUUID();
+        Document created = check("create multipart upload", tmpKey, await("create multipart upload",
+                s3.send("create_multipart_upload", "POST", tmpKey, Map.of("uploads", ""), objectHeaders(type), null))).xml();
+        String uploadId = text(created.getDocumentElement(), "UploadId");
+        if (uploadId == null) throw new IOException("S3 did not return an upload id for " + tmpKey);
+
+        MessageDigest sha256 = sha256();
+        Semaphore slots = new Semaphore(uploadConcurrency);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<CompletableFuture<String>> parts = new ArrayList<>();
+        boolean completed = false;
+        long size = 0;
+        try {
+            acquire(slots);
+            byte[] chunk = first;
+            int n = first.length;
+            do {
+                size += n;
+                // stop reading as soon as the limit is crossed, whatever Content-Length said
+                if (size > maxPhotoBytes) throw tooLarge();
+                if (failure.get() != null) break;
+                sha256.update(chunk, 0, n);
+                CompletableFuture<String> part = uploadPart(tmpKey, uploadId, parts.size() + 1, chunk, n);
+                part.whenComplete((etag, ex) -> {
+                    if (ex != null) failure.compareAndSet(null, ex);
+                    slots.release();
+                });
+                parts.add(part);
+                // a new buffer only once a part slot is free: at most uploadConcurrency chunks in memory
+                acquire(slots);
+                chunk = new byte[partSize];
+                n = content.readNBytes(chunk, 0, chunk.length);
+            } while (n > 0);
+
+            List<String> etags = new ArrayList<>(parts.size());
+            for (CompletableFuture<String> part : parts) etags.add(await("upload part", part));
+            completeMultipart(tmpKey, uploadId, etags);
+            completed = true;
+        } finally {
+            if (!completed) {
+                parts.forEach(part -> part.cancel(false));
+                abortMultipart(tmpKey, uploadId);
+            }
+        }
+
+        try {
+            String hash = HexFormat.of().formatHex(sha256.digest());
+            String key = blobKey(hash, type);
+            if (reuse(key, type)) {
+                dedupHits.increment();
+                dedupBytes.increment(size);
+            } else {
+                copy(tmpKey, key, type);
+                multipartUploads.increment();
+            }
+            return new StoredPhoto(url(key), hash, size, type);
+        } finally {
+            deleteQuietly(tmpKey);
+        }
+    }
+
+    private CompletableFuture<String> uploadPart(String key, String uploadId, int partNumber, byte[] chunk, int length) {
+        Map<String, String> query = Map.of("partNumber", String.valueOf(partNumber), "uploadId", uploadId);
+        return s3.send("upload_part", "PUT", key, query, Map.of(), HttpRequest.BodyPublishers.ofByteArray(chunk, 0, length))
+                .thenApply(response -> {
+                    String etag = response.header("ETag");
+                    if (!response.is2xx() || etag == null) {
+                        throw new CompletionException(new IOException("S3 upload of part " + partNumber + " of " + key
+                                + " failed with status " + response.status() + ": " + response.bodyText()));
+                    }
+                    return etag;
+                });
+    }
+
+    private void completeMultipart(String key, String uploadId, List<String> etags) throws IOException {
+        StringBuilder xml = new StringBuilder("<CompleteMultipartUpload>");
+        for (int i = 0; i < etags.size(); i++) {
+            xml.append("<Part><PartNumber>").append(i + 1).append("</PartNumber><ETag>")
+                    .append(etags.get(i).replace("&", "&amp;").replace("\"", "&quot;")).append("</ETag></Part>");
+        }
+        xml.append("</CompleteMultipartUpload>");
+        // may fail after a 200 status, reported in the body
+        checkNoError("complete multipart upload", key, await("complete multipart upload", s3.send("complete_multipart_upload",
+                "POST", key, Map.of("uploadId", uploadId), Map.of("content-type", "application/xml"),
+                HttpRequest.BodyPublishers.ofString(xml.toString()))));
+    }
+
+    private void abortMultipart(String key, String uploadId) {
+        try {
+            S3Client.Response response = await("abort multipart upload",
+                    s3.send("abort_multipart_upload", "DELETE", key, Map.of("uploadId", uploadId), Map.of(), null));
+            if (!response.is2xx() && response.status() != 404) {
+                log.warn("Could not abort multipart upload of {}: status {}", key, response.status());
+            }
+        } catch (IOException e) {
+            log.warn("Could not abort multipart upload of {}", key, e);
+        }
+    }
+
+    /**
+     * True if the object exists; it is then copied onto itself, which refreshes its modification time.
+     */
+    private boolean reuse(String key, PhotoType type) throws IOException {
+        S3Client.Response response = await("copy", s3.send("copy_object", "PUT", key, Map.of(), copyHeaders(key, type), null));
+        if (response.status() == 404) return false;
+        checkNoError("touch", key, response);
+        return true;
+    }
+
+    private void copy(String source, String target, PhotoType type) throws IOException {
+        checkNoError("copy", target, await("copy", s3.send("copy_object", "PUT", target, Map.of(), copyHeaders(source, type), null)));
+    }
+
+    private Map<String, String> copyHeaders(String source, PhotoType type) {
+        Map<String, String> headers = new HashMap<>(objectHeaders(type));
+        headers.put("x-amz-copy-source", "/" + S3Client.encode(bucket) + "/" + encodeKey(source));
+        // REPLACE is what allows copying an object onto itself
+        headers.put("x-amz-metadata-directive", "REPLACE");
+        return headers;
+    }
+
+    private static Map<String, String> objectHeaders(PhotoType type) {
+        return Map.of("content-type", type.contentType(), "cache-control", IMMUTABLE);
+    }
+
+    @Override
+    public Optional<PhotoFile> findPhoto(String url) throws IOException {
+        String key = key(url);
+        if (key == null || !(key.startsWith("blobs/") || key.startsWith("users/"))) return Optional.empty();
+        String hash = key.startsWith("blobs/") ? blobHash(key) : null;
+        return head(key, hash);
+    }
+
+    @Override
+    public InputStream openPhoto(String url) throws IOException {
+        String key = key(url);
+        if (key == null) throw new NoSuchFileException(url);
+        HttpResponse<InputStream> response = await("get", s3.getStream("get_object", key));
+        if (response.statusCode() == 200) return response.body();
+        try (InputStream body = response.body()) {
+            if (response.statusCode() == 404) throw new NoSuchFileException(url);
+            throw new IOException("S3 get of " + key + " failed with status " + response.statusCode());
+        }
+    }
+
+    @Override
+    public void storeVariant(String url, int size, PhotoType type, byte[] content) throws IOException {
+        String key = key(url);
+        String hash = key != null ? blobHash(key) : null;
+        if (hash == null) throw new IllegalArgumentException("Not a content-addressed photo: " + url);
+        String variantKey = variantPrefix(hash) + size + "." + type.extension();
+        check("put", variantKey, await("put", s3.send("put_object", "PUT", variantKey, Map.of(), objectHeaders(type),
+                HttpRequest.BodyPublishers.ofByteArray(content))));
+    }
+
+    @Override
+    public Optional<PhotoFile> findVariant(String url, int size) throws IOException {
+        String key = key(url);
+        String hash = key != null ? blobHash(key) : null;
+        if (hash == null) return Optional.empty();
+        for (PhotoType type : PhotoType.values()) {
+            Optional<PhotoFile> variant = head(variantPrefix(hash) + size + "." + type.extension(), hash);
+            if (variant.isPresent()) return variant;
+        }
+        return Optional.empty();
+    }
+
+    private Optional<PhotoFile> head(String key, String hash) throws IOException {
+        S3Client.Response response = await("head", s3.send("head_object", "HEAD", key, Map.of(), Map.of(), null));
+        if (response.status() == 404) return Optional.empty();
+        check("head", key, response);
+        String contentType = response.header("Content-Type");
+        return Optional.of(new PhotoFile(null, location(key), Long.parseLong(response.header("Content-Length")),
+                lastModified(response), contentType != null ? contentType : OCTET_STREAM, hash));
+    }
+
+    @Override
+    public Stream<PhotoBlob> listPhotos() {
+        // blobs plus the per-user files written before photos were content-addressed, if any were migrated
+        return Stream.concat(list("blobs/"), list("users/"))
+                .map(object -> new PhotoBlob(url(object.key()), object.size(), object.lastModified()));
+    }
+
+    private record S3Object(String key, long size, Instant lastModified) {
+    }
+
+    /** Objects under {@code prefix}, fetched one ListObjectsV2 page at a time as the stream is consumed. */
+    private Stream<S3Object> list(String prefix) {
+        Iterator<List<S3Object>> pages = new Iterator<>() {
+            private String continuationToken;
+            private boolean done;
+
+            @Override
+            public boolean hasNext() {
+                return !done;
+            }
+
+            @Override
+            public List<S3Object> next() {
+                if (done) throw new NoSuchElementException();
+                Map<String, String> query = new HashMap<>();
+                query.put("list-type", "2");
+                query.put("prefix", prefix);
+                query.put("max-keys", String.valueOf(LIST_PAGE_SIZE));
+                if (continuationToken != null) query.put("continuation-token", continuationToken);
+                try {
+                    Element result = check("list", prefix, await("list",
+                            s3.send("list_objects", "GET", "", query, Map.of(), null))).xml().getDocumentElement();
+                    List<S3Object> objects = new ArrayList<>();
+                    NodeList contents = result.getElementsByTagName("Contents");
+                    for (int i = 0; i < contents.getLength(); i++) {
+                        Element object = (Element) contents.item(i);
+                        objects.add(new S3Object(text(object, "Key"), Long.parseLong(text(object, "Size")),
+                                Instant.parse(text(object, "LastModified"))));
+                    }
+                    continuationToken = text(result, "NextContinuationToken");
+                    done = !"true".equals(text(result, "IsTruncated")) || continuationToken == null;
+                    return objects;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(pages, Spliterator.ORDERED), false)
+                .flatMap(List::stream);
+    }
+
+    @Override
+    public boolean deleteIfNotModifiedSince(String url, Instant cutoff) throws IOException {
+        String key = key(url);
+        if (key == null) return false;
+        // re-read here rather than trusting the listing: an upload may have reused the blob since
+        Optional<PhotoFile> current = head(key, null);
+        if (current.isEmpty() || current.get().lastModified().isAfter(cutoff)) return false;
+        deleteObject(key);
+        String hash = blobHash(key);
+        if (hash != null) {
+            List<String> variants;
+            try (Stream<S3Object> listed = list(variantPrefix(hash))) {
+                variants = listed.map(S3Object::key).collect(Collectors.toList());
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            for (String variant : variants) deleteObject(variant);
+        }
+        return true;
+    }
+
+    @Override
+    public void delete(String pathOrUrl) throws Exception {
+        if (pathOrUrl == null) return;
+        String key = key(pathOrUrl);
+        if (key != null) deleteObject(key);
+    }
+
+    private void deleteObject(String key) throws IOException {
+        S3Client.Response response = await("delete", s3.send("delete_object", "DELETE", key, Map.of(), Map.of(), null));
+        if (response.status() != 404) check("delete", key, response);
+    }
+
+    private void deleteQuietly(String key) {
+        try {
+            deleteObject(key);
+        } catch (IOException e) {
+            log.warn("Could not delete temporary object {}", key, e);
+        }
+    }
+
+    private String url(String key) {
+        return (publicBaseUrl.isEmpty() ? URL_PREFIX : publicBaseUrl) + key;
+    }
+
+    /** Object key for a photo URL or key; null if it is not one of ours. */
+    private String key(String pathOrUrl) {
+        String key;
+        if (!publicBaseUrl.isEmpty() && pathOrUrl.startsWith(publicBaseUrl)) {
+            key = pathOrUrl.substring(publicBaseUrl.length());
+        } else if (pathOrUrl.startsWith(URL_PREFIX)) {
+            key = pathOrUrl.substring(URL_PREFIX.length());
+        } else if (pathOrUrl.startsWith("http://") || pathOrUrl.startsWith("https://")) {
+            return null;
+        } else {
+            key = pathOrUrl.replaceFirst("^/", "");
+        }
+        if (key.isEmpty() || key.startsWith("tmp/") || key.contains("//") || ("/" + key + "/").contains("/../")) return null;
+        return key;
+    }
+
+    private URI location(String key) {
+        return publicBaseUrl.isEmpty() ? s3.presignGet(key, presignExpiry) : URI.create(publicBaseUrl + encodeKey(key));
+    }
+
+    private static String blobKey(String hash, PhotoType type) {
+        return "blobs/" + hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash + "." + type.extension();
+    }
+
+    private static String variantPrefix(String hash) {
+        return "variants/" + hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash + "-";
+    }
+
+    /** The content hash of a blob key, or null. */
+    private static String blobHash(String key) {
+        if (!key.startsWith("blobs/")) return null;
+        String name = key.substring(key.lastIndexOf('/') + 1);
+        int dot = name.lastIndexOf('.');
+        return dot == 64 ? name.substring(0, dot) : null;
+    }
+
+    private static String encodeKey(String key) {
+        return Stream.of(key.split("/", -1)).map(S3Client::encode).collect(Collectors.joining("/"));
+    }
+
+    private static Instant lastModified(S3Client.Response response) {
+        String value = response.header("Last-Modified");
+        return value == null ? Instant.EPOCH : ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+    }
+
+    private static String text(Element parent, String tag) {
+        NodeList nodes = parent.getElementsByTagName(tag);
+        return nodes.getLength() == 0 ? null : nodes.item(0).getTextContent();
+    }
+
+    private static S3Client.Response check(String operation, String key, S3Client.Response response) throws IOException {
+        if (!response.is2xx()) {
+            throw new IOException("S3 " + operation + " of " + key + " failed with status " + response.status() + ": " + response.bodyText());
+        }
+        return response;
+    }
+
+    private static void checkNoError(String operation, String key, S3Client.Response response) throws IOException {
+        check(operation, key, response);
+        if (response.body().length > 0 && "Error".equals(response.xml().getDocumentElement().getTagName())) {
+            throw new IOException("S3 " + operation + " of " + key + " failed: " + response.bodyText());
+        }
+    }
+
+    private static <T> T await(String operation, CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted during S3 " + operation);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            throw new IOException("S3 " + operation + " failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private static void acquire(Semaphore slots) throws InterruptedIOException {
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a part upload slot");
+        }
+    }
+
+    private PhotoRejectedException tooLarge() {
+        return new PhotoRejectedException(PhotoRejectedException.Reason.TOO_LARGE,
+                "Photo exceeds the maximum size of " + maxPhotoBytes + " bytes");
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -2,15 +2,66 @@ package com.tigtech.persfinance.storage;
 
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.stream.Stream;
+
 public interface StorageService {
     /**
      * Uploads a file and returns a public URL where it can be accessed.
      */
-    String uploadUserPhoto(MultipartFile file, String userId) throws Exception;
+    default String uploadUserPhoto(MultipartFile file, String userId) throws Exception {
+        try (InputStream in = file.getInputStream()) {
+            return storeUserPhoto(in, file.getSize(), userId).url();
+        }
+    }
+
+    /**
+     * Stores a photo read from {@code content}, which is consumed but not closed. {@code contentLength} is the
+     * size announced by the client, or -1 if unknown; it is only used to refuse oversized uploads early.
+     * Photos are content-addressed: identical content is stored once and gets the same URL, whichever user uploads it.
+     *
+     * @throws PhotoRejectedException if the photo is too large or not in a supported format
+     */
+    StoredPhoto storeUserPhoto(InputStream content, long contentLength, String userId) throws IOException;
+
+    /**
+     * The stored photo behind a URL returned by {@link #storeUserPhoto}, for serving it.
+     */
+    Optional<PhotoFile> findPhoto(String url) throws IOException;
+
+    /**
+     * Reads the stored photo at {@code url}. The stream must be closed.
+     *
+     * @throws java.nio.file.NoSuchFileException if there is no such photo
+     */
+    InputStream openPhoto(String url) throws IOException;
+
+    /**
+     * Stores a resized variant of the content-addressed photo at {@code url}, {@code size} pixels on its longest side.
+     * Variants are not listed by {@link #listPhotos()} and are deleted together with their photo.
+     */
+    void storeVariant(String url, int size, PhotoType type, byte[] content) throws IOException;
+
+    /**
+     * The variant of the photo at {@code url} with the given size, if it has been generated.
+     */
+    Optional<PhotoFile> findVariant(String url, int size) throws IOException;
+
+    /**
+     * All stored photos, for garbage collection. The stream must be closed.
+     */
+    Stream<PhotoBlob> listPhotos() throws IOException;
+
+    /**
+     * Deletes a stored photo unless it was written or reused after {@code cutoff}; returns true if it was deleted.
+     */
+    boolean deleteIfNotModifiedSince(String url, Instant cutoff) throws IOException;
 
     /**
      * Delete a stored file by its path or URL.
      */
     void delete(String pathOrUrl) throws Exception;
 }
-
@@ -0,0 +1,7 @@
+package com.tigtech.persfinance.storage;
+
+/**
+ * Result of storing a photo: where it can be fetched, and the SHA-256 (hex) and size of its content.
+ */
+public record StoredPhoto(String url, String sha256, long size, PhotoType type) {
+}
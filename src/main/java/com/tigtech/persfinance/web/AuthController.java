@@ -2,18 +2,18 @@ package com.tigtech.persfinance.web;
 
 import com.tigtech.persfinance.domain.User;
 import com.tigtech.persfinance.repository.UserRepository;
+import com.tigtech.persfinance.security.LocalTokenIssuer;
 import com.tigtech.persfinance.service.AuthService;
-import com.tigtech.persfinance.service.KeycloakAdminService;
 import com.tigtech.persfinance.service.KeycloakAuthService;
 import com.tigtech.persfinance.web.dto.*;
 import jakarta.validation.Valid;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
 import org.springframework.web.bind.annotation.*;
@@ -22,6 +22,7 @@ import java.time.Instant;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 @RestController
@@ -29,21 +30,19 @@ import java.util.stream.Collectors;
 public class AuthController {
 
     private final UserRepository userRepository;
-    private final PasswordEncoder passwordEncoder;
     private final AuthService authService;
-    private final KeycloakAdminService keycloakAdminService;
     private final KeycloakAuthService keycloakAuthService;
+    // null unless app.auth.token-issuer=local
+    private final LocalTokenIssuer localTokenIssuer;
 
     public AuthController(UserRepository userRepository,
-                          PasswordEncoder passwordEncoder,
                           AuthService authService,
-                          KeycloakAdminService keycloakAdminService,
-                          KeycloakAuthService keycloakAuthService) {
+                          KeycloakAuthService keycloakAuthService,
+                          ObjectProvider<LocalTokenIssuer> localTokenIssuer) {
         this.userRepository = userRepository;
-        this.passwordEncoder = passwordEncoder;
         this.authService = authService;
-        this.keycloakAdminService = keycloakAdminService;
         this.keycloakAuthService = keycloakAuthService;
+        this.localTokenIssuer = localTokenIssuer.getIfAvailable();
     }
 
     @PostMapping(value = "/register", consumes = MediaType.APPLICATION_JSON_VALUE)
@@ -52,23 +51,7 @@ public class AuthController {
             return ResponseEntity.badRequest().body(Map.of("error", "Email already in use"));
         }
 
-        User user = User.builder()
-                .firstName(request.getFirstName())
-                .lastName(request.getLastName())
-                .email(request.getEmail())
-                .password(passwordEncoder.encode(request.getPassword()))
-                .provider("local")
-                .role("ROLE_USER")
-                .active(true)
-                .build();
-        userRepository.save(user);
-
-        try {
-            keycloakAdminService.createUser(request);
-        } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.BAD_GATEWAY)
-                    .body(Map.of("error", "User created locally but failed to create in Keycloak"));
-        }
+        User user = authService.register(request);
 
         // hide password from response (using legacy setter for backward compatibility)
         user.setPassword(null);
@@ -76,10 +59,22 @@ public class AuthController {
     }
 
     @PostMapping(value = "/login", consumes = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<?> login(@RequestBody LoginRequest request) {
+    public CompletableFuture<? extends ResponseEntity<?>> login(@RequestBody LoginRequest request) {
         if (request == null || request.getEmail() == null || request.getEmail().isBlank() ||
                 request.getPassword() == null || request.getPassword().isBlank()) {
-            return ResponseEntity.badRequest().body(Map.of("error", "email and password are required"));
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(Map.of("error", "email and password are required")));
+        }
+
+        if (localTokenIssuer != null) {
+            // same response shape as Keycloak's token endpoint; the request thread is released while the hash runs
+            return localTokenIssuer.login(request.getEmail(), request.getPassword()).thenApply(token -> token
+                    .<ResponseEntity<?>>map(t -> ResponseEntity.ok(Map.of(
+                            "access_token", t.accessToken(),
+                            "token_type", "Bearer",
+                            "expires_in", t.expiresIn())))
+                    .orElseGet(() -> ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of(
+                            "error", "invalid_grant",
+                            "error_description", "Invalid user credentials"))));
         }
 
         return keycloakAuthService.passwordGrant(request.getEmail(), request.getPassword());
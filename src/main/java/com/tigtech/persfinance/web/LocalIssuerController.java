@@ -0,0 +1,46 @@
+package com.tigtech.persfinance.web;
+
+import com.tigtech.persfinance.security.LocalTokenIssuer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Discovery document and public keys of the local token issuer, so other services can verify its tokens the same
+ * way they verify Keycloak's (the issuer URL plus {@code /.well-known/openid-configuration}).
+ */
+@RestController
+@ConditionalOnProperty(name = "app.auth.token-issuer", havingValue = "local")
+public class LocalIssuerController {
+
+    private final LocalTokenIssuer tokenIssuer;
+
+    public LocalIssuerController(LocalTokenIssuer tokenIssuer) {
+        this.tokenIssuer = tokenIssuer;
+    }
+
+    @GetMapping(value = "/.well-known/openid-configuration", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Map<String, Object> configuration() {
+        String issuer = tokenIssuer.getIssuer();
+        return Map.of(
+                "issuer", issuer,
+                "jwks_uri", issuer.replaceAll("/$", "") + "/.well-known/jwks.json",
+                "id_token_signing_alg_values_supported", List.of("RS256"),
+                "subject_types_supported", List.of("public")
+        );
+    }
+
+    /** Cached for no longer than the key refresh interval: new keys are published two intervals before they sign. */
+    @GetMapping(value = "/.well-known/jwks.json", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> jwks() {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(tokenIssuer.keyRefreshInterval()).cachePublic())
+                .body(tokenIssuer.publicKeys().toJSONObject());
+    }
+}
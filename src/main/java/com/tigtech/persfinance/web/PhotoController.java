@@ -0,0 +1,226 @@
+package com.tigtech.persfinance.web;
+
+import com.tigtech.persfinance.storage.PhotoCache;
+import com.tigtech.persfinance.storage.PhotoFile;
+import com.tigtech.persfinance.storage.PhotoVariantPipeline;
+import com.tigtech.persfinance.storage.StorageService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.util.UriUtils;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Serves stored photos at the URLs kept in users.photo_url ({@code /uploads/...}).
+ * <p>
+ * Content-addressed photos get their hash as a strong ETag and are cacheable forever ({@code immutable}); photos
+ * stored before content addressing get a weak ETag and must be revalidated. {@code If-None-Match} is answered with
+ * 304, and a single byte range ({@code Range}, honouring {@code If-Range}) with 206. Small photos are served from
+ * {@link PhotoCache}; others are handed to Tomcat's sendfile, so the file is copied to the socket by the kernel,
+ * or transferred with {@link FileChannel#transferTo} when sendfile is not available (e.g. over TLS).
+ * <p>
+ * {@code ?size=N} asks for a version at least N pixels on its longest side: the smallest variant generated by
+ * {@link PhotoVariantPipeline} that fits, or the original if N is larger than every variant. Until the variant
+ * exists the original is sent with a short cache lifetime and the photo is queued for processing.
+ * <p>
+ * Photos kept in an object store ({@code app.storage.backend=s3}) are not proxied: the response is a redirect to
+ * the object's presigned or public location.
+ */
+@RestController
+public class PhotoController {
+
+    static final String IMMUTABLE = "public, max-age=31536000, immutable";
+    static final String REVALIDATE = "private, no-cache";
+    static final String PROVISIONAL = "public, max-age=60";
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private static final long[] UNSATISFIABLE = new long[0];
+
+    private final StorageService storageService;
+    private final PhotoCache cache;
+    private final PhotoVariantPipeline variants;
+
+    public PhotoController(StorageService storageService, PhotoCache cache, PhotoVariantPipeline variants) {
+        this.storageService = storageService;
+        this.cache = cache;
+        this.variants = variants;
+    }
+
+    @RequestMapping(value = "/uploads/**", method = {RequestMethod.GET, RequestMethod.HEAD})
+    public void serve(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String url = UriUtils.decode(request.getRequestURI().substring(request.getContextPath().length()), StandardCharsets.UTF_8);
+        int variantSize = requestedVariant(request.getParameter("size"));
+        boolean provisional = false;
+
+        String cacheKey = variantSize > 0 ? url + "?size=" + variantSize : url;
+        PhotoCache.Entry cached = cache.get(cacheKey);
+        PhotoFile photo = cached != null ? cached.photo() : null;
+        if (photo == null && variantSize > 0) {
+            photo = storageService.findVariant(url, variantSize).orElse(null);
+            if (photo == null) {
+                // not generated (yet): send the original for now, without letting clients keep it for this URL
+                variantSize = 0;
+                cacheKey = url;
+                cached = cache.get(url);
+                photo = cached != null ? cached.photo() : null;
+                provisional = true;
+            }
+        }
+        if (photo == null) photo = storageService.findPhoto(url).orElse(null);
+        if (photo == null) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        if (provisional) {
+            if (variants.supports(photo)) {
+                variants.submit(url);
+            } else {
+                provisional = false; // no variants for this photo: the original is the answer
+            }
+        }
+        if (photo.path() == null) {
+            // held by a remote object store: the client downloads it from there; presigned locations expire,
+            // so the redirect itself is not cached
+            response.setHeader(HttpHeaders.CACHE_CONTROL, REVALIDATE);
+            response.setHeader(HttpHeaders.LOCATION, photo.location().toString());
+            response.setStatus(HttpServletResponse.SC_FOUND);
+            return;
+        }
+
+        String etag = photo.immutable()
+                ? "\"" + photo.sha256() + (variantSize > 0 ? "-" + variantSize : "") + "\""
+                : "W/\"" + Long.toHexString(photo.size()) + "-" + Long.toHexString(photo.lastModified().toEpochMilli()) + "\"";
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, provisional ? PROVISIONAL : photo.immutable() ? IMMUTABLE : REVALIDATE);
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, photo.lastModified().toEpochMilli());
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (noneMatch(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        long start = 0;
+        long end = photo.size();
+        String range = request.getHeader(HttpHeaders.RANGE);
+        if (range != null && rangeApplies(request.getHeader(HttpHeaders.IF_RANGE), etag, photo)) {
+            long[] r = parseRange(range, photo.size());
+            if (r == UNSATISFIABLE) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + photo.size());
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            if (r != null) {
+                start = r[0];
+                end = r[1];
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (end - 1) + "/" + photo.size());
+            }
+        }
+        response.setContentType(photo.contentType());
+        response.setContentLengthLong(end - start);
+        if (RequestMethod.HEAD.name().equals(request.getMethod())) return;
+
+        if (cached == null && cache.admits(photo)) {
+            cached = new PhotoCache.Entry(photo, Files.readAllBytes(photo.path()));
+            cache.put(cacheKey, cached);
+        }
+        if (cached != null) {
+            response.getOutputStream().write(cached.content(), (int) start, (int) (end - start));
+        } else if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            // Tomcat writes the file after this handler returns
+            request.setAttribute(SENDFILE_FILENAME, photo.path().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end);
+        } else {
+            try (FileChannel file = FileChannel.open(photo.path())) {
+                WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+                for (long position = start; position < end; ) {
+                    position += file.transferTo(position, end - position, out);
+                }
+            }
+        }
+    }
+
+    /** The variant size for a {@code size} parameter, or 0 for the original. */
+    private int requestedVariant(String size) {
+        if (size == null) return 0;
+        try {
+            int requested = Integer.parseInt(size);
+            return requested > 0 ? variants.pick(requested) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static boolean noneMatch(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        String opaque = stripWeak(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String c = candidate.trim();
+            if (c.equals("*") || stripWeak(c).equals(opaque)) return true;
+        }
+        return false;
+    }
+
+    private static String stripWeak(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    /** If-Range: the range is only served if the client's copy is still current (strong comparison for ETags). */
+    private static boolean rangeApplies(String ifRange, String etag, PhotoFile photo) {
+        if (ifRange == null) return true;
+        String value = ifRange.trim();
+        if (value.startsWith("\"") || value.startsWith("W/")) {
+            return !etag.startsWith("W/") && value.equals(etag);
+        }
+        try {
+            long since = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return photo.lastModified().toEpochMilli() / 1000 <= since / 1000;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * {@code [start, end)} for a single {@code bytes=} range; null to ignore the header (malformed or several
+     * ranges, for which the whole photo is sent); {@link #UNSATISFIABLE} if it lies outside the photo.
+     */
+    static long[] parseRange(String header, long size) {
+        if (!header.startsWith("bytes=") || header.indexOf(',') >= 0) return null;
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) return null;
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0 || size == 0) return UNSATISFIABLE;
+                return new long[]{Math.max(0, size - suffix), size};
+            }
+            long start = Long.parseLong(first);
+            long end = last.isEmpty() ? size : Math.min(Long.parseLong(last), size - 1) + 1;
+            if (start >= size) return UNSATISFIABLE;
+            if (end <= start) return null;
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -2,34 +2,161 @@ package com.tigtech.persfinance.web;
 
 import com.tigtech.persfinance.domain.User;
 import com.tigtech.persfinance.repository.UserRepository;
+import com.tigtech.persfinance.service.UserExportService;
+import com.tigtech.persfinance.service.UserImportService;
+import com.tigtech.persfinance.service.UserPhotoService;
+import com.tigtech.persfinance.storage.PhotoRejectedException;
+import com.tigtech.persfinance.storage.PhotoVariantPipeline;
 import com.tigtech.persfinance.storage.StorageService;
+import com.tigtech.persfinance.storage.StoredPhoto;
+import com.tigtech.persfinance.web.dto.RegisterRequest;
+import com.tigtech.persfinance.web.dto.UserPageResponse;
 import com.tigtech.persfinance.web.dto.UserResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import tools.jackson.databind.json.JsonMapper;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
 @RestController
 @RequestMapping(value = "/api/users", produces = MediaType.APPLICATION_JSON_VALUE)
 public class UserController {
 
+    static final int DEFAULT_PAGE_SIZE = 50;
+    static final int MAX_PAGE_SIZE = 200;
+
     private final UserRepository userRepository;
     private final StorageService storageService;
+    private final PhotoVariantPipeline photoVariants;
+    private final UserExportService userExportService;
+    private final UserImportService userImportService;
+    private final UserPhotoService userPhotoService;
+    private final JsonMapper jsonMapper;
 
-    public UserController(UserRepository userRepository, StorageService storageService) {
+    public UserController(UserRepository userRepository,
+                          StorageService storageService,
+                          PhotoVariantPipeline photoVariants,
+                          UserExportService userExportService,
+                          UserImportService userImportService,
+                          UserPhotoService userPhotoService,
+                          JsonMapper jsonMapper) {
         this.userRepository = userRepository;
         this.storageService = storageService;
+        this.photoVariants = photoVariants;
+        this.userExportService = userExportService;
+        this.userImportService = userImportService;
+        this.userPhotoService = userPhotoService;
+        this.jsonMapper = jsonMapper;
     }
 
+    /**
+     * Pages through all users by id. Admin only, like the export: each page carries other users' emails and roles.
+     */
     @GetMapping
-    @PreAuthorize("isAuthenticated()")
-    public List<UserResponse> list() {
-        return userRepository.findAll().stream().map(this::toDto).collect(Collectors.toList());
+    @PreAuthorize("hasRole('ADMIN')")
+    public UserPageResponse list(@RequestParam(required = false) Long cursor,
+                                 @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        long afterId = cursor == null ? 0L : cursor;
+
+        // fetch one extra row to know whether another page exists
+        List<UserResponse> rows = userRepository.findPageAfter(afterId, Limit.of(pageSize + 1));
+        if (rows.size() <= pageSize) {
+            return new UserPageResponse(rows, null);
+        }
+        List<UserResponse> page = rows.subList(0, pageSize);
+        return new UserPageResponse(page, page.get(pageSize - 1).getId());
+    }
+
+    /**
+     * Streams users as NDJSON (default) or CSV without materializing the result set.
+     */
+    @GetMapping(value = "/export", produces = {UserExportService.NDJSON_VALUE, UserExportService.CSV_VALUE})
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam(defaultValue = "ndjson") String format,
+                                                        @RequestParam(required = false) Boolean active,
+                                                        @RequestParam(required = false) String role) {
+        UserExportService.Format exportFormat = UserExportService.Format.parse(format);
+        if (exportFormat == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        StreamingResponseBody body = out -> userExportService.export(exportFormat, active, role, out);
+        return ResponseEntity.ok()
+                .contentType(exportFormat.mediaType())
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"users." + exportFormat.extension() + "\"")
+                .body(body);
+    }
+
+    /**
+     * Bulk import from a JSON array of registrations. Streams one NDJSON result line per row, then a summary line.
+     */
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_JSON_VALUE, produces = UserExportService.NDJSON_VALUE)
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<StreamingResponseBody> importJson(@RequestBody List<RegisterRequest> requests) {
+        Iterator<UserImportService.ImportRow> rows = IntStream.range(0, requests.size())
+                .mapToObj(i -> {
+                    RegisterRequest r = requests.get(i);
+                    return new UserImportService.ImportRow(i + 1, r.getFirstName(), r.getLastName(), r.getEmail(), r.getPassword());
+                })
+                .iterator();
+        return importResponse(() -> rows);
+    }
+
+    /**
+     * Bulk import from a CSV upload ({@code firstName,lastName,email,password}); the file is read lazily.
+     */
+    @PostMapping(value = "/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = UserExportService.NDJSON_VALUE)
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<StreamingResponseBody> importCsv(@RequestParam("file") MultipartFile file) {
+        return importResponse(() -> UserImportService.csvRows(
+                new BufferedReader(new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8))));
+    }
+
+    private interface RowSource {
+        Iterator<UserImportService.ImportRow> open() throws IOException;
+    }
+
+    private ResponseEntity<StreamingResponseBody> importResponse(RowSource source) {
+        StreamingResponseBody body = out -> {
+            UserImportService.Summary summary = userImportService.importRows(source.open(), new Consumer<>() {
+                private int pending;
+
+                @Override
+                public void accept(UserImportService.RowResult result) {
+                    try {
+                        out.write(jsonMapper.writeValueAsBytes(result));
+                        out.write('\n');
+                        // push progress to the client roughly once per chunk
+                        if (++pending >= 100) {
+                            out.flush();
+                            pending = 0;
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+            out.write(jsonMapper.writeValueAsBytes(Map.of("summary", summary)));
+            out.write('\n');
+            out.flush();
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(UserExportService.NDJSON_VALUE)).body(body);
     }
 
     @GetMapping("/{id}")
@@ -39,28 +166,45 @@ public class UserController {
     }
 
     @PostMapping("/{id}/photo")
+    @PreAuthorize("hasRole('ADMIN') or #id == principal.id")
     public ResponseEntity<?> uploadPhoto(@PathVariable Long id, @RequestParam("file") MultipartFile file) {
-        return userRepository.findById(id).map(user -> {
-            try {
-                String url = storageService.uploadUserPhoto(file, String.valueOf(user.getId()));
-                user.setPhotoUrl(url);
-                userRepository.save(user);
-                return ResponseEntity.ok().body(new UserResponse());
-            } catch (Exception e) {
-                return ResponseEntity.internalServerError().body(Map.of("error", "Upload failed"));
-            }
-        }).orElseGet(() -> ResponseEntity.notFound().build());
+        if (!userPhotoService.exists(id)) return ResponseEntity.notFound().build();
+        try {
+            String url = storageService.uploadUserPhoto(file, String.valueOf(id));
+            return photoUpdated(id, url);
+        } catch (PhotoRejectedException e) {
+            throw e;
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().body(Map.of("error", "Upload failed"));
+        }
+    }
+
+    /**
+     * Photo upload with the image as the raw request body, streamed straight to storage without the multipart
+     * buffering of the POST variant.
+     */
+    @PutMapping(value = "/{id}/photo", consumes = {MediaType.IMAGE_JPEG_VALUE, MediaType.IMAGE_PNG_VALUE,
+            MediaType.IMAGE_GIF_VALUE, "image/webp", MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    @PreAuthorize("hasRole('ADMIN') or #id == principal.id")
+    public ResponseEntity<?> putPhoto(@PathVariable Long id, HttpServletRequest request) {
+        if (!userPhotoService.exists(id)) return ResponseEntity.notFound().build();
+        try {
+            StoredPhoto photo = storageService.storeUserPhoto(request.getInputStream(), request.getContentLengthLong(),
+                    String.valueOf(id));
+            return photoUpdated(id, photo.url());
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError().body(Map.of("error", "Upload failed"));
+        }
+    }
+
+    private ResponseEntity<?> photoUpdated(Long id, String url) {
+        // deleted during the upload: the stored photo is unreferenced and left to the photo GC
+        if (!userPhotoService.updatePhotoUrl(id, url)) return ResponseEntity.notFound().build();
+        photoVariants.submit(url);
+        return ResponseEntity.ok().body(new UserResponse());
     }
 
     private UserResponse toDto(User u) {
-        UserResponse r = new UserResponse();
-        r.setId(u.getId());
-        r.setNome(u.getFirstName());
-        r.setSobrenome(u.getLastName());
-        r.setEmail(u.getEmail());
-        r.setFotoUrl(u.getPhotoUrl());
-        r.setRole(u.getRole());
-        r.setAtivo(u.isActive());
-        return r;
+        return UserResponse.of(u);
     }
 }
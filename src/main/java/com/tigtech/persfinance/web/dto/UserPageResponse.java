@@ -0,0 +1,17 @@
+package com.tigtech.persfinance.web.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * One page of users ordered by id. Pass {@code nextCursor} back as {@code cursor} to get the following page;
+ * it is null on the last page.
+ */
+@Getter
+@AllArgsConstructor
+public class UserPageResponse {
+    private List<UserResponse> items;
+    private Long nextCursor;
+}
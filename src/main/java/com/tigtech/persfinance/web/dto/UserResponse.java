@@ -1,10 +1,15 @@
 package com.tigtech.persfinance.web.dto;
 
+import com.tigtech.persfinance.domain.User;
+import lombok.AllArgsConstructor;
 import lombok.Getter;
+import lombok.NoArgsConstructor;
 import lombok.Setter;
 
 @Getter
 @Setter
+@NoArgsConstructor
+@AllArgsConstructor // used by the constructor-expression projections in UserRepository
 public class UserResponse {
     private Long id;
     private String nome;
@@ -13,5 +18,16 @@ public class UserResponse {
     private String fotoUrl;
     private String role;
     private boolean ativo;
-}
 
+    public static UserResponse of(User u) {
+        UserResponse r = new UserResponse();
+        r.setId(u.getId());
+        r.setNome(u.getFirstName());
+        r.setSobrenome(u.getLastName());
+        r.setEmail(u.getEmail());
+        r.setFotoUrl(u.getPhotoUrl());
+        r.setRole(u.getRole());
+        r.setAtivo(u.isActive());
+        return r;
+    }
+}
@@ -0,0 +1,88 @@
+-- Schema as previously created by spring.jpa.hibernate.ddl-auto=update.
+-- Databases created that way are baselined at version 0 (spring.flyway.baseline-on-migrate) and then run this
+-- script too, so every statement only creates what is missing. Such a database may predate any column added to an
+-- existing table since the last release, so those columns are added here as well.
+
+create table if not exists users (
+    id          bigint generated by default as identity primary key,
+    first_name  varchar(255) not null,
+    last_name   varchar(255) not null,
+    email       varchar(255) not null,
+    password    varchar(255),
+    provider    varchar(255) not null,
+    provider_id varchar(255),
+    photo_url   varchar(255),
+    role        varchar(255) not null,
+    active      boolean      not null,
+    created_at  timestamp(6) not null,
+    updated_at  timestamp(6),
+    -- also the index behind findByEmail / the natural-id lookup
+    constraint uk_users_email unique (email)
+);
+
+create index if not exists idx_users_photo_url on users (photo_url);
+
+create table if not exists password_reset_tokens (
+    id         bigint generated by default as identity primary key,
+    token_hash bytea        not null,
+    user_id    bigint       not null,
+    expires_at timestamp(6) not null,
+    constraint uk_password_reset_tokens_token_hash unique (token_hash)
+);
+
+-- Released databases store the raw token only (dropped by V3). Those tokens cannot be turned into hashes, so their
+-- rows are deleted: the links already sent stop working and users ask for a new one.
+alter table password_reset_tokens add column if not exists token_hash bytea;
+delete from password_reset_tokens where token_hash is null;
+alter table password_reset_tokens alter column token_hash set not null;
+
+do $$
+begin
+    if not exists (select 1 from pg_index i
+                   join pg_attribute a on a.attrelid = i.indrelid and a.attnum = i.indkey[0]
+                   where i.indrelid = 'password_reset_tokens'::regclass
+                     and i.indisunique and i.indnatts = 1 and a.attname = 'token_hash') then
+        alter table password_reset_tokens
+            add constraint uk_password_reset_tokens_token_hash unique (token_hash);
+    end if;
+end
+$$;
+
+create index if not exists idx_password_reset_tokens_expires_at on password_reset_tokens (expires_at);
+create index if not exists idx_password_reset_tokens_user_id on password_reset_tokens (user_id);
+
+do $$
+begin
+    if not exists (select 1 from pg_constraint
+                   where conrelid = 'password_reset_tokens'::regclass and contype = 'f') then
+        alter table password_reset_tokens
+            add constraint fk_password_reset_tokens_user foreign key (user_id) references users (id);
+    end if;
+end
+$$;
+
+create table if not exists keycloak_provisioning_outbox (
+    id                 bigint generated by default as identity primary key,
+    user_id            bigint        not null,
+    email              varchar(255)  not null,
+    first_name         varchar(255)  not null,
+    last_name          varchar(255)  not null,
+    encrypted_password varchar(1024),
+    status             varchar(16)   not null check (status in ('PENDING', 'DONE', 'FAILED')),
+    attempts           integer       not null,
+    next_attempt_at    timestamp(6)  not null,
+    last_error         varchar(1000),
+    created_at         timestamp(6)  not null,
+    processed_at       timestamp(6)
+);
+
+create table if not exists signing_keys (
+    id                    varchar(64)                 not null primary key,
+    public_jwk            varchar(2048)               not null,
+    encrypted_private_jwk varchar(8192)               not null,
+    created_at            timestamp(6) with time zone not null,
+    activates_at          timestamp(6) with time zone not null,
+    expires_at            timestamp(6) with time zone not null
+);
+
+create index if not exists idx_signing_keys_expires_at on signing_keys (expires_at);
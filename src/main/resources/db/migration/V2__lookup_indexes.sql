@@ -0,0 +1,10 @@
+-- Indexes for the remaining hot lookups. users.email and password_reset_tokens.token_hash are covered by their
+-- unique constraints, password_reset_tokens.expires_at / user_id by V1.
+
+-- JwtUserResolver: findByProviderAndProviderId on a token subject's first request
+create index if not exists idx_users_provider_provider_id on users (provider, provider_id);
+
+-- KeycloakProvisioningDispatcher.lockDue: only pending rows are ever polled, and they are few next to done ones
+create index if not exists idx_keycloak_provisioning_outbox_pending
+    on keycloak_provisioning_outbox (next_attempt_at, id)
+    where status = 'PENDING';
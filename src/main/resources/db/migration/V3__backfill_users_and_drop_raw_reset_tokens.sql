@@ -0,0 +1,14 @@
+-- One-off replacement for the UPDATEs data.sql ran on every boot. Columns added by ddl-auto=update to an
+-- existing users table were nullable; once filled they get the NOT NULL the entity declares.
+update users set active = true where active is null;
+update users set created_at = current_timestamp where created_at is null;
+update users set first_name = 'Default' where first_name is null or first_name = '';
+update users set last_name = 'User' where last_name is null or last_name = '';
+
+alter table users alter column active set not null;
+alter table users alter column created_at set not null;
+alter table users alter column first_name set not null;
+alter table users alter column last_name set not null;
+
+-- Reset tokens are stored as token_hash; raw tokens issued before cannot be matched any more
+alter table password_reset_tokens drop column if exists token;
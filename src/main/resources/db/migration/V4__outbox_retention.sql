@@ -0,0 +1,7 @@
+-- Entries given up on kept their encrypted initial password; only pending entries still need it.
+update keycloak_provisioning_outbox set encrypted_password = null where status <> 'PENDING';
+
+-- KeycloakProvisioningDispatcher.purgeProcessed: processed rows by age
+create index if not exists idx_keycloak_provisioning_outbox_processed
+    on keycloak_provisioning_outbox (processed_at)
+    where status <> 'PENDING';
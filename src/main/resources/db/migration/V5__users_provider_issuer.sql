@@ -0,0 +1,8 @@
+-- Token subjects are only unique within one issuer (Keycloak realm), so a linked user records the issuer too.
+-- Users linked before this were linked through the primary realm, the only one trusted until then.
+alter table users add column if not exists provider_issuer varchar(255);
+update users set provider_issuer = '${primary-issuer}' where provider_id is not null and provider_issuer is null;
+
+-- JwtUserResolver: findByProviderAndProviderIssuerAndProviderId on a token subject's first request
+drop index if exists idx_users_provider_provider_id;
+create index if not exists idx_users_provider_issuer_provider_id on users (provider_id, provider_issuer);
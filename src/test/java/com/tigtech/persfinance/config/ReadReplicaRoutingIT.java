@@ -0,0 +1,147 @@
+package com.tigtech.persfinance.config;
+
+import com.tigtech.persfinance.domain.User;
+import com.tigtech.persfinance.repository.UserRepository;
+import com.tigtech.persfinance.service.UserPhotoService;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The in-memory stand-in for a primary with two replicas: replica-1 is the primary's own H2 database under a
+ * separate pool (a replica without lag), replica-2 points at a server that is not there.
+ */
+@SpringBootTest(properties = {
+        "keycloak.admin.username=admin",
+        "keycloak.admin.password=admin",
+        "keycloak.client-id=personal-finance-api",
+        "keycloak.client-secret=personal-finance-secret",
+        "keycloak.token-uri=http://localhost:8888/realms/Persfin/protocol/openid-connect/token",
+        "keycloak.admin-base=http://localhost:8888/admin/realms/Persfin",
+        "keycloak.admin-token-uri=http://localhost:8888/realms/master/protocol/openid-connect/token",
+        "spring.sql.init.mode=never",
+        "app.datasource.replica-urls=jdbc:h2:mem:testdb, jdbc:h2:tcp://localhost:1/down",
+        "app.datasource.replica-connection-timeout-ms=250",
+        "app.datasource.replica-check-interval-ms=3600000"
+})
+@ActiveProfiles("test")
+class ReadReplicaRoutingIT {
+
+    private static final int READS = 50;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private ReadReplicaDataSource readReplicaDataSource;
+
+    @Autowired
+    @Qualifier("primaryDataSource")
+    private DataSource primaryDataSource;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private UserPhotoService userPhotoService;
+
+    @BeforeEach
+    void setup() {
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void readOnlyWorkRunsOnTheReplicaThatIsUpAndWritesOnThePrimary() {
+        double primary = queries("primary");
+        double replica = queries("replica-1");
+        User user = userRepository.save(User.builder()
+                .firstName("Alice")
+                .lastName("Doe")
+                .email("alice@example.com")
+                .password("x")
+                .build());
+        user.setFirstName("Alicia");
+        userRepository.save(user);
+        assertThat(queries("primary")).isGreaterThan(primary);
+        assertThat(queries("replica-1")).isEqualTo(replica);
+
+        primary = queries("primary");
+        for (int i = 0; i < READS; i++) {
+            entityManagerFactory.getCache().evictAll();
+            assertThat(userRepository.findById(user.getId()).orElseThrow().getFirstName()).isEqualTo("Alicia");
+            assertThat(userRepository.findPageAfter(0L, Limit.of(10))).hasSize(1);
+        }
+
+        assertThat(queries("primary")).isEqualTo(primary);
+        assertThat(queries("replica-1") - replica).isGreaterThanOrEqualTo(2 * READS);
+        assertThat(queries("replica-2")).isZero();
+        assertThat(up("replica-1")).isEqualTo(1);
+        assertThat(up("replica-2")).isZero();
+
+        readReplicaDataSource.checkReplicas();
+        assertThat(up("replica-1")).isEqualTo(1);
+        assertThat(up("replica-2")).isZero();
+    }
+
+    @Test
+    void photoUpdateReadsAndWritesThePrimary() {
+        User user = userRepository.save(User.builder()
+                .firstName("Alice")
+                .lastName("Doe")
+                .email("alice@example.com")
+                .password("x")
+                .build());
+        entityManagerFactory.getCache().evictAll();
+        double replica = queries("replica-1");
+
+        assertThat(userPhotoService.exists(user.getId())).isTrue();
+        assertThat(userPhotoService.updatePhotoUrl(user.getId(), "/uploads/blobs/ab/cd/abcd.jpg")).isTrue();
+        assertThat(userPhotoService.updatePhotoUrl(user.getId() + 1, "/uploads/blobs/ab/cd/abcd.jpg")).isFalse();
+        assertThat(queries("replica-1")).isEqualTo(replica);
+        assertThat(userRepository.findById(user.getId()).orElseThrow().getPhotoUrl()).isEqualTo("/uploads/blobs/ab/cd/abcd.jpg");
+    }
+
+    @Test
+    void readsFallBackToThePrimaryWhenNoReplicaIsUp() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        HikariDataSource down = new HikariDataSource();
+        down.setJdbcUrl("jdbc:h2:tcp://localhost:1/down");
+        down.setConnectionTimeout(250);
+        down.setInitializationFailTimeout(-1);
+        try (ReadReplicaDataSource replicas = new ReadReplicaDataSource(
+                List.of(new ReadReplicaDataSource.Target("replica-1", down)), primaryDataSource, registry)) {
+            for (int i = 0; i < 3; i++) {
+                try (Connection connection = replicas.getConnection()) {
+                    assertThat(connection.getMetaData().getURL()).isEqualTo("jdbc:h2:mem:testdb");
+                }
+            }
+            assertThat(registry.get("datasource.replica.fallbacks").counter().count()).isEqualTo(3);
+            assertThat(registry.get("datasource.replica.up").gauge().value()).isZero();
+        }
+    }
+
+    private double queries(String target) {
+        return meterRegistry.get("datasource.queries").tag("target", target).counter().count();
+    }
+
+    private double up(String target) {
+        return meterRegistry.get("datasource.replica.up").tag("target", target).gauge().value();
+    }
+}
@@ -0,0 +1,102 @@
+package com.tigtech.persfinance.mail;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class MailDispatcherTests {
+
+    private FakeSmtpServer smtp;
+    private MeterRegistry meterRegistry;
+    private MailTransport transport;
+
+    @BeforeEach
+    void setup() throws Exception {
+        smtp = new FakeSmtpServer();
+        JavaMailSenderImpl sender = new JavaMailSenderImpl();
+        sender.setHost("127.0.0.1");
+        sender.setPort(smtp.port());
+        transport = new SmtpMailTransport(sender, "no-reply@test");
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        smtp.close();
+    }
+
+    @Test
+    void deliversQueuedMessagesInOneSmtpSession() throws Exception {
+        MailDispatcher dispatcher = new MailDispatcher(transport, meterRegistry, 100, 50, 3);
+        try {
+            // queued before the worker starts, so they leave as a single batch
+            for (int i = 0; i < 6; i++) {
+                assertThat(dispatcher.enqueue(new MailMessage("u" + i + "@example.com", "Hi", "body " + i))).isTrue();
+            }
+            dispatcher.start();
+
+            await().atMost(5, TimeUnit.SECONDS).until(() -> smtp.received().size() == 6);
+            assertThat(smtp.sessions()).isEqualTo(1);
+            assertThat(smtp.received().get(5).recipients()).containsExactly("u5@example.com");
+            assertThat(meterRegistry.get("mail.messages").tag("result", "sent").counter().count()).isEqualTo(6);
+            assertThat(meterRegistry.get("mail.delivery.latency").timer().count()).isEqualTo(6);
+        } finally {
+            dispatcher.stop();
+        }
+    }
+
+    @Test
+    void retriesTemporaryFailures() throws Exception {
+        smtp.rejectNext(1);
+        MailDispatcher dispatcher = new MailDispatcher(transport, meterRegistry, 100, 50, 3);
+        dispatcher.start();
+        try {
+            dispatcher.enqueue(new MailMessage("retry@example.com", "Hi", "body"));
+
+            await().atMost(5, TimeUnit.SECONDS).until(() -> smtp.received().size() == 1);
+            assertThat(meterRegistry.get("mail.messages").tag("result", "retry").counter().count()).isEqualTo(1);
+            assertThat(meterRegistry.get("mail.messages").tag("result", "sent").counter().count()).isEqualTo(1);
+        } finally {
+            dispatcher.stop();
+        }
+    }
+
+    @Test
+    void rejectsWhenQueueIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        MailTransport blocked = batch -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        MailDispatcher dispatcher = new MailDispatcher(blocked, meterRegistry, 2, 1, 1);
+        dispatcher.start();
+        try {
+            dispatcher.enqueue(new MailMessage("a@example.com", "Hi", "a"));
+            await().atMost(5, TimeUnit.SECONDS).until(() -> meterRegistry.get("mail.queue.size").gauge().value() == 0);
+
+            List<Boolean> accepted = List.of(
+                    dispatcher.enqueue(new MailMessage("b@example.com", "Hi", "b")),
+                    dispatcher.enqueue(new MailMessage("c@example.com", "Hi", "c")),
+                    dispatcher.enqueue(new MailMessage("d@example.com", "Hi", "d")));
+
+            assertThat(accepted).containsExactly(true, true, false);
+            assertThat(meterRegistry.get("mail.messages").tag("result", "rejected").counter().count()).isEqualTo(1);
+        } finally {
+            release.countDown();
+            dispatcher.stop();
+        }
+    }
+}
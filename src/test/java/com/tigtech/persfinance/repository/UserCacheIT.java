@@ -0,0 +1,149 @@
+package com.tigtech.persfinance.repository;
+
+import com.tigtech.persfinance.domain.User;
+import com.tigtech.persfinance.service.UserExportService;
+import com.tigtech.persfinance.service.UserImportService;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "keycloak.admin.username=admin",
+        "keycloak.admin.password=admin",
+        "keycloak.client-id=personal-finance-api",
+        "keycloak.client-secret=personal-finance-secret",
+        "keycloak.token-uri=http://localhost:8888/realms/Persfin/protocol/openid-connect/token",
+        "keycloak.admin-base=http://localhost:8888/admin/realms/Persfin",
+        "keycloak.admin-token-uri=http://localhost:8888/realms/master/protocol/openid-connect/token",
+        "spring.sql.init.mode=never"
+})
+@ActiveProfiles("test")
+class UserCacheIT {
+
+    private static final int USERS = 200;
+    private static final int THREADS = 16;
+    private static final int LOOKUPS_PER_THREAD = 2_000;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private UserExportService userExportService;
+
+    @Autowired
+    private UserImportService userImportService;
+
+    private Statistics statistics;
+    private List<User> users;
+
+    @BeforeEach
+    void setup() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        userRepository.deleteAll();
+        entityManagerFactory.getCache().evictAll();
+        users = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            users.add(userRepository.save(User.builder()
+                    .firstName("User")
+                    .lastName(String.valueOf(i))
+                    .email("user" + i + "@example.com")
+                    .password("x")
+                    .build()));
+        }
+    }
+
+    @Test
+    void repeatedLookupsByIdAndEmailAreServedFromTheCache() throws Exception {
+        statistics.clear();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                workers.add(pool.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < LOOKUPS_PER_THREAD; i++) {
+                        User user = users.get(random.nextInt(USERS));
+                        User found = random.nextBoolean()
+                                ? userRepository.findById(user.getId()).orElseThrow()
+                                : userRepository.findByEmail(user.getEmail()).orElseThrow();
+                        assertThat(found.getEmail()).isEqualTo(user.getEmail());
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) worker.get();
+        } finally {
+            pool.shutdown();
+        }
+
+        long lookups = (long) THREADS * LOOKUPS_PER_THREAD;
+        long queries = statistics.getPrepareStatementCount();
+
+        // at most a couple of misses per user and region, however many lookups (racing threads may miss together)
+        assertThat(queries).isLessThan(lookups / 20);
+        assertThat(hitRatio(User.CACHE_REGION)).isGreaterThan(0.9);
+        assertThat(hitRatio(User.EMAIL_CACHE_REGION)).isGreaterThan(0.9);
+    }
+
+    @Test
+    void savesAndDeletesAreVisibleToLaterLookups() {
+        User user = users.get(0);
+        userRepository.findById(user.getId()).orElseThrow();
+        userRepository.findByEmail(user.getEmail()).orElseThrow();
+
+        User loaded = userRepository.findById(user.getId()).orElseThrow();
+        loaded.setFirstName("Renamed");
+        userRepository.save(loaded);
+        assertThat(userRepository.findById(user.getId()).orElseThrow().getFirstName()).isEqualTo("Renamed");
+        assertThat(userRepository.findByEmail(user.getEmail()).orElseThrow().getFirstName()).isEqualTo("Renamed");
+
+        userRepository.deleteById(user.getId());
+        assertThat(userRepository.findById(user.getId())).isEmpty();
+        assertThat(userRepository.findByEmail(user.getEmail())).isEmpty();
+    }
+
+    @Test
+    void exportDoesNotFillTheCache() throws Exception {
+        entityManagerFactory.getCache().evictAll();
+        userExportService.export(UserExportService.Format.NDJSON, null, null, new ByteArrayOutputStream());
+
+        assertThat(users).noneMatch(u -> entityManagerFactory.getCache().contains(User.class, u.getId()));
+    }
+
+    @Test
+    void importDoesNotFillTheCache() {
+        entityManagerFactory.getCache().evictAll();
+        List<UserImportService.ImportRow> rows = List.of(
+                new UserImportService.ImportRow(1, "New", "User", "new@example.com", "Passw0rd!"),
+                new UserImportService.ImportRow(2, "Old", "User", users.get(0).getEmail(), "Passw0rd!"));
+
+        // duplicates are checked and ids read back with scalar queries, rows inserted over JDBC
+        assertThat(userImportService.importRows(rows.iterator(), r -> {}).imported()).isEqualTo(1);
+        assertThat(users).noneMatch(u -> entityManagerFactory.getCache().contains(User.class, u.getId()));
+    }
+
+    private double hitRatio(String region) {
+        return meterRegistry.get("hibernate.cache.hit.ratio").tag("region", region).gauge().value();
+    }
+}
@@ -10,6 +10,7 @@ import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Primary;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.security.oauth2.jwt.BadJwtException;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.security.oauth2.jwt.JwtDecoder;
@@ -19,11 +20,14 @@ import org.springframework.web.context.WebApplicationContext;
 
 import java.time.Instant;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
 import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
 
@@ -112,6 +116,20 @@ public class AuthenticationIT {
                 .andExpect(status().isOk());
     }
 
+    @Test
+    void photoOfAnotherUser_withUserToken_returns403() throws Exception {
+        Long adminId = userRepository.findByEmail("admin@example.com").map(User::getId).orElseThrow();
+        mockMvc.perform(put("/api/users/" + adminId + "/photo")
+                        .header("Authorization", "Bearer good-user")
+                        .contentType(MediaType.IMAGE_PNG)
+                        .content(new byte[]{1, 2, 3}))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(multipart("/api/users/" + adminId + "/photo")
+                        .file(new MockMultipartFile("file", "photo.png", MediaType.IMAGE_PNG_VALUE, new byte[]{1, 2, 3}))
+                        .header("Authorization", "Bearer good-user"))
+                .andExpect(status().isForbidden());
+    }
+
     @TestConfiguration
     static class TestConfig {
         @Bean
@@ -121,22 +139,26 @@ public class AuthenticationIT {
                 if (token == null || token.isBlank()) throw new BadJwtException("empty");
                 if ("good-user".equals(token)) {
                     Map<String, Object> claims = new HashMap<>();
+                    claims.put("iss", "http://localhost:8080/realms/Persfin");
                     claims.put("sub", "user-sub");
                     claims.put("preferred_username", "alice");
                     claims.put("email", "alice@example.com");
+                    claims.put("email_verified", true);
                     Map<String, Object> realmAccess = new HashMap<>();
-                    realmAccess.put("roles", new String[]{"user"});
+                    realmAccess.put("roles", List.of("user"));
                     claims.put("realm_access", realmAccess);
                     Instant now = Instant.now();
                     return new Jwt(token, now, now.plusSeconds(600), Map.of("alg", "RS256"), claims);
                 }
                 if ("good-admin".equals(token)) {
                     Map<String, Object> claims = new HashMap<>();
+                    claims.put("iss", "http://localhost:8080/realms/Persfin");
                     claims.put("sub", "admin-sub");
                     claims.put("preferred_username", "admin");
                     claims.put("email", "admin@example.com");
+                    claims.put("email_verified", true);
                     Map<String, Object> realmAccess = new HashMap<>();
-                    realmAccess.put("roles", new String[]{"admin"});
+                    realmAccess.put("roles", List.of("admin"));
                     claims.put("realm_access", realmAccess);
                     Instant now = Instant.now();
                     return new Jwt(token, now, now.plusSeconds(600), Map.of("alg", "RS256"), claims);
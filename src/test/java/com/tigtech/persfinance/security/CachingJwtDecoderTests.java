@@ -0,0 +1,90 @@
+package com.tigtech.persfinance.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CachingJwtDecoderTests {
+
+    private static final Instant NOW = Instant.parse("2026-01-01T00:00:00Z");
+
+    private final AtomicInteger verifications = new AtomicInteger();
+    private final MutableClock clock = new MutableClock();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    /** Accepts "token-<n>" with a 5 minute lifetime from NOW, rejects anything else. */
+    private final JwtDecoder verifier = token -> {
+        verifications.incrementAndGet();
+        if (!token.startsWith("token-")) throw new BadJwtException("bad signature");
+        return new Jwt(token, NOW, NOW.plusSeconds(300), Map.of("alg", "RS256"), Map.of("sub", token));
+    };
+
+    @Test
+    void repeatedTokenIsVerifiedOnceUntilItExpires() {
+        CachingJwtDecoder decoder = new CachingJwtDecoder(verifier, registry, 100, clock);
+
+        Jwt first = decoder.decode("token-1");
+        assertThat(decoder.decode("token-1")).isSameAs(first);
+        assertThat(decoder.decode("token-1")).isSameAs(first);
+        assertThat(verifications).hasValue(1);
+        assertThat(registry.get("security.jwt.cache.requests").tag("result", "hit").counter().count()).isEqualTo(2);
+
+        clock.now = NOW.plusSeconds(300);
+        decoder.decode("token-1");
+        assertThat(verifications).hasValue(2);
+    }
+
+    @Test
+    void rejectedTokensAreNotCached() {
+        CachingJwtDecoder decoder = new CachingJwtDecoder(verifier, registry, 100, clock);
+
+        assertThatThrownBy(() -> decoder.decode("forged")).isInstanceOf(BadJwtException.class);
+        assertThatThrownBy(() -> decoder.decode("forged")).isInstanceOf(BadJwtException.class);
+        assertThat(verifications).hasValue(2);
+    }
+
+    @Test
+    void fullCacheStillVerifiesNewTokens() {
+        CachingJwtDecoder decoder = new CachingJwtDecoder(verifier, registry, 2, clock);
+
+        decoder.decode("token-1");
+        decoder.decode("token-2");
+        decoder.decode("token-3");
+        assertThat(registry.get("security.jwt.cache.size").gauge().value()).isEqualTo(2);
+
+        decoder.decode("token-1");
+        decoder.decode("token-3");
+        assertThat(verifications).hasValue(4);
+    }
+
+    private static final class MutableClock extends Clock {
+        volatile Instant now = NOW;
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.tigtech.persfinance.security;
+
+import com.tigtech.persfinance.domain.User;
+import com.tigtech.persfinance.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+@SpringBootTest(properties = {
+        "keycloak.admin.username=admin",
+        "keycloak.admin.password=admin",
+        "keycloak.client-id=personal-finance-api",
+        "keycloak.client-secret=personal-finance-secret",
+        "keycloak.token-uri=http://localhost:8888/realms/Persfin/protocol/openid-connect/token",
+        "keycloak.admin-base=http://localhost:8888/admin/realms/Persfin",
+        "keycloak.admin-token-uri=http://localhost:8888/realms/master/protocol/openid-connect/token",
+        "spring.sql.init.mode=never"
+})
+@ActiveProfiles("test")
+class JwtUserResolverIT {
+
+    private static final String ISSUER = "http://localhost:8080/realms/Persfin";
+    private static final String OTHER_REALM = "http://localhost:8080/realms/Partners";
+
+    @Autowired
+    private JwtUserResolver resolver;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setup() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void unknownSubjectIsProvisionedOnceThenResolvedWithoutQueries() {
+        Jwt token = token("kc-sub-1", "carol@example.com");
+
+        Long id = resolver.resolve(token);
+        User user = userRepository.findById(id).orElseThrow();
+        assertThat(user.getProvider()).isEqualTo(JwtUserResolver.PROVIDER);
+        assertThat(user.getProviderId()).isEqualTo("kc-sub-1");
+        assertThat(user.getFirstName()).isEqualTo("Carol");
+
+        statistics.clear();
+        for (int i = 0; i < 100; i++) assertThat(resolver.resolve(token)).isEqualTo(id);
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+        assertThat(userRepository.count()).isEqualTo(1);
+    }
+
+    @Test
+    void subjectOfAUserRegisteredHereIsLinkedToItByVerifiedEmail() {
+        User alice = registeredUser("alice@example.com");
+
+        assertThat(resolver.resolve(token(ISSUER, "kc-sub-alice", "alice@example.com", true))).isEqualTo(alice.getId());
+        assertThat(userRepository.count()).isEqualTo(1);
+        User linked = userRepository.findById(alice.getId()).orElseThrow();
+        assertThat(linked.getProvider()).isEqualTo(JwtUserResolver.PROVIDER);
+        assertThat(linked.getProviderId()).isEqualTo("kc-sub-alice");
+    }
+
+    @Test
+    void emailIsNotTrustedFromAnotherRealmOrWhenUnverified() {
+        User alice = registeredUser("alice@example.com");
+
+        assertThat(resolver.resolve(token(OTHER_REALM, "kc-sub-mallory", "alice@example.com", true))).isNull();
+        assertThat(resolver.resolve(token(ISSUER, "kc-sub-mallory", "alice@example.com", false))).isNull();
+        assertThat(userRepository.findById(alice.getId()).orElseThrow().getProviderId()).isNull();
+        assertThat(userRepository.count()).isEqualTo(1);
+    }
+
+    @Test
+    void sameSubjectInAnotherRealmIsAnotherUser() {
+        Long alice = resolver.resolve(token(ISSUER, "kc-sub-shared", "alice@example.com", true));
+
+        Long partner = resolver.resolve(token(OTHER_REALM, "kc-sub-shared", "partner@example.com", true));
+        assertThat(partner).isNotNull().isNotEqualTo(alice);
+        assertThat(userRepository.findById(partner).orElseThrow().getProviderIssuer()).isEqualTo(OTHER_REALM);
+        // a fresh resolver, so the lookup goes to the table rather than the mapping cache
+        JwtUserResolver uncached = new JwtUserResolver(userRepository, entityManagerFactory,
+                new StaticListableBeanFactory().getBeanProvider(LocalTokenIssuer.class), new SimpleMeterRegistry(),
+                ISSUER, 100, 3600);
+        assertThat(uncached.resolve(token(OTHER_REALM, "kc-sub-shared", "partner@example.com", true))).isEqualTo(partner);
+        assertThat(uncached.resolve(token(ISSUER, "kc-sub-shared", "alice@example.com", true))).isEqualTo(alice);
+        assertThat(uncached.resolve(token(OTHER_REALM, "kc-sub-shared", "alice@example.com", true))).isEqualTo(partner);
+    }
+
+    @Test
+    void deletedUserIsNotResolvedFromTheCache() {
+        Jwt token = token("kc-sub-2", "dave@example.com");
+        Long first = resolver.resolve(token);
+
+        userRepository.deleteById(first);
+        Long second = resolver.resolve(token);
+        assertThat(second).isNotEqualTo(first);
+        assertThat(userRepository.findById(second)).isPresent();
+    }
+
+    @Test
+    void fullMappingCacheEvictsInsteadOfRefusingNewSubjects() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        JwtUserResolver small = new JwtUserResolver(userRepository, entityManagerFactory,
+                new StaticListableBeanFactory().getBeanProvider(LocalTokenIssuer.class), registry, ISSUER, 2, 3600);
+        for (int i = 0; i < 10; i++) small.resolve(token("kc-sub-many-" + i, "user" + i + "@example.com"));
+
+        Jwt latest = token("kc-sub-latest", "latest@example.com");
+        small.resolve(latest);
+        statistics.clear();
+        for (int i = 0; i < 100; i++) small.resolve(latest);
+        assertThat(statistics.getPrepareStatementCount()).isLessThan(10);
+        // eviction runs asynchronously, shortly after the writes that overflowed the cache
+        await().atMost(Duration.ofSeconds(5))
+                .until(() -> registry.get("security.user.mapping.size").gauge().value() <= 2);
+    }
+
+    private User registeredUser(String email) {
+        return userRepository.save(User.builder()
+                .firstName("Alice")
+                .lastName("Doe")
+                .email(email)
+                .password("x")
+                .build());
+    }
+
+    private static Jwt token(String subject, String email) {
+        return token(ISSUER, subject, email, true);
+    }
+
+    private static Jwt token(String issuer, String subject, String email, boolean emailVerified) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put("iss", issuer);
+        claims.put("sub", subject);
+        claims.put("email", email);
+        claims.put("email_verified", emailVerified);
+        claims.put("given_name", email.substring(0, 1).toUpperCase() + email.substring(1, email.indexOf('@')));
+        Instant now = Instant.now();
+        return new Jwt("token-" + subject, now, now.plusSeconds(300), Map.of("alg", "RS256"), claims);
+    }
+}
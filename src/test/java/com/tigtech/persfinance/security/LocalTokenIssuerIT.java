@@ -0,0 +1,189 @@
+package com.tigtech.persfinance.security;
+
+import com.nimbusds.jwt.SignedJWT;
+import com.tigtech.persfinance.domain.User;
+import com.tigtech.persfinance.repository.SigningKeyRepository;
+import com.tigtech.persfinance.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.context.WebApplicationContext;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+@SpringBootTest(properties = {
+        "keycloak.admin.username=admin",
+        "keycloak.admin.password=admin",
+        "keycloak.client-id=personal-finance-api",
+        "keycloak.client-secret=personal-finance-secret",
+        // nothing listens here: local logins must not need Keycloak
+        "keycloak.token-uri=http://localhost:8888/realms/Persfin/protocol/openid-connect/token",
+        "keycloak.admin-base=http://localhost:8888/admin/realms/Persfin",
+        "keycloak.admin-token-uri=http://localhost:8888/realms/master/protocol/openid-connect/token",
+        "spring.sql.init.mode=never",
+        "app.auth.token-issuer=local",
+        "app.auth.local.issuer=http://localhost:8081",
+        "app.auth.local.key-encryption-password=local-issuer-test-password",
+        "app.auth.local.key-encryption-salt=0d2e5a9c41f7b386",
+        "app.password-hashing.cost=4"
+})
+@ActiveProfiles("test")
+class LocalTokenIssuerIT {
+
+    private static final Duration ROTATION = Duration.ofHours(24);
+    private static final Duration PREPUBLISH = Duration.ofMinutes(2);
+
+    @Autowired
+    private WebApplicationContext wac;
+
+    @Autowired
+    private LocalTokenIssuer issuer;
+
+    @Autowired
+    private JwtDecoder jwtDecoder;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private SigningKeyRepository keyRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final JsonMapper json = JsonMapper.builder().build();
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setup() {
+        mockMvc = webAppContextSetup(wac).apply(springSecurity()).build();
+        userRepository.deleteAll();
+        userRepository.save(user("alice@example.com", "s3cret-pass", true));
+        userRepository.save(user("bob@example.com", "s3cret-pass", false));
+    }
+
+    @Test
+    void loginIssuesTokenAcceptedByTheApi() throws Exception {
+        String token = login("alice@example.com", "s3cret-pass");
+
+        mockMvc.perform(get("/api/auth/me").header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.email").value("alice@example.com"))
+                .andExpect(jsonPath("$.roles[0]").value("ROLE_USER"));
+        mockMvc.perform(get("/.well-known/jwks.json"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.keys[0].kid").value(SignedJWT.parse(token).getHeader().getKeyID()))
+                .andExpect(jsonPath("$.keys[0].d").doesNotExist());
+    }
+
+    @Test
+    void wrongPasswordUnknownAndInactiveUsersAreRejected() throws Exception {
+        for (String[] credentials : new String[][]{
+                {"alice@example.com", "wrong"}, {"nobody@example.com", "s3cret-pass"}, {"bob@example.com", "s3cret-pass"}}) {
+            MvcResult pending = mockMvc.perform(post("/api/auth/login")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(json.writeValueAsString(Map.of("email", credentials[0], "password", credentials[1]))))
+                    .andReturn();
+            mockMvc.perform(asyncDispatch(pending))
+                    .andExpect(status().isUnauthorized())
+                    .andExpect(jsonPath("$.error").value("invalid_grant"));
+        }
+    }
+
+    @Test
+    void passwordResetOrDeactivationOnAnotherInstanceAppliesToTheNextLogin() {
+        // cached here by the first login and the lookup
+        assertThat(issuer.login("alice@example.com", "s3cret-pass").join()).isPresent();
+        assertThat(userRepository.findByEmail("alice@example.com")).isPresent();
+
+        // written behind this instance's back, as another instance would
+        jdbcTemplate.update("update users set password = ? where email = ?",
+                passwordEncoder.encode("new-pass"), "alice@example.com");
+        assertThat(issuer.login("alice@example.com", "s3cret-pass").join()).isEmpty();
+        assertThat(issuer.login("alice@example.com", "new-pass").join()).isPresent();
+
+        jdbcTemplate.update("update users set active = false where email = ?", "alice@example.com");
+        assertThat(issuer.login("alice@example.com", "new-pass").join()).isEmpty();
+    }
+
+    @Test
+    void rotatedKeyIsPublishedBeforeItSignsAndOldTokensStayValid() throws Exception {
+        String before = login("alice@example.com", "s3cret-pass");
+        String oldKid = SignedJWT.parse(before).getHeader().getKeyID();
+        Instant rotationDue = keyRepository.findById(oldKid).orElseThrow().getActivatesAt().plus(ROTATION).minus(PREPUBLISH);
+
+        issuer.refresh(rotationDue);
+        assertThat(issuer.publicKeys().getKeys()).hasSize(2);
+        assertThat(kid(login("alice@example.com", "s3cret-pass"))).isEqualTo(oldKid);
+
+        issuer.refresh(rotationDue.plus(PREPUBLISH));
+        String after = login("alice@example.com", "s3cret-pass");
+        assertThat(kid(after)).isNotEqualTo(oldKid);
+        assertThat(jwtDecoder.decode(before).getClaimAsString("email")).isEqualTo("alice@example.com");
+        assertThat(jwtDecoder.decode(after).getClaimAsString("email")).isEqualTo("alice@example.com");
+    }
+
+    @Test
+    void defaultKeyEncryptionSecretOrMissingSaltFailsStartup() {
+        assertThatThrownBy(() -> issuerWith("change_me_in_dev", "0d2e5a9c41f7b386"))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> issuerWith("local-issuer-test-password", ""))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    private static LocalTokenIssuer issuerWith(String encryptionPassword, String encryptionSalt) {
+        return new LocalTokenIssuer(null, null, null, null, new SimpleMeterRegistry(), "http://localhost:8081",
+                3_600_000, 24, 60_000, encryptionPassword, encryptionSalt);
+    }
+
+    private String login(String email, String password) throws Exception {
+        MvcResult pending = mockMvc.perform(post("/api/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json.writeValueAsString(Map.of("email", email, "password", password))))
+                .andReturn();
+        MvcResult result = mockMvc.perform(asyncDispatch(pending))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.token_type").value("Bearer"))
+                .andReturn();
+        return (String) json.readValue(result.getResponse().getContentAsString(), Map.class).get("access_token");
+    }
+
+    private static String kid(String token) throws Exception {
+        return SignedJWT.parse(token).getHeader().getKeyID();
+    }
+
+    private User user(String email, String password, boolean active) {
+        return User.builder()
+                .firstName("Alice")
+                .lastName("Doe")
+                .email(email)
+                .password(passwordEncoder.encode(password))
+                .active(active)
+                .build();
+    }
+}
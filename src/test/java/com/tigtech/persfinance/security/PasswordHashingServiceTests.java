@@ -0,0 +1,58 @@
+package com.tigtech.persfinance.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PasswordHashingServiceTests {
+
+    @Test
+    void weakerHashesAreFlaggedForUpgrade() {
+        PasswordHashingService service = new PasswordHashingService(new SimpleMeterRegistry(), 250, 11, 2, 4);
+        try {
+            String weak = new BCryptPasswordEncoder(10).encode("secret123");
+            String current = service.encode("secret123");
+
+            assertThat(service.upgradeEncoding(weak)).isTrue();
+            assertThat(service.upgradeEncoding(current)).isFalse();
+            assertThat(service.matches("secret123", weak)).isTrue();
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void encodeAllKeepsOrder() {
+        PasswordHashingService service = new PasswordHashingService(new SimpleMeterRegistry(), 250, 4, 2, 1);
+        try {
+            List<String> raw = List.of("a", "b", "c", "d", "e");
+            List<String> hashes = service.encodeAll(raw);
+
+            assertThat(hashes).hasSize(5);
+            for (int i = 0; i < raw.size(); i++) {
+                assertThat(service.matches(raw.get(i), hashes.get(i))).isTrue();
+            }
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void encodeAllFailsInsteadOfWaitingOnAShutDownPool() {
+        PasswordHashingService service = new PasswordHashingService(new SimpleMeterRegistry(), 250, 4, 1, 1);
+        service.shutdown();
+
+        assertThatThrownBy(() -> service.encodeAll(List.of("a", "b")))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void calibrationNeverGoesBelowMinimumCost() {
+        assertThat(PasswordHashingService.calibrate(1)).isEqualTo(PasswordHashingService.MIN_COST);
+    }
+}
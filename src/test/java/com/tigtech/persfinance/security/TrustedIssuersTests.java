@@ -0,0 +1,126 @@
+package com.tigtech.persfinance.security;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.sun.net.httpserver.HttpServer;
+import com.tigtech.persfinance.service.KeycloakHttpClient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TrustedIssuersTests {
+
+    private HttpServer keycloak;
+    private String base;
+    private final Map<String, RSAKey> realmKeys = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> jwksRequests = new ConcurrentHashMap<>();
+    private final AtomicInteger discoveryRequests = new AtomicInteger();
+    private TrustedIssuers issuers;
+
+    @BeforeEach
+    void startKeycloak() throws Exception {
+        keycloak = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 16);
+        base = "http://127.0.0.1:" + keycloak.getAddress().getPort();
+        for (String realm : List.of("alpha", "beta")) {
+            realmKeys.put(realm, new RSAKeyGenerator(2048).keyID(realm + "-1").generate());
+            jwksRequests.put(realm, new AtomicInteger());
+            String issuer = base + "/realms/" + realm;
+            keycloak.createContext("/realms/" + realm + "/.well-known/openid-configuration", exchange -> {
+                discoveryRequests.incrementAndGet();
+                respond(exchange, "{\"issuer\":\"" + issuer + "\",\"jwks_uri\":\"" + issuer + "/protocol/openid-connect/certs\"}");
+            });
+            keycloak.createContext("/realms/" + realm + "/protocol/openid-connect/certs", exchange -> {
+                jwksRequests.get(realm).incrementAndGet();
+                respond(exchange, new JWKSet(realmKeys.get(realm).toPublicJWK()).toString());
+            });
+        }
+        keycloak.start();
+
+        KeycloakHttpClient httpClient = new KeycloakHttpClient(JsonMapper.builder().build(), new SimpleMeterRegistry(),
+                HttpClient.Version.HTTP_1_1, 2000, 5000, 20, 1000);
+        issuers = new TrustedIssuers(httpClient, new SimpleMeterRegistry(),
+                List.of(base + "/realms/alpha", base + "/realms/beta"), false, 300, 30, 30);
+    }
+
+    @AfterEach
+    void stopKeycloak() {
+        issuers.close();
+        keycloak.stop(0);
+    }
+
+    @Test
+    void verifiesTokensOfEveryTrustedRealmWithPrefetchedKeys() throws Exception {
+        issuers.prefetchAll();
+        assertThat(discoveryRequests).hasValue(2);
+
+        assertThat(issuers.decode(token("alpha", realmKeys.get("alpha"))).getSubject()).isEqualTo("user-of-alpha");
+        assertThat(issuers.decode(token("beta", realmKeys.get("beta"))).getSubject()).isEqualTo("user-of-beta");
+        assertThat(jwksRequests.get("alpha")).hasValue(1);
+        assertThat(jwksRequests.get("beta")).hasValue(1);
+    }
+
+    @Test
+    void untrustedIssuerIsRejectedWithoutNetworkCalls() throws Exception {
+        String foreign = sign("http://evil.example/realms/alpha", "user", realmKeys.get("alpha"));
+
+        assertThatThrownBy(() -> issuers.decode(foreign)).isInstanceOf(BadJwtException.class).hasMessageContaining("Untrusted");
+        assertThatThrownBy(() -> issuers.decode("not-a-jwt")).isInstanceOf(BadJwtException.class);
+        assertThat(discoveryRequests).hasValue(0);
+    }
+
+    @Test
+    void unknownKidRefetchesKeysAtMostOncePerInterval() throws Exception {
+        issuers.decode(token("alpha", realmKeys.get("alpha")));
+        RSAKey forged = new RSAKeyGenerator(2048).keyID("forged").generate();
+
+        for (int i = 0; i < 5; i++) {
+            assertThatThrownBy(() -> issuers.decode(token("alpha", forged))).isInstanceOf(BadJwtException.class);
+        }
+        assertThat(jwksRequests.get("alpha").get()).isLessThanOrEqualTo(2);
+    }
+
+    private String token(String realm, RSAKey key) throws Exception {
+        return sign(base + "/realms/" + realm, "user-of-" + realm, key);
+    }
+
+    private static String sign(String issuer, String subject, RSAKey key) throws Exception {
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .issuer(issuer)
+                .subject(subject)
+                .expirationTime(Date.from(Instant.now().plusSeconds(300)))
+                .build();
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(key.getKeyID()).build(), claims);
+        jwt.sign(new RSASSASigner(key));
+        return jwt.serialize();
+    }
+
+    private static void respond(com.sun.net.httpserver.HttpExchange exchange, String json) throws java.io.IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+    }
+}
@@ -0,0 +1,46 @@
+package com.tigtech.persfinance.service;
+
+import com.tigtech.persfinance.domain.PasswordResetToken;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class BloomFilterTests {
+
+    @Test
+    void containsEveryAddedKeyAndStaysNearTargetFalsePositiveRate() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        List<byte[]> keys = randomHashes(10_000);
+        keys.forEach(filter::add);
+
+        assertThat(keys).allMatch(filter::mightContain);
+
+        int falsePositives = 0;
+        int probes = 100_000;
+        for (byte[] unknown : randomHashes(probes)) {
+            if (filter.mightContain(unknown)) falsePositives++;
+        }
+        double observed = (double) falsePositives / probes;
+        assertThat(observed).isLessThan(0.02);
+        assertThat(filter.expectedFalsePositiveRate()).isCloseTo(0.01, within(0.005));
+    }
+
+    @Test
+    void takesOneBitPerPositionForTheTargetRate() {
+        BloomFilter filter = new BloomFilter(100_000, 0.01);
+
+        // m = -n ln(p) / ln(2)^2, k = m/n ln(2)
+        assertThat(filter.size()).isBetween(958_000L, 959_000L);
+        assertThat(filter.hashFunctions()).isEqualTo(7);
+    }
+
+    private static List<byte[]> randomHashes(int count) {
+        List<byte[]> hashes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) hashes.add(PasswordResetToken.hash(PasswordResetToken.generateToken()));
+        return hashes;
+    }
+}
@@ -0,0 +1,74 @@
+package com.tigtech.persfinance.service;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class KeycloakHttpClientTests {
+
+    private HttpServer keycloak;
+    private URI uri;
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    void startKeycloak() throws Exception {
+        keycloak = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 16);
+        keycloak.setExecutor(Executors.newCachedThreadPool());
+        keycloak.createContext("/slow", exchange -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = "{}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        keycloak.start();
+        uri = URI.create("http://127.0.0.1:" + keycloak.getAddress().getPort() + "/slow");
+    }
+
+    @AfterEach
+    void stopKeycloak() {
+        release.countDown();
+        keycloak.stop(0);
+    }
+
+    @Test
+    void callsBeyondTheConcurrencyLimitFailOnceNoSlotFreesUp() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        KeycloakHttpClient client = new KeycloakHttpClient(JsonMapper.builder().build(), registry,
+                HttpClient.Version.HTTP_1_1, 1000, 5000, 2, 200);
+
+        CompletableFuture<KeycloakHttpClient.Response> first = client.get("test", uri, null);
+        CompletableFuture<KeycloakHttpClient.Response> second = client.get("test", uri, null);
+        assertThat(registry.get("keycloak.http.in-flight").gauge().value()).isEqualTo(2);
+
+        CompletableFuture<KeycloakHttpClient.Response> third = client.get("test", uri, null);
+        assertThatThrownBy(third::get).isInstanceOf(ExecutionException.class).hasCauseInstanceOf(HttpTimeoutException.class);
+
+        release.countDown();
+        assertThat(first.get(5, TimeUnit.SECONDS).status()).isEqualTo(200);
+        assertThat(second.get(5, TimeUnit.SECONDS).status()).isEqualTo(200);
+        assertThat(client.get("test", uri, null).get(5, TimeUnit.SECONDS).status()).isEqualTo(200);
+        assertThat(registry.get("keycloak.http.in-flight").gauge().value()).isZero();
+    }
+}
@@ -0,0 +1,330 @@
+package com.tigtech.persfinance.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.tigtech.persfinance.domain.ProvisioningOutboxEntry;
+import com.tigtech.persfinance.domain.ProvisioningOutboxEntry.Status;
+import com.tigtech.persfinance.domain.User;
+import com.tigtech.persfinance.repository.ProvisioningOutboxRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = {
+        "keycloak.admin.username=admin",
+        "keycloak.admin.password=admin",
+        "keycloak.client-id=personal-finance-api",
+        "keycloak.client-secret=personal-finance-secret",
+        "keycloak.http.version=HTTP_1_1",
+        "spring.sql.init.mode=never",
+        // drained by the tests only
+        "app.outbox.poll-interval-ms=3600000",
+        "app.outbox.purge-initial-delay-ms=3600000",
+        "app.outbox.max-attempts=2"
+})
+@ActiveProfiles("test")
+class KeycloakProvisioningDispatcherIT {
+
+    private static final StubKeycloak keycloak = StubKeycloak.start();
+
+    @DynamicPropertySource
+    static void keycloakUris(DynamicPropertyRegistry registry) {
+        registry.add("keycloak.token-uri", () -> keycloak.base() + "/realms/Persfin/protocol/openid-connect/token");
+        registry.add("keycloak.admin-base", () -> keycloak.base() + "/admin/realms/Persfin");
+        registry.add("keycloak.admin-token-uri", () -> keycloak.base() + "/realms/master/protocol/openid-connect/token");
+    }
+
+    @AfterAll
+    static void stopStubKeycloak() {
+        keycloak.server.stop(0);
+    }
+
+    @Autowired
+    private KeycloakProvisioningDispatcher dispatcher;
+
+    @Autowired
+    private KeycloakProvisioningOutbox outbox;
+
+    @Autowired
+    private ProvisioningOutboxRepository repository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    void setup() {
+        repository.deleteAll();
+        keycloak.reset();
+    }
+
+    @Test
+    void concurrentClaimersSkipEachOthersRows() throws Exception {
+        for (int i = 0; i < 6; i++) enqueue("claim" + i + "@example.com");
+        LocalDateTime now = LocalDateTime.now();
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService other = Executors.newSingleThreadExecutor();
+        try {
+            // another instance holds the locks on the first four due rows
+            Future<List<Long>> held = other.submit(() -> new TransactionTemplate(transactionManager).execute(status -> {
+                List<Long> ids = ids(repository.lockDue(now, Limit.of(4)));
+                locked.countDown();
+                await(release);
+                return ids;
+            }));
+            assertThat(locked.await(10, TimeUnit.SECONDS)).isTrue();
+
+            List<Long> claimed = ids(dispatcher.claimBatch());
+            release.countDown();
+
+            assertThat(held.get(10, TimeUnit.SECONDS)).hasSize(4).doesNotContainAnyElementsOf(claimed);
+            assertThat(claimed).hasSize(2);
+        } finally {
+            release.countDown();
+            other.shutdownNow();
+        }
+    }
+
+    @Test
+    void claimedRowsAreLeasedUntilTheLeaseExpires() {
+        ProvisioningOutboxEntry entry = enqueue("lease@example.com");
+
+        assertThat(ids(dispatcher.claimBatch())).containsExactly(entry.getId());
+        // still leased to the first claimer, which may be mid-dispatch
+        assertThat(dispatcher.claimBatch()).isEmpty();
+
+        makeDue(entry.getId());
+        assertThat(ids(dispatcher.claimBatch())).containsExactly(entry.getId());
+    }
+
+    @Test
+    void failedCreateIsRetriedAfterBackoffWithTheSamePassword() {
+        ProvisioningOutboxEntry entry = enqueue("retry@example.com");
+        keycloak.failingCreates.set(1);
+
+        dispatcher.drain();
+
+        ProvisioningOutboxEntry failed = repository.findById(entry.getId()).orElseThrow();
+        assertThat(failed.getStatus()).isEqualTo(Status.PENDING);
+        assertThat(failed.getAttempts()).isEqualTo(1);
+        assertThat(failed.getLastError()).contains("500");
+        assertThat(failed.getNextAttemptAt()).isAfter(LocalDateTime.now());
+        assertThat(failed.getEncryptedPassword()).isNotNull();
+
+        // not due before the backoff has passed
+        dispatcher.drain();
+        assertThat(keycloak.createRequests.get()).isEqualTo(1);
+
+        makeDue(entry.getId());
+        dispatcher.drain();
+
+        ProvisioningOutboxEntry done = repository.findById(entry.getId()).orElseThrow();
+        assertThat(done.getStatus()).isEqualTo(Status.DONE);
+        assertThat(done.getEncryptedPassword()).isNull();
+        assertThat(done.getLastError()).isNull();
+        assertThat(keycloak.createRequests.get()).isEqualTo(2);
+        assertThat(keycloak.passwords).containsEntry("retry@example.com", "Initial-Passw0rd");
+    }
+
+    @Test
+    void userAlreadyInKeycloakIsNotCreatedAgain() {
+        ProvisioningOutboxEntry existing = enqueue("existing@example.com");
+        keycloak.passwords.put("existing@example.com", "set-elsewhere");
+
+        dispatcher.drain();
+
+        assertThat(repository.findById(existing.getId()).orElseThrow().getStatus()).isEqualTo(Status.DONE);
+        assertThat(keycloak.createRequests.get()).isZero();
+        assertThat(keycloak.passwords).containsEntry("existing@example.com", "set-elsewhere");
+    }
+
+    @Test
+    void createAnsweredWithConflictCountsAsProvisioned() {
+        // a previous attempt created the user but its outcome was never saved, and the lookup has not caught up
+        ProvisioningOutboxEntry entry = enqueue("raced@example.com");
+        keycloak.passwords.put("raced@example.com", "Initial-Passw0rd");
+        keycloak.hiddenFromLookup.add("raced@example.com");
+
+        dispatcher.drain();
+
+        ProvisioningOutboxEntry done = repository.findById(entry.getId()).orElseThrow();
+        assertThat(done.getStatus()).isEqualTo(Status.DONE);
+        assertThat(done.getEncryptedPassword()).isNull();
+        assertThat(keycloak.createRequests.get()).isEqualTo(1);
+    }
+
+    @Test
+    void givingUpWipesThePassword() {
+        ProvisioningOutboxEntry entry = enqueue("broken@example.com");
+        keycloak.failingCreates.set(Integer.MAX_VALUE);
+
+        dispatcher.drain();
+        makeDue(entry.getId());
+        dispatcher.drain();
+
+        ProvisioningOutboxEntry failed = repository.findById(entry.getId()).orElseThrow();
+        assertThat(failed.getStatus()).isEqualTo(Status.FAILED);
+        assertThat(failed.getAttempts()).isEqualTo(2);
+        assertThat(failed.getEncryptedPassword()).isNull();
+        assertThat(failed.getProcessedAt()).isNotNull();
+    }
+
+    @Test
+    void purgeDeletesOnlyEntriesProcessedBeforeTheRetention() {
+        LocalDateTime longAgo = LocalDateTime.now().minusDays(8);
+        ProvisioningOutboxEntry oldDone = processed("old-done@example.com", Status.DONE, longAgo);
+        ProvisioningOutboxEntry oldFailed = processed("old-failed@example.com", Status.FAILED, longAgo);
+        ProvisioningOutboxEntry recent = processed("recent@example.com", Status.DONE, LocalDateTime.now().minusDays(1));
+        ProvisioningOutboxEntry pending = enqueue("pending@example.com");
+
+        assertThat(dispatcher.purgeProcessed()).isEqualTo(2);
+        assertThat(ids(repository.findAll()))
+                .containsExactlyInAnyOrder(recent.getId(), pending.getId())
+                .doesNotContain(oldDone.getId(), oldFailed.getId());
+    }
+
+    @Test
+    void defaultEncryptionSecretOrMissingSaltFailsStartup() {
+        assertThatThrownBy(() -> new KeycloakProvisioningOutbox(repository, "change_me_in_dev", "9f3b61c2d4e8a057"))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> new KeycloakProvisioningOutbox(repository, "outbox-test-password", ""))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    private ProvisioningOutboxEntry enqueue(String email) {
+        User user = User.builder().id((long) email.hashCode()).email(email).firstName("Alice").lastName("Doe").build();
+        return repository.save(outbox.newEntry(user, "Initial-Passw0rd", LocalDateTime.now().minusSeconds(1)));
+    }
+
+    private ProvisioningOutboxEntry processed(String email, Status status, LocalDateTime processedAt) {
+        ProvisioningOutboxEntry entry = enqueue(email);
+        entry.setStatus(status);
+        entry.setEncryptedPassword(null);
+        entry.setProcessedAt(processedAt);
+        return repository.save(entry);
+    }
+
+    private void makeDue(Long id) {
+        ProvisioningOutboxEntry entry = repository.findById(id).orElseThrow();
+        entry.setNextAttemptAt(LocalDateTime.now().minusSeconds(1));
+        repository.save(entry);
+    }
+
+    private static List<Long> ids(List<ProvisioningOutboxEntry> entries) {
+        return entries.stream().map(ProvisioningOutboxEntry::getId).toList();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Admin token and users endpoints of a realm, with users kept in memory by username. */
+    private static final class StubKeycloak {
+
+        private static final JsonMapper json = JsonMapper.builder().build();
+
+        final HttpServer server;
+        final Map<String, String> passwords = new ConcurrentHashMap<>();
+        final Set<String> hiddenFromLookup = ConcurrentHashMap.newKeySet();
+        final AtomicInteger failingCreates = new AtomicInteger();
+        final AtomicInteger createRequests = new AtomicInteger();
+
+        private StubKeycloak(HttpServer server) {
+            this.server = server;
+        }
+
+        static StubKeycloak start() {
+            try {
+                StubKeycloak stub = new StubKeycloak(HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 64));
+                stub.server.setExecutor(Executors.newCachedThreadPool());
+                stub.server.createContext("/realms/master/protocol/openid-connect/token", exchange -> {
+                    exchange.getRequestBody().readAllBytes();
+                    respond(exchange, 200, "{\"access_token\":\"stub\",\"expires_in\":300,\"token_type\":\"Bearer\"}");
+                });
+                stub.server.createContext("/admin/realms/Persfin/users", stub::users);
+                stub.server.start();
+                return stub;
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        String base() {
+            return "http://127.0.0.1:" + server.getAddress().getPort();
+        }
+
+        void reset() {
+            passwords.clear();
+            hiddenFromLookup.clear();
+            failingCreates.set(0);
+            createRequests.set(0);
+        }
+
+        @SuppressWarnings("unchecked")
+        private void users(HttpExchange exchange) throws IOException {
+            if ("GET".equals(exchange.getRequestMethod())) {
+                String username = query(exchange, "username");
+                boolean found = passwords.containsKey(username) && !hiddenFromLookup.contains(username);
+                respond(exchange, 200, found ? "[{\"username\":\"" + username + "\"}]" : "[]");
+                return;
+            }
+            Map<String, Object> user = json.readValue(exchange.getRequestBody().readAllBytes(), Map.class);
+            createRequests.incrementAndGet();
+            if (failingCreates.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                respond(exchange, 500, "{\"error\":\"unavailable\"}");
+                return;
+            }
+            String username = (String) user.get("username");
+            String password = (String) ((List<Map<String, Object>>) user.get("credentials")).get(0).get("value");
+            respond(exchange, passwords.putIfAbsent(username, password) == null ? 201 : 409, "");
+        }
+
+        private static String query(HttpExchange exchange, String name) {
+            for (String param : exchange.getRequestURI().getRawQuery().split("&")) {
+                String[] kv = param.split("=", 2);
+                if (kv[0].equals(name)) return URLDecoder.decode(kv[1], StandardCharsets.UTF_8);
+            }
+            return null;
+        }
+
+        private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+            if (bytes.length > 0) exchange.getResponseBody().write(bytes);
+            exchange.close();
+        }
+    }
+}
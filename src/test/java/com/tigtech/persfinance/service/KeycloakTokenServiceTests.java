@@ -0,0 +1,187 @@
+package com.tigtech.persfinance.service;
+
+import com.tigtech.persfinance.security.AuthProvider;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.net.http.HttpClient;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class KeycloakTokenServiceTests {
+
+    private static final String TOKEN_URI = "http://kc/realms/master/protocol/openid-connect/token";
+
+    private KeycloakHttpClient http;
+    private MeterRegistry meterRegistry;
+    private MutableClock clock;
+    private KeycloakTokenService service;
+
+    @BeforeEach
+    void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        http = spy(new KeycloakHttpClient(JsonMapper.builder().build(), meterRegistry, HttpClient.Version.HTTP_1_1, 1000, 1000, 20, 1000));
+        clock = new MutableClock(Instant.parse("2026-01-01T00:00:00Z"));
+
+        service = new KeycloakTokenService(http, authProvider(), meterRegistry, Duration.ofSeconds(30), clock);
+    }
+
+    private static AuthProvider authProvider() {
+        AuthProvider authProvider = mock(AuthProvider.class);
+        when(authProvider.getKcAdminTokenUri()).thenReturn(TOKEN_URI);
+        when(authProvider.getKcAdminClientId()).thenReturn("admin-cli");
+        when(authProvider.getKcAdminUsername()).thenReturn("admin");
+        when(authProvider.getKcAdminPassword()).thenReturn("admin");
+        return authProvider;
+    }
+
+    @Test
+    void reusesTokenUntilRefreshWindow() {
+        respond("password", tokenJson("a1", "r1"));
+
+        assertEquals("a1", service.getAdminAccessToken());
+        clock.advance(Duration.ofSeconds(200));
+        assertEquals("a1", service.getAdminAccessToken());
+
+        verify(http, times(1)).postForm(eq("admin_token"), eq(TOKEN_URI), argThat(grant("password")));
+        assertEquals(1.0, counter("keycloak.admin.token.cache", "result", "miss"));
+        assertEquals(1.0, counter("keycloak.admin.token.cache", "result", "hit"));
+    }
+
+    @Test
+    void refreshesWithRefreshTokenInsideSkewWindow() {
+        respond("password", tokenJson("a1", "r1"));
+        respond("refresh_token", tokenJson("a2", "r2"));
+
+        service.getAdminAccessToken();
+        clock.advance(Duration.ofSeconds(280));
+
+        // still-valid token is served while the refresh runs (it completes immediately here)
+        assertEquals("a1", service.getAdminAccessToken());
+        assertEquals("a2", service.getAdminAccessToken());
+
+        verify(http, times(1)).postForm(eq("admin_token"), eq(TOKEN_URI), argThat(grant("password")));
+        verify(http, times(1)).postForm(eq("admin_token"), eq(TOKEN_URI), argThat(grant("refresh_token")));
+        assertEquals(1.0, counter("keycloak.admin.token.requests", "grant", "refresh_token"));
+    }
+
+    @Test
+    void expiredTokenIsFetchedAgain() {
+        doReturn(ok(tokenJson("a1", "r1")), ok(tokenJson("a2", "r2")))
+                .when(http).postForm(eq("admin_token"), eq(TOKEN_URI), argThat(grant("password")));
+
+        service.getAdminAccessToken();
+        clock.advance(Duration.ofHours(1));
+
+        assertEquals("a2", service.getAdminAccessToken());
+        verify(http, times(2)).postForm(eq("admin_token"), eq(TOKEN_URI), argThat(grant("password")));
+    }
+
+    @Test
+    void missThatLosesTheRaceToAnotherRefreshUsesItsToken() {
+        doReturn(ok(tokenJson("a1", "r1")), ok(tokenJson("a2", "r2")))
+                .when(http).postForm(eq("admin_token"), eq(TOKEN_URI), argThat(grant("password")));
+        MissHookRegistry registry = new MissHookRegistry();
+        KeycloakTokenService racing = new KeycloakTokenService(http, authProvider(), registry, Duration.ofSeconds(30), clock);
+        // a second caller misses too and finishes its refresh before the first one claims the in-flight slot
+        registry.onFirstMiss = () -> assertEquals("a1", racing.getAdminAccessToken());
+
+        assertEquals("a1", racing.getAdminAccessToken());
+        verify(http, times(1)).postForm(eq("admin_token"), eq(TOKEN_URI), argThat(grant("password")));
+    }
+
+    private void respond(String grantType, String body) {
+        doReturn(ok(body)).when(http).postForm(eq("admin_token"), eq(TOKEN_URI), argThat(grant(grantType)));
+    }
+
+    private static org.mockito.ArgumentMatcher<Map<String, String>> grant(String grantType) {
+        return form -> form != null && grantType.equals(form.get("grant_type"));
+    }
+
+    private static CompletableFuture<KeycloakHttpClient.Response> ok(String body) {
+        return CompletableFuture.completedFuture(new KeycloakHttpClient.Response(200, body));
+    }
+
+    private double counter(String name, String tagKey, String tagValue) {
+        return meterRegistry.get(name).tag(tagKey, tagValue).counter().count();
+    }
+
+    private static String tokenJson(String accessToken, String refreshToken) {
+        return """
+                {"access_token":"%s","expires_in":300,"refresh_token":"%s","refresh_expires_in":1800,"token_type":"Bearer"}
+                """.formatted(accessToken, refreshToken);
+    }
+
+    /**
+     * Runs a hook the first time a cache miss is counted, which happens between the cache read and the refresh.
+     */
+    static class MissHookRegistry extends SimpleMeterRegistry {
+        Runnable onFirstMiss;
+
+        @Override
+        protected Counter newCounter(Meter.Id id) {
+            Counter counter = super.newCounter(id);
+            if (!"miss".equals(id.getTag("result"))) return counter;
+            return new Counter() {
+                @Override
+                public void increment(double amount) {
+                    counter.increment(amount);
+                    Runnable hook = onFirstMiss;
+                    onFirstMiss = null;
+                    if (hook != null) hook.run();
+                }
+
+                @Override
+                public double count() {
+                    return counter.count();
+                }
+
+                @Override
+                public Meter.Id getId() {
+                    return counter.getId();
+                }
+            };
+        }
+    }
+
+    static class MutableClock extends Clock {
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration d) {
+            now = now.plus(d);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.tigtech.persfinance.service;
+
+import com.tigtech.persfinance.domain.PasswordResetToken;
+import com.tigtech.persfinance.repository.PasswordResetTokenRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PasswordResetTokenFilterTests {
+
+    private final byte[] issuedHere = PasswordResetToken.hash(PasswordResetToken.generateToken());
+    private final byte[] issuedElsewhere = PasswordResetToken.hash(PasswordResetToken.generateToken());
+    private final byte[] unknown = PasswordResetToken.hash(PasswordResetToken.generateToken());
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final PasswordResetTokenRepository repository = mock(PasswordResetTokenRepository.class);
+
+    @Test
+    void unknownTokenIsRejected() {
+        when(repository.findHashesExpiringAfter(any())).thenReturn(List.<Object[]>of(row(issuedHere, 60)));
+        PasswordResetTokenFilter filter = builtFilter(0);
+
+        assertThat(filter.mightContain(issuedHere)).isTrue();
+        assertThat(filter.mightContain(unknown)).isFalse();
+        assertThat(meterRegistry.counter("password.reset.filter.lookups", "result", "rejected").count()).isEqualTo(1);
+        assertThat(meterRegistry.counter("password.reset.filter.lookups", "result", "passed").count()).isEqualTo(1);
+    }
+
+    @Test
+    void tokenIssuedByAnotherInstanceAfterTheRebuildIsCaughtUpWith() {
+        when(repository.findHashesExpiringAfter(any()))
+                .thenReturn(List.<Object[]>of(row(issuedHere, 60)))
+                .thenReturn(List.<Object[]>of(row(issuedHere, 60), row(issuedElsewhere, 120)));
+        PasswordResetTokenFilter filter = builtFilter(0);
+
+        assertThat(filter.mightContain(issuedElsewhere)).isTrue();
+        assertThat(filter.mightContain(unknown)).isFalse();
+        verify(repository, times(3)).findHashesExpiringAfter(any());
+    }
+
+    @Test
+    void missesWithinTheCatchUpIntervalDoNotQueryAgain() {
+        when(repository.findHashesExpiringAfter(any())).thenReturn(List.<Object[]>of(row(issuedHere, 60)));
+        PasswordResetTokenFilter filter = builtFilter(60_000);
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(filter.mightContain(PasswordResetToken.hash(PasswordResetToken.generateToken()))).isFalse();
+        }
+        verify(repository, times(2)).findHashesExpiringAfter(any());
+        assertThat(meterRegistry.counter("password.reset.filter.catch_ups").count()).isEqualTo(1);
+    }
+
+    private PasswordResetTokenFilter builtFilter(long catchUpIntervalMs) {
+        PasswordResetTokenFilter filter = new PasswordResetTokenFilter(
+                repository, meterRegistry, true, 1_000, 0.01, catchUpIntervalMs);
+        filter.rebuild();
+        return filter;
+    }
+
+    private static Object[] row(byte[] hash, long expiresInMinutes) {
+        return new Object[]{hash, LocalDateTime.now().plusMinutes(expiresInMinutes)};
+    }
+}
@@ -0,0 +1,92 @@
+package com.tigtech.persfinance.service;
+
+import com.tigtech.persfinance.domain.PasswordResetToken;
+import com.tigtech.persfinance.domain.User;
+import com.tigtech.persfinance.repository.PasswordResetTokenRepository;
+import com.tigtech.persfinance.repository.UserRepository;
+import com.tigtech.persfinance.web.dto.ForgotPasswordRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "keycloak.admin.username=admin",
+        "keycloak.admin.password=admin",
+        "keycloak.client-id=personal-finance-api",
+        "keycloak.client-secret=personal-finance-secret",
+        "keycloak.token-uri=http://localhost:8888/realms/Persfin/protocol/openid-connect/token",
+        "keycloak.admin-base=http://localhost:8888/admin/realms/Persfin",
+        "keycloak.admin-token-uri=http://localhost:8888/realms/master/protocol/openid-connect/token",
+        "spring.sql.init.mode=never",
+        "app.password-reset.sweep-batch-size=3",
+        "app.password-reset.sweep-initial-delay-ms=3600000"
+})
+@ActiveProfiles("test")
+class PasswordResetTokenSweeperIT {
+
+    @Autowired
+    private PasswordResetTokenSweeper sweeper;
+
+    @Autowired
+    private PasswordResetTokenRepository tokenRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private AuthService authService;
+
+    private User user;
+
+    @BeforeEach
+    void setup() {
+        tokenRepository.deleteAll();
+        userRepository.deleteAll();
+        user = userRepository.save(User.builder()
+                .firstName("Alice")
+                .lastName("Doe")
+                .email("alice@example.com")
+                .password("x")
+                .build());
+    }
+
+    @Test
+    void sweepDeletesOnlyExpiredTokensAcrossSeveralBatches() {
+        LocalDateTime now = LocalDateTime.now();
+        List<PasswordResetToken> tokens = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            tokens.add(PasswordResetToken.of(PasswordResetToken.generateToken(), user, now.minusMinutes(i + 1)));
+        }
+        tokens.add(PasswordResetToken.of(PasswordResetToken.generateToken(), user, now.plusHours(1)));
+        tokens.add(PasswordResetToken.of(PasswordResetToken.generateToken(), user, now.plusHours(2)));
+        tokenRepository.saveAll(tokens);
+
+        assertThat(sweeper.deleteExpired()).isEqualTo(7);
+        assertThat(tokenRepository.findAll()).allMatch(t -> !t.isExpired()).hasSize(2);
+    }
+
+    @Test
+    void newTokenInvalidatesPreviousOnes() {
+        String old = PasswordResetToken.generateToken();
+        tokenRepository.save(PasswordResetToken.of(old, user, LocalDateTime.now().plusHours(1)));
+
+        authService.forgotPassword(forgot("alice@example.com"));
+
+        assertThat(tokenRepository.findByTokenHash(PasswordResetToken.hash(old))).isEmpty();
+        assertThat(tokenRepository.count()).isEqualTo(1);
+    }
+
+    private static ForgotPasswordRequest forgot(String email) {
+        ForgotPasswordRequest request = new ForgotPasswordRequest();
+        request.setEmail(email);
+        return request;
+    }
+}
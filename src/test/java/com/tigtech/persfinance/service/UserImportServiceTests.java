@@ -0,0 +1,113 @@
+package com.tigtech.persfinance.service;
+
+import com.tigtech.persfinance.repository.ProvisioningOutboxRepository;
+import com.tigtech.persfinance.repository.UserRepository;
+import com.tigtech.persfinance.security.PasswordHashingService;
+import com.tigtech.persfinance.service.UserImportService.ImportRow;
+import com.tigtech.persfinance.service.UserImportService.RowResult;
+import com.tigtech.persfinance.service.UserImportService.RowStatus;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UserImportServiceTests {
+
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final PasswordHashingService passwordHashing = mock(PasswordHashingService.class);
+    private UserImportService service;
+
+    @BeforeEach
+    void setup() {
+        when(passwordHashing.encodeAll(anyList())).thenAnswer(inv -> ((List<?>) inv.getArgument(0)).stream()
+                .map(p -> "hash-of-" + p).toList());
+        KeycloakProvisioningOutbox outbox = new KeycloakProvisioningOutbox(
+                mock(ProvisioningOutboxRepository.class), "outbox-test-password", "9f3b61c2d4e8a057");
+        service = new UserImportService(userRepository, jdbcTemplate, passwordHashing, outbox,
+                Validation.buildDefaultValidatorFactory().getValidator(), mock(PlatformTransactionManager.class), 500);
+    }
+
+    @Test
+    void chunkHittingAConcurrentInsertIsRecheckedOnce() {
+        // registered by someone else between the duplicate check and the insert
+        when(userRepository.findExistingEmails(anyList()))
+                .thenReturn(List.of())
+                .thenReturn(List.of("raced@example.com"));
+        when(jdbcTemplate.batchUpdate(anyString(), anyList()))
+                .thenThrow(new DuplicateKeyException("uk_users_email"))
+                .thenReturn(new int[]{1})
+                .thenReturn(new int[]{1});
+        when(userRepository.findIdsByEmails(anyList())).thenReturn(List.<Object[]>of(new Object[]{7L, "kept@example.com"}));
+
+        List<RowResult> results = new ArrayList<>();
+        UserImportService.Summary summary = service.importRows(rows(
+                new ImportRow(1, "Kept", "User", "kept@example.com", "Passw0rd-1"),
+                new ImportRow(2, "Raced", "User", "raced@example.com", "Passw0rd-2")), results::add);
+
+        assertThat(results).extracting(RowResult::row, RowResult::status)
+                .containsExactlyInAnyOrder(
+                        tuple(1, RowStatus.IMPORTED),
+                        tuple(2, RowStatus.DUPLICATE));
+        assertThat(summary.imported()).isEqualTo(1);
+        assertThat(summary.duplicates()).isEqualTo(1);
+        // hashed once, though inserted twice
+        verify(passwordHashing, times(1)).encodeAll(anyList());
+    }
+
+    @Test
+    void chunkFailingTwiceIsReportedAsErrors() {
+        when(userRepository.findExistingEmails(anyList())).thenReturn(List.of());
+        when(jdbcTemplate.batchUpdate(anyString(), anyList()))
+                .thenThrow(new DataIntegrityViolationException("first"))
+                .thenThrow(new DataIntegrityViolationException("second"));
+
+        List<RowResult> results = new ArrayList<>();
+        UserImportService.Summary summary = service.importRows(rows(
+                new ImportRow(1, "Ann", "Lee", "ann@example.com", "Passw0rd-1")), results::add);
+
+        assertThat(results).singleElement().satisfies(r -> {
+            assertThat(r.status()).isEqualTo(RowStatus.ERROR);
+            assertThat(r.error()).isEqualTo("Chunk could not be saved");
+        });
+        assertThat(summary.errors()).isEqualTo(1);
+    }
+
+    @Test
+    void csvRowsParseQuotesSkipTheHeaderAndBlankLinesAndPadShortRows() {
+        String csv = """
+                firstName,lastName,email,password
+                "Smith, Jr.","He said \"\"hi\"\"",a@example.com,pw-1
+
+                Short,Row
+                """;
+        List<ImportRow> rows = new ArrayList<>();
+        UserImportService.csvRows(new BufferedReader(new StringReader(csv))).forEachRemaining(rows::add);
+
+        assertThat(rows).containsExactly(
+                new ImportRow(2, "Smith, Jr.", "He said \"hi\"", "a@example.com", "pw-1"),
+                new ImportRow(4, "Short", "Row", null, null));
+    }
+
+    private static Iterator<ImportRow> rows(ImportRow... rows) {
+        return List.of(rows).iterator();
+    }
+}
@@ -0,0 +1,299 @@
+package com.tigtech.persfinance.storage;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Minimal in-process S3 for tests (path-style, one bucket): objects, multipart uploads, copy and ListObjectsV2.
+ * Signatures are not verified, only required to be present. Part uploads can be slowed down to observe how many
+ * run at the same time.
+ */
+class FakeS3Server implements Closeable {
+
+    record StoredObject(byte[] content, String contentType, String cacheControl, Instant lastModified) {}
+
+    private static final Pattern PART = Pattern.compile("<PartNumber>(\\d+)</PartNumber><ETag>([^<]*)</ETag>");
+
+    private final HttpServer server;
+    private final String bucket;
+    private final Map<String, StoredObject> objects = new ConcurrentSkipListMap<>();
+    private final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+    private final Map<String, String> uploadContentTypes = new ConcurrentHashMap<>();
+    private final AtomicInteger partsInFlight = new AtomicInteger();
+    private final AtomicInteger maxPartsInFlight = new AtomicInteger();
+    private volatile long partDelayMillis;
+    private volatile int pageSize = 1000;
+
+    FakeS3Server(String bucket) throws IOException {
+        this.bucket = bucket;
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 64);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            try {
+                handle(exchange);
+            } catch (Exception e) {
+                send(exchange, 500, "<Error><Code>InternalError</Code><Message>" + e + "</Message></Error>");
+            } finally {
+                exchange.close();
+            }
+        });
+        server.start();
+    }
+
+    String endpoint() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    Map<String, StoredObject> objects() {
+        return objects;
+    }
+
+    Set<String> openUploads() {
+        return uploads.keySet();
+    }
+
+    int maxPartsInFlight() {
+        return maxPartsInFlight.get();
+    }
+
+    void partDelayMillis(long millis) {
+        this.partDelayMillis = millis;
+    }
+
+    void pageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    /** Backdates an object, as if it was last written {@code age} seconds ago. */
+    void age(String key, long seconds) {
+        objects.computeIfPresent(key, (k, o) -> new StoredObject(o.content(), o.contentType(), o.cacheControl(),
+                o.lastModified().minusSeconds(seconds)));
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException, InterruptedException {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization == null || !authorization.startsWith("AWS4-HMAC-SHA256 Credential=")) {
+            send(exchange, 403, "<Error><Code>AccessDenied</Code></Error>");
+            return;
+        }
+        String path = exchange.getRequestURI().getRawPath();
+        String prefix = "/" + bucket + "/";
+        if (!path.startsWith(prefix) && !path.equals("/" + bucket)) {
+            send(exchange, 404, "<Error><Code>NoSuchBucket</Code></Error>");
+            return;
+        }
+        String key = path.length() <= prefix.length() ? "" : decode(path.substring(prefix.length()));
+        Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+        byte[] body = exchange.getRequestBody().readAllBytes();
+
+        switch (exchange.getRequestMethod()) {
+            case "GET" -> {
+                if (key.isEmpty()) list(exchange, query);
+                else get(exchange, key);
+            }
+            case "HEAD" -> head(exchange, key);
+            case "PUT" -> {
+                if (query.containsKey("uploadId")) uploadPart(exchange, query, body);
+                else if (exchange.getRequestHeaders().containsKey("x-amz-copy-source")) copy(exchange, key);
+                else put(exchange, key, body);
+            }
+            case "POST" -> {
+                if (query.containsKey("uploads")) createUpload(exchange, key);
+                else completeUpload(exchange, key, query.get("uploadId"), new String(body, StandardCharsets.UTF_8));
+            }
+            case "DELETE" -> {
+                if (query.containsKey("uploadId")) uploads.remove(query.get("uploadId"));
+                else objects.remove(key);
+                exchange.sendResponseHeaders(204, -1);
+            }
+            default -> send(exchange, 405, "");
+        }
+    }
+
+    private void get(HttpExchange exchange, String key) throws IOException {
+        StoredObject object = objects.get(key);
+        if (object == null) {
+            send(exchange, 404, "<Error><Code>NoSuchKey</Code></Error>");
+            return;
+        }
+        exchange.getResponseHeaders().add("Content-Type", object.contentType());
+        exchange.sendResponseHeaders(200, object.content().length);
+        exchange.getResponseBody().write(object.content());
+    }
+
+    private void head(HttpExchange exchange, String key) throws IOException {
+        StoredObject object = objects.get(key);
+        if (object == null) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+        exchange.getResponseHeaders().add("Content-Type", object.contentType());
+        exchange.getResponseHeaders().add("Content-Length", String.valueOf(object.content().length));
+        exchange.getResponseHeaders().add("Last-Modified", httpDate(object.lastModified()));
+        exchange.sendResponseHeaders(200, -1);
+    }
+
+    private void put(HttpExchange exchange, String key, byte[] body) throws IOException {
+        objects.put(key, new StoredObject(body, exchange.getRequestHeaders().getFirst("Content-Type"),
+                exchange.getRequestHeaders().getFirst("Cache-Control"), Instant.now()));
+        exchange.getResponseHeaders().add("ETag", etag(body));
+        exchange.sendResponseHeaders(200, -1);
+    }
+
+    private void copy(HttpExchange exchange, String key) throws IOException {
+        String source = decode(exchange.getRequestHeaders().getFirst("x-amz-copy-source"));
+        StoredObject object = objects.get(source.substring(source.indexOf('/', 1) + 1));
+        if (object == null) {
+            send(exchange, 404, "<Error><Code>NoSuchKey</Code></Error>");
+            return;
+        }
+        boolean replace = "REPLACE".equals(exchange.getRequestHeaders().getFirst("x-amz-metadata-directive"));
+        if (source.equals("/" + bucket + "/" + key) && !replace) {
+            send(exchange, 400, "<Error><Code>InvalidRequest</Code></Error>");
+            return;
+        }
+        objects.put(key, new StoredObject(object.content(),
+                replace ? exchange.getRequestHeaders().getFirst("Content-Type") : object.contentType(),
+                replace ? exchange.getRequestHeaders().getFirst("Cache-Control") : object.cacheControl(),
+                Instant.now()));
+        send(exchange, 200, "<CopyObjectResult><ETag>" + etag(object.content()) + "</ETag></CopyObjectResult>");
+    }
+
+    private void createUpload(HttpExchange exchange, String key) throws IOException {
+        String uploadId = UUID.randomUUID().toString();
+        uploads.put(uploadId, new ConcurrentHashMap<>());
+        uploadContentTypes.put(uploadId, exchange.getRequestHeaders().getFirst("Content-Type"));
+        send(exchange, 200, "<InitiateMultipartUploadResult><Bucket>" + bucket + "</Bucket><Key>" + key
+                + "</Key><UploadId>" + uploadId + "</UploadId></InitiateMultipartUploadResult>");
+    }
+
+    private void uploadPart(HttpExchange exchange, Map<String, String> query, byte[] body) throws IOException, InterruptedException {
+        Map<Integer, byte[]> parts = uploads.get(query.get("uploadId"));
+        if (parts == null) {
+            send(exchange, 404, "<Error><Code>NoSuchUpload</Code></Error>");
+            return;
+        }
+        maxPartsInFlight.accumulateAndGet(partsInFlight.incrementAndGet(), Math::max);
+        try {
+            if (partDelayMillis > 0) Thread.sleep(partDelayMillis);
+            parts.put(Integer.parseInt(query.get("partNumber")), body);
+        } finally {
+            partsInFlight.decrementAndGet();
+        }
+        exchange.getResponseHeaders().add("ETag", etag(body));
+        exchange.sendResponseHeaders(200, -1);
+    }
+
+    private void completeUpload(HttpExchange exchange, String key, String uploadId, String xml) throws IOException {
+        Map<Integer, byte[]> parts = uploads.get(uploadId);
+        if (parts == null) {
+            send(exchange, 404, "<Error><Code>NoSuchUpload</Code></Error>");
+            return;
+        }
+        List<byte[]> ordered = new ArrayList<>();
+        Matcher m = PART.matcher(xml);
+        int expected = 1;
+        while (m.find()) {
+            byte[] part = parts.get(Integer.parseInt(m.group(1)));
+            if (Integer.parseInt(m.group(1)) != expected++ || part == null
+                    || !etag(part).equals(m.group(2).replace("&quot;", "\""))) {
+                // S3 reports this with a 200 status and an error document
+                send(exchange, 200, "<Error><Code>InvalidPart</Code></Error>");
+                return;
+            }
+            ordered.add(part);
+        }
+        int size = ordered.stream().mapToInt(p -> p.length).sum();
+        byte[] content = new byte[size];
+        int offset = 0;
+        for (byte[] part : ordered) {
+            System.arraycopy(part, 0, content, offset, part.length);
+            offset += part.length;
+        }
+        uploads.remove(uploadId);
+        objects.put(key, new StoredObject(content, uploadContentTypes.remove(uploadId), null, Instant.now()));
+        send(exchange, 200, "<CompleteMultipartUploadResult><Key>" + key + "</Key></CompleteMultipartUploadResult>");
+    }
+
+    private void list(HttpExchange exchange, Map<String, String> query) throws IOException {
+        String prefix = query.getOrDefault("prefix", "");
+        String after = query.get("continuation-token");
+        int limit = Math.min(pageSize, Integer.parseInt(query.getOrDefault("max-keys", "1000")));
+        TreeMap<String, StoredObject> matching = new TreeMap<>();
+        objects.forEach((k, v) -> {
+            if (k.startsWith(prefix) && (after == null || k.compareTo(after) > 0)) matching.put(k, v);
+        });
+        StringBuilder xml = new StringBuilder("<ListBucketResult>");
+        String last = null;
+        int n = 0;
+        for (Map.Entry<String, StoredObject> e : matching.entrySet()) {
+            if (n++ == limit) break;
+            last = e.getKey();
+            xml.append("<Contents><Key>").append(e.getKey()).append("</Key><Size>").append(e.getValue().content().length)
+                    .append("</Size><LastModified>").append(e.getValue().lastModified().truncatedTo(ChronoUnit.MILLIS))
+                    .append("</LastModified></Contents>");
+        }
+        boolean truncated = matching.size() > limit;
+        xml.append("<IsTruncated>").append(truncated).append("</IsTruncated>");
+        if (truncated) xml.append("<NextContinuationToken>").append(last).append("</NextContinuationToken>");
+        send(exchange, 200, xml.append("</ListBucketResult>").toString());
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/xml");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) exchange.getResponseBody().write(bytes);
+    }
+
+    private static Map<String, String> query(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) return query;
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            query.put(decode(eq < 0 ? pair : pair.substring(0, eq)), eq < 0 ? "" : decode(pair.substring(eq + 1)));
+        }
+        return query;
+    }
+
+    private static String decode(String value) {
+        return URLDecoder.decode(value.replace("+", "%2B"), StandardCharsets.UTF_8);
+    }
+
+    private static String etag(byte[] content) {
+        return "\"" + Integer.toHexString(Arrays.hashCode(content)) + "-" + content.length + "\"";
+    }
+
+    private static String httpDate(Instant instant) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(instant.atOffset(ZoneOffset.UTC));
+    }
+}
@@ -0,0 +1,116 @@
+package com.tigtech.persfinance.storage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LocalStorageServiceTests {
+
+    @TempDir
+    Path uploadDir;
+
+    @Test
+    void storesPhotoUnderContentHashAndDetectedType() throws Exception {
+        LocalStorageService storage = new LocalStorageService(uploadDir.toString(), 1 << 20, new SimpleMeterRegistry());
+        byte[] png = image(new byte[]{(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A}, 300_000);
+
+        StoredPhoto photo = storage.storeUserPhoto(new ByteArrayInputStream(png), -1, "42");
+
+        String sha256 = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(png));
+        assertThat(photo.sha256()).isEqualTo(sha256);
+        assertThat(photo.size()).isEqualTo(png.length);
+        assertThat(photo.type()).isEqualTo(PhotoType.PNG);
+        String relative = "blobs/" + sha256.substring(0, 2) + "/" + sha256.substring(2, 4) + "/" + sha256 + ".png";
+        assertThat(photo.url()).isEqualTo("/uploads/" + relative);
+        assertThat(Files.readAllBytes(uploadDir.resolve(relative))).isEqualTo(png);
+        assertThat(uploadDir.resolve(".tmp")).isEmptyDirectory();
+    }
+
+    @Test
+    void identicalContentIsStoredOnce() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        LocalStorageService storage = new LocalStorageService(uploadDir.toString(), 1 << 20, registry);
+        byte[] jpeg = image(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF}, 50_000);
+
+        StoredPhoto first = storage.storeUserPhoto(new ByteArrayInputStream(jpeg), -1, "1");
+        StoredPhoto second = storage.storeUserPhoto(new ByteArrayInputStream(jpeg), -1, "2");
+
+        assertThat(second.url()).isEqualTo(first.url());
+        try (var photos = storage.listPhotos()) {
+            assertThat(photos).extracting(PhotoBlob::url).containsExactly(first.url());
+        }
+        assertThat(registry.get("storage.photos.deduplicated.bytes").counter().count()).isEqualTo(jpeg.length);
+    }
+
+    @Test
+    void oversizedStreamIsAbortedWithoutReadingItAll() throws Exception {
+        LocalStorageService storage = new LocalStorageService(uploadDir.toString(), 1 << 20, new SimpleMeterRegistry());
+        CountingStream endless = new CountingStream(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF});
+
+        assertThatThrownBy(() -> storage.storeUserPhoto(endless, -1, "42"))
+                .isInstanceOf(PhotoRejectedException.class)
+                .extracting("reason").isEqualTo(PhotoRejectedException.Reason.TOO_LARGE);
+        assertThat(endless.read).isLessThan((1 << 20) + 256 * 1024);
+        assertThat(uploadDir.resolve(".tmp")).isEmptyDirectory();
+    }
+
+    @Test
+    void announcedOversizeIsRejectedBeforeReading() throws Exception {
+        LocalStorageService storage = new LocalStorageService(uploadDir.toString(), 1 << 20, new SimpleMeterRegistry());
+        CountingStream endless = new CountingStream(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF});
+
+        assertThatThrownBy(() -> storage.storeUserPhoto(endless, 2 << 20, "42")).isInstanceOf(PhotoRejectedException.class);
+        assertThat(endless.read).isZero();
+    }
+
+    @Test
+    void unknownFormatIsRejected() throws Exception {
+        LocalStorageService storage = new LocalStorageService(uploadDir.toString(), 1 << 20, new SimpleMeterRegistry());
+        byte[] html = "<html><script>alert(1)</script></html>".getBytes();
+
+        assertThatThrownBy(() -> storage.storeUserPhoto(new ByteArrayInputStream(html), html.length, "42"))
+                .isInstanceOf(PhotoRejectedException.class)
+                .extracting("reason").isEqualTo(PhotoRejectedException.Reason.UNSUPPORTED_TYPE);
+        assertThat(uploadDir.resolve("blobs")).doesNotExist();
+    }
+
+    static byte[] image(byte[] signature, int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        System.arraycopy(signature, 0, data, 0, signature.length);
+        return data;
+    }
+
+    /** Endless stream starting with the given bytes, counting what has been read. */
+    private static class CountingStream extends InputStream {
+
+        private final byte[] head;
+        long read;
+
+        CountingStream(byte[] head) {
+            this.head = head;
+        }
+
+        @Override
+        public int read() {
+            return read < head.length ? head[(int) read++] & 0xFF : (int) (read++ & 0x7F);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            for (int i = 0; i < len; i++) b[off + i] = (byte) read();
+            return len;
+        }
+    }
+}
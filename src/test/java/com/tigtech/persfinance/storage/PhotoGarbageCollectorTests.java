@@ -0,0 +1,73 @@
+package com.tigtech.persfinance.storage;
+
+import com.tigtech.persfinance.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PhotoGarbageCollectorTests {
+
+    @TempDir
+    Path uploadDir;
+
+    @Test
+    void deletesOnlyOldUnreferencedPhotosAndReportsSavings() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        LocalStorageService storage = new LocalStorageService(uploadDir.toString(), 1 << 20, registry);
+        StoredPhoto shared = store(storage, 1, 1000);
+        StoredPhoto orphan = store(storage, 2, 2000);
+        StoredPhoto fresh = store(storage, 3, 3000);
+        age(shared);
+        age(orphan);
+
+        UserRepository users = mock(UserRepository.class);
+        when(users.countPhotoReferences(anyCollection())).thenAnswer(inv -> {
+            Collection<String> urls = inv.getArgument(0);
+            return urls.contains(shared.url()) ? List.<Object[]>of(new Object[]{shared.url(), 3L}) : List.of();
+        });
+
+        PhotoGarbageCollector gc = new PhotoGarbageCollector(storage, users, registry, 2, 60);
+        PhotoGarbageCollector.Result result = gc.run();
+
+        assertThat(result.scanned()).isEqualTo(3);
+        assertThat(result.deleted()).isEqualTo(1);
+        assertThat(result.reclaimedBytes()).isEqualTo(2000);
+        assertThat(file(orphan)).doesNotExist();
+        assertThat(file(shared)).exists();
+        assertThat(file(fresh)).exists();
+        // batches of 2 over 3 photos
+        verify(users, times(2)).countPhotoReferences(anyCollection());
+        assertThat(registry.get("storage.photos.saved.bytes").gauge().value()).isEqualTo(2000);
+        assertThat(registry.get("storage.photos.stored.bytes").gauge().value()).isEqualTo(4000);
+    }
+
+    private static StoredPhoto store(LocalStorageService storage, int seed, int size) throws Exception {
+        byte[] gif = LocalStorageServiceTests.image(new byte[]{'G', 'I', 'F', '8'}, size);
+        gif[10] = (byte) seed;
+        return storage.storeUserPhoto(new ByteArrayInputStream(gif), -1, String.valueOf(seed));
+    }
+
+    private void age(StoredPhoto photo) throws Exception {
+        Files.setLastModifiedTime(file(photo), FileTime.from(Instant.now().minus(2, ChronoUnit.HOURS)));
+    }
+
+    private Path file(StoredPhoto photo) {
+        return uploadDir.resolve(photo.url().substring("/uploads/".length()));
+    }
+}
@@ -0,0 +1,109 @@
+package com.tigtech.persfinance.storage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Throughput of storing 1-20 MB photos: the previous upload path against {@link LocalStorageService#storeUserPhoto}.
+ * <p>
+ * The previous path is reproduced as it ran in production: the servlet container first spools the multipart part
+ * to a temporary file, then {@code Files.copy(file.getInputStream(), target)} copies it to the upload directory.
+ * The streaming path reads the request body once, hashing it and writing it to its final location. Both read the
+ * body from memory, standing in for the socket. Since the streaming path also produces the SHA-256, the previous
+ * path is measured a second time with the checksum computed afterwards by reading the stored file back.
+ * <p>
+ * Run with {@code mvn test -Dtest=PhotoUploadThroughputIT}.
+ */
+class PhotoUploadThroughputIT {
+
+    private static final Logger log = LoggerFactory.getLogger(PhotoUploadThroughputIT.class);
+
+    private static final int[] SIZES_MB = {1, 5, 10, 20};
+    private static final long BYTES_PER_SIZE = 400L << 20;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void streamingUploadVersusSpoolAndCopy() throws Exception {
+        LocalStorageService storage = new LocalStorageService(dir.resolve("uploads").toString(), 32L << 20, new SimpleMeterRegistry());
+        Path spoolDir = Files.createDirectories(dir.resolve("multipart"));
+        Path legacyDir = Files.createDirectories(dir.resolve("legacy"));
+
+        for (int sizeMb : SIZES_MB) {
+            byte[] photo = LocalStorageServiceTests.image(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF}, sizeMb << 20);
+            int iterations = (int) Math.max(5, BYTES_PER_SIZE / photo.length);
+
+            // warm up both paths
+            for (int i = 0; i < 3; i++) {
+                legacyUpload(photo, spoolDir, legacyDir, i, false);
+                legacyUpload(photo, spoolDir, legacyDir, i, true);
+                storage.storeUserPhoto(new ByteArrayInputStream(photo), photo.length, "1");
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) legacyUpload(photo, spoolDir, legacyDir, i, false);
+            double legacy = throughput(photo.length, iterations, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) legacyUpload(photo, spoolDir, legacyDir, i, true);
+            double legacyHashed = throughput(photo.length, iterations, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            StoredPhoto stored = null;
+            for (int i = 0; i < iterations; i++) {
+                photo[100] = (byte) i; // distinct content, so nothing is deduplicated
+                stored = storage.storeUserPhoto(new ByteArrayInputStream(photo), photo.length, "1");
+                storage.delete(stored.url());
+            }
+            double streaming = throughput(photo.length, iterations, System.nanoTime() - start);
+
+            log.info("photo upload throughput, {} MB: spool+copy {} MB/s, spool+copy+sha256 {} MB/s, streaming+sha256 {} MB/s",
+                    sizeMb, Math.round(legacy), Math.round(legacyHashed), Math.round(streaming));
+            assertThat(stored.size()).isEqualTo(photo.length);
+        }
+    }
+
+    /** The upload path before streaming: multipart spool file, then Files.copy under a timestamped name. */
+    private static void legacyUpload(byte[] body, Path spoolDir, Path targetDir, int n, boolean checksum) throws Exception {
+        Path spooled = Files.createTempFile(spoolDir, "upload_", ".tmp");
+        try {
+            try (InputStream request = new ByteArrayInputStream(body)) {
+                Files.copy(request, spooled, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Path target = targetDir.resolve(System.currentTimeMillis() + "_" + (n % 8) + "_photo.jpg");
+            try (InputStream in = Files.newInputStream(spooled)) {
+                Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            if (checksum) {
+                MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+                try (InputStream in = new DigestInputStream(Files.newInputStream(target), sha256)) {
+                    in.transferTo(OutputStream.nullOutputStream());
+                }
+                sha256.digest();
+            }
+            Files.delete(target); // as the streaming run does, to keep the upload directory small
+        } finally {
+            Files.deleteIfExists(spooled);
+        }
+    }
+
+    private static double throughput(int size, int iterations, long nanos) {
+        return (double) size * iterations / (1 << 20) / (nanos / 1e9);
+    }
+}
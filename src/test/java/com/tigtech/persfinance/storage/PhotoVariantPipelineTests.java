@@ -0,0 +1,94 @@
+package com.tigtech.persfinance.storage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PhotoVariantPipelineTests {
+
+    @TempDir
+    Path uploadDir;
+
+    @Test
+    void generatesEverySizeKeepingAspectRatioAndTransparency() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        LocalStorageService storage = new LocalStorageService(uploadDir.toString(), 8 << 20, registry);
+        PhotoVariantPipeline pipeline = new PhotoVariantPipeline(storage, registry, new int[]{1024, 64, 256}, 0.85f, 1, 10);
+
+        StoredPhoto opaque = storage.storeUserPhoto(new ByteArrayInputStream(encode(image(3000, 2000, false), "jpeg")), -1, "1");
+        StoredPhoto transparent = storage.storeUserPhoto(new ByteArrayInputStream(encode(image(100, 50, true), "png")), -1, "2");
+        pipeline.generate(opaque.url());
+        pipeline.generate(transparent.url());
+
+        assertThat(dimensions(storage, opaque.url(), 1024)).containsExactly(1024, 683);
+        assertThat(dimensions(storage, opaque.url(), 256)).containsExactly(256, 171);
+        assertThat(dimensions(storage, opaque.url(), 64)).containsExactly(64, 43);
+        assertThat(storage.findVariant(opaque.url(), 64).orElseThrow().contentType()).isEqualTo("image/jpeg");
+        // smaller than the variant: re-encoded at its own size
+        assertThat(dimensions(storage, transparent.url(), 256)).containsExactly(100, 50);
+        assertThat(dimensions(storage, transparent.url(), 64)).containsExactly(64, 32);
+        assertThat(storage.findVariant(transparent.url(), 64).orElseThrow().contentType()).isEqualTo("image/png");
+        assertThat(registry.get("storage.variants.photos").tag("result", "generated").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void variantsAreDeletedWithTheirPhoto() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        LocalStorageService storage = new LocalStorageService(uploadDir.toString(), 8 << 20, registry);
+        PhotoVariantPipeline pipeline = new PhotoVariantPipeline(storage, registry, new int[]{64}, 0.85f, 1, 10);
+        StoredPhoto photo = storage.storeUserPhoto(new ByteArrayInputStream(encode(image(200, 200, false), "jpeg")), -1, "1");
+        pipeline.generate(photo.url());
+
+        try (var photos = storage.listPhotos()) {
+            assertThat(photos).hasSize(1);
+        }
+        assertThat(storage.deleteIfNotModifiedSince(photo.url(), Instant.now().plus(1, ChronoUnit.MINUTES))).isTrue();
+        assertThat(storage.findVariant(photo.url(), 64)).isEmpty();
+    }
+
+    @Test
+    void pickChoosesSmallestSufficientSize() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        LocalStorageService storage = new LocalStorageService(uploadDir.toString(), 8 << 20, registry);
+        PhotoVariantPipeline pipeline = new PhotoVariantPipeline(storage, registry, new int[]{64, 256, 1024}, 0.85f, 1, 10);
+
+        assertThat(pipeline.pick(1)).isEqualTo(64);
+        assertThat(pipeline.pick(64)).isEqualTo(64);
+        assertThat(pipeline.pick(65)).isEqualTo(256);
+        assertThat(pipeline.pick(1024)).isEqualTo(1024);
+        assertThat(pipeline.pick(1025)).isZero();
+    }
+
+    private static int[] dimensions(LocalStorageService storage, String url, int size) throws Exception {
+        BufferedImage image = ImageIO.read(Files.newInputStream(storage.findVariant(url, size).orElseThrow().path()));
+        return new int[]{image.getWidth(), image.getHeight()};
+    }
+
+    private static BufferedImage image(int width, int height, boolean alpha) {
+        BufferedImage image = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(new Color(200, 80, 40, alpha ? 128 : 255));
+        g.fillOval(0, 0, width, height);
+        g.dispose();
+        return image;
+    }
+
+    private static byte[] encode(BufferedImage image, String format) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,133 @@
+package com.tigtech.persfinance.storage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class S3StorageServiceTests {
+
+    private static final int PART_SIZE = 64 * 1024;
+    private static final byte[] JPEG = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF};
+
+    private FakeS3Server s3;
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void startS3() throws Exception {
+        s3 = new FakeS3Server("photos");
+        registry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void stopS3() {
+        s3.close();
+    }
+
+    private S3StorageService storage(long maxPhotoBytes, int concurrency) {
+        return new S3StorageService(s3.endpoint(), "us-east-1", "photos", "access", "secret", true,
+                PART_SIZE, concurrency, 900, "", 10_000, maxPhotoBytes, registry);
+    }
+
+    @Test
+    void smallPhotoIsPutOnceAndServedThroughPresignedUrl() throws Exception {
+        S3StorageService storage = storage(1 << 20, 4);
+        byte[] jpeg = image(10_000, 1);
+
+        StoredPhoto first = storage.storeUserPhoto(new ByteArrayInputStream(jpeg), -1, "1");
+        StoredPhoto second = storage.storeUserPhoto(new ByteArrayInputStream(jpeg), -1, "2");
+
+        String sha256 = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(jpeg));
+        String key = "blobs/" + sha256.substring(0, 2) + "/" + sha256.substring(2, 4) + "/" + sha256 + ".jpg";
+        assertThat(first.url()).isEqualTo("/uploads/" + key);
+        assertThat(second.url()).isEqualTo(first.url());
+        assertThat(s3.objects()).containsOnlyKeys(key);
+        assertThat(s3.objects().get(key).contentType()).isEqualTo("image/jpeg");
+        assertThat(s3.objects().get(key).cacheControl()).contains("immutable");
+        assertThat(registry.get("storage.photos.deduplicated").counter().count()).isEqualTo(1);
+
+        PhotoFile photo = storage.findPhoto(first.url()).orElseThrow();
+        assertThat(photo.path()).isNull();
+        assertThat(photo.sha256()).isEqualTo(sha256);
+        assertThat(photo.size()).isEqualTo(jpeg.length);
+        assertThat(photo.location().toString())
+                .startsWith(s3.endpoint() + "/photos/" + key + "?X-Amz-Algorithm=AWS4-HMAC-SHA256")
+                .contains("X-Amz-Expires=900", "X-Amz-Signature=");
+        try (InputStream in = storage.openPhoto(first.url())) {
+            assertThat(in.readAllBytes()).isEqualTo(jpeg);
+        }
+    }
+
+    @Test
+    void largePhotoIsUploadedAsParallelParts() throws Exception {
+        S3StorageService storage = storage(4 << 20, 4);
+        s3.partDelayMillis(100);
+        byte[] jpeg = image(16 * PART_SIZE + 1234, 2);
+
+        StoredPhoto photo = storage.storeUserPhoto(new ByteArrayInputStream(jpeg), jpeg.length, "1");
+
+        String key = photo.url().substring("/uploads/".length());
+        assertThat(s3.objects()).containsOnlyKeys(key);
+        assertThat(s3.objects().get(key).content()).isEqualTo(jpeg);
+        assertThat(photo.sha256()).isEqualTo(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(jpeg)));
+        assertThat(s3.openUploads()).isEmpty();
+        assertThat(s3.maxPartsInFlight()).isBetween(2, 4);
+        assertThat(registry.get("storage.s3.uploads").tag("mode", "multipart").counter().count()).isEqualTo(1);
+
+        // the same content again is not copied into place a second time
+        storage.storeUserPhoto(new ByteArrayInputStream(jpeg), jpeg.length, "2");
+        assertThat(s3.objects()).containsOnlyKeys(key);
+        assertThat(registry.get("storage.photos.deduplicated.bytes").counter().count()).isEqualTo(jpeg.length);
+    }
+
+    @Test
+    void oversizedStreamAbortsMultipartUpload() {
+        S3StorageService storage = storage(5 * PART_SIZE / 2, 2);
+
+        assertThatThrownBy(() -> storage.storeUserPhoto(new ByteArrayInputStream(image(10 * PART_SIZE, 3)), -1, "1"))
+                .isInstanceOf(PhotoRejectedException.class)
+                .extracting("reason").isEqualTo(PhotoRejectedException.Reason.TOO_LARGE);
+        assertThat(s3.openUploads()).isEmpty();
+        assertThat(s3.objects()).isEmpty();
+    }
+
+    @Test
+    void listsPagesAndDeletesPhotosWithTheirVariants() throws Exception {
+        S3StorageService storage = storage(1 << 20, 4);
+        s3.pageSize(2);
+        StoredPhoto kept = storage.storeUserPhoto(new ByteArrayInputStream(image(1000, 4)), -1, "1");
+        storage.storeUserPhoto(new ByteArrayInputStream(image(1000, 5)), -1, "1");
+        StoredPhoto old = storage.storeUserPhoto(new ByteArrayInputStream(image(1000, 6)), -1, "1");
+        storage.storeVariant(old.url(), 64, PhotoType.JPEG, image(100, 7));
+        assertThat(storage.findVariant(old.url(), 64)).get().extracting(PhotoFile::size).isEqualTo(100L);
+
+        try (var photos = storage.listPhotos()) {
+            assertThat(photos).extracting(PhotoBlob::url).hasSize(3).contains(kept.url(), old.url());
+        }
+
+        String oldKey = old.url().substring("/uploads/".length());
+        assertThat(storage.deleteIfNotModifiedSince(old.url(), Instant.now().minusSeconds(3600))).isFalse();
+        s3.age(oldKey, 7200);
+        assertThat(storage.deleteIfNotModifiedSince(old.url(), Instant.now().minusSeconds(3600))).isTrue();
+        assertThat(storage.findPhoto(old.url())).isEmpty();
+        assertThat(storage.findVariant(old.url(), 64)).isEmpty();
+        assertThat(storage.findPhoto(kept.url())).isPresent();
+    }
+
+    private static byte[] image(int size, long seed) {
+        byte[] content = new byte[size];
+        new Random(seed).nextBytes(content);
+        System.arraycopy(JPEG, 0, content, 0, JPEG.length);
+        return content;
+    }
+}
@@ -0,0 +1,177 @@
+package com.tigtech.persfinance.web;
+
+import com.sun.net.httpserver.HttpServer;
+import com.tigtech.persfinance.PersfinanceApplication;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Load comparison of /api/auth/login with platform vs virtual request threads, against a stub Keycloak token
+ * endpoint that answers after a fixed delay. Both runs use the same small Tomcat pool; a login that held its
+ * request thread while waiting for Keycloak would be capped at {@code TOMCAT_THREADS / KEYCLOAK_DELAY} requests
+ * per second.
+ * <p>
+ * While the Keycloak call blocked, virtual threads were what lifted that cap, and this test asserted they gave
+ * more than 1.5x the platform throughput. Since the Keycloak client became non-blocking, login releases its request
+ * thread in both modes, so there is no such gap left to measure. The test now checks that both modes exceed the
+ * blocking cap, and that enabling virtual threads costs no throughput.
+ * <p>
+ * Run with {@code mvn -Pjava21 test -Dtest=LoginLoadComparisonIT} on JDK 21+.
+ */
+@EnabledForJreRange(min = JRE.JAVA_21)
+class LoginLoadComparisonIT {
+
+    private static final Logger log = LoggerFactory.getLogger(LoginLoadComparisonIT.class);
+
+    private static final int TOMCAT_THREADS = 20;
+    private static final Duration KEYCLOAK_DELAY = Duration.ofMillis(200);
+    private static final int CONCURRENCY = 200;
+    private static final int REQUESTS = 4_000;
+
+    private static HttpServer keycloak;
+
+    @BeforeAll
+    static void startStubKeycloak() throws Exception {
+        // by default the stub closes idle keep-alive connections beyond 200, racing with the client reusing them
+        System.setProperty("sun.net.httpserver.maxIdleConnections", String.valueOf(CONCURRENCY * 4));
+        keycloak = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        keycloak.setExecutor(Executors.newCachedThreadPool());
+        byte[] token = "{\"access_token\":\"stub\",\"expires_in\":300,\"token_type\":\"Bearer\"}".getBytes(StandardCharsets.UTF_8);
+        keycloak.createContext("/realms/Persfin/protocol/openid-connect/token", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            try {
+                Thread.sleep(KEYCLOAK_DELAY.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, token.length);
+            exchange.getResponseBody().write(token);
+            exchange.close();
+        });
+        keycloak.start();
+    }
+
+    @AfterAll
+    static void stopStubKeycloak() {
+        keycloak.stop(0);
+    }
+
+    @Test
+    void loginThroughputIsNotCappedByRequestThreads() throws Exception {
+        Result platform = run(false);
+        Result virtual = run(true);
+        double blockingCap = TOMCAT_THREADS * 1000.0 / KEYCLOAK_DELAY.toMillis();
+
+        log.info("/api/auth/login, {} Tomcat threads, Keycloak delay {} ms, {} concurrent clients (blocking cap {} req/s): "
+                        + "platform threads {}; virtual threads {}",
+                TOMCAT_THREADS, KEYCLOAK_DELAY.toMillis(), CONCURRENCY, Math.round(blockingCap), platform, virtual);
+
+        assertThat(platform.errors()).isZero();
+        assertThat(virtual.errors()).isZero();
+        assertThat(platform.throughput()).isGreaterThan(blockingCap * 1.2);
+        assertThat(virtual.throughput()).isGreaterThan(blockingCap * 1.2);
+        assertThat(virtual.throughput()).isGreaterThan(platform.throughput() * 0.8);
+    }
+
+    private Result run(boolean virtualThreads) throws Exception {
+        Map<String, Object> props = new HashMap<>();
+        props.put("server.port", 0);
+        props.put("server.tomcat.threads.max", TOMCAT_THREADS);
+        props.put("spring.threads.virtual.enabled", virtualThreads);
+        props.put("keycloak.admin.username", "admin");
+        props.put("keycloak.admin.password", "admin");
+        props.put("keycloak.client-id", "personal-finance-api");
+        props.put("keycloak.client-secret", "personal-finance-secret");
+        String base = "http://127.0.0.1:" + keycloak.getAddress().getPort();
+        props.put("keycloak.token-uri", base + "/realms/Persfin/protocol/openid-connect/token");
+        props.put("keycloak.admin-base", base + "/admin/realms/Persfin");
+        props.put("keycloak.admin-token-uri", base + "/realms/master/protocol/openid-connect/token");
+        // measure throughput, not the client's timeout under a saturated single-CPU runner
+        props.put("keycloak.http.read-timeout-ms", 30_000);
+        props.put("logging.level.root", "WARN");
+        props.put("logging.level." + LoginLoadComparisonIT.class.getName(), "INFO");
+
+        // command-line arguments, so they win over application.properties
+        String[] args = props.entrySet().stream().map(e -> "--" + e.getKey() + "=" + e.getValue()).toArray(String[]::new);
+        try (ConfigurableApplicationContext app = new SpringApplicationBuilder(PersfinanceApplication.class)
+                .profiles("test")
+                .run(args)) {
+            URI login = URI.create("http://127.0.0.1:" + app.getEnvironment().getProperty("local.server.port") + "/api/auth/login");
+            ExecutorService clientThreads = Executors.newFixedThreadPool(CONCURRENCY);
+            try {
+                HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).executor(clientThreads).build();
+                fire(client, login, CONCURRENCY * 2, CONCURRENCY, new long[CONCURRENCY * 2]); // warm up
+                long[] latencies = new long[REQUESTS];
+                long start = System.nanoTime();
+                int errors = fire(client, login, REQUESTS, CONCURRENCY, latencies);
+                long elapsed = System.nanoTime() - start;
+                return Result.of(REQUESTS, errors, elapsed, latencies);
+            } finally {
+                clientThreads.shutdownNow();
+            }
+        }
+    }
+
+    static int fire(HttpClient client, URI login, int total, int concurrency, long[] latencies) throws InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(login)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"email\":\"alice@example.com\",\"password\":\"secret\"}"))
+                .build();
+        Semaphore inFlight = new Semaphore(concurrency);
+        CountDownLatch done = new CountDownLatch(total);
+        AtomicInteger errors = new AtomicInteger();
+        for (int i = 0; i < total; i++) {
+            int n = i;
+            inFlight.acquire();
+            long sent = System.nanoTime();
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, ex) -> {
+                latencies[n] = System.nanoTime() - sent;
+                if (ex != null || response.statusCode() != 200) errors.incrementAndGet();
+                inFlight.release();
+                done.countDown();
+            });
+        }
+        done.await();
+        return errors.get();
+    }
+
+    record Result(int requests, int errors, double throughput, double p50Millis, double p99Millis) {
+
+        static Result of(int requests, int errors, long elapsedNanos, long[] latencies) {
+            long[] sorted = latencies.clone();
+            Arrays.sort(sorted);
+            return new Result(requests, errors,
+                    requests / (elapsedNanos / 1e9),
+                    sorted[sorted.length / 2] / 1e6,
+                    sorted[(int) (sorted.length * 0.99)] / 1e6);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.0f req/s, p50 %.1f ms, p99 %.1f ms, %d errors", throughput, p50Millis, p99Millis, errors);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.tigtech.persfinance.web;
+
+import com.tigtech.persfinance.storage.LocalStorageService;
+import com.tigtech.persfinance.storage.PhotoCache;
+import com.tigtech.persfinance.storage.PhotoFile;
+import com.tigtech.persfinance.storage.PhotoVariantPipeline;
+import com.tigtech.persfinance.storage.StorageService;
+import com.tigtech.persfinance.storage.StoredPhoto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.head;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.standaloneSetup;
+
+class PhotoControllerTests {
+
+    @TempDir
+    Path uploadDir;
+
+    private SimpleMeterRegistry registry;
+    private LocalStorageService storage;
+    private PhotoVariantPipeline variants;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setup() throws Exception {
+        registry = new SimpleMeterRegistry();
+        storage = new LocalStorageService(uploadDir.toString(), 1 << 20, registry);
+        // objects above 64 KB bypass the cache and are streamed from the file
+        PhotoCache cache = new PhotoCache(registry, 1 << 20, 64 * 1024);
+        variants = new PhotoVariantPipeline(storage, registry, new int[]{64, 256}, 0.85f, 1, 10);
+        mockMvc = standaloneSetup(new PhotoController(storage, cache, variants)).build();
+    }
+
+    @Test
+    void servesPhotoWithStrongEtagAndImmutableCaching() throws Exception {
+        byte[] jpeg = jpeg(100_000);
+        StoredPhoto photo = storage.storeUserPhoto(new ByteArrayInputStream(jpeg), -1, "1");
+
+        mockMvc.perform(get(photo.url()))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + photo.sha256() + "\""))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, PhotoController.IMMUTABLE))
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(content().contentType("image/jpeg"))
+                .andExpect(content().bytes(jpeg));
+    }
+
+    @Test
+    void remotePhotoIsRedirectedToItsLocation() throws Exception {
+        StorageService remote = mock(StorageService.class);
+        URI location = URI.create("https://s3.example.com/photos/blobs/ab/cd/abcd.jpg?X-Amz-Signature=0123");
+        when(remote.findPhoto("/uploads/blobs/ab/cd/abcd.jpg")).thenReturn(Optional.of(
+                new PhotoFile(null, location, 1000, Instant.now(), "image/jpeg", "abcd")));
+        MockMvc remoteMvc = standaloneSetup(new PhotoController(remote, new PhotoCache(registry, 1 << 20, 64 * 1024), variants)).build();
+
+        remoteMvc.perform(get("/uploads/blobs/ab/cd/abcd.jpg"))
+                .andExpect(status().isFound())
+                .andExpect(header().string(HttpHeaders.LOCATION, location.toString()))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, PhotoController.REVALIDATE));
+    }
+
+    @Test
+    void matchingIfNoneMatchIsNotModified() throws Exception {
+        StoredPhoto photo = storage.storeUserPhoto(new ByteArrayInputStream(jpeg(1_000)), -1, "1");
+
+        mockMvc.perform(get(photo.url()).header(HttpHeaders.IF_NONE_MATCH, "\"other\", W/\"" + photo.sha256() + "\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + photo.sha256() + "\""))
+                .andExpect(content().bytes(new byte[0]));
+    }
+
+    @Test
+    void servesByteRanges() throws Exception {
+        byte[] jpeg = jpeg(100_000);
+        StoredPhoto photo = storage.storeUserPhoto(new ByteArrayInputStream(jpeg), -1, "1");
+
+        mockMvc.perform(get(photo.url()).header(HttpHeaders.RANGE, "bytes=1000-1999"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 1000-1999/100000"))
+                .andExpect(content().bytes(Arrays.copyOfRange(jpeg, 1000, 2000)));
+        mockMvc.perform(get(photo.url()).header(HttpHeaders.RANGE, "bytes=-10"))
+                .andExpect(status().isPartialContent())
+                .andExpect(content().bytes(Arrays.copyOfRange(jpeg, 99_990, 100_000)));
+        mockMvc.perform(get(photo.url()).header(HttpHeaders.RANGE, "bytes=100000-"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */100000"));
+        // stale If-Range: the whole photo is sent
+        mockMvc.perform(get(photo.url()).header(HttpHeaders.RANGE, "bytes=0-9").header(HttpHeaders.IF_RANGE, "\"stale\""))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(jpeg));
+    }
+
+    @Test
+    void smallPhotosAreServedFromMemory() throws Exception {
+        byte[] jpeg = jpeg(10_000);
+        StoredPhoto photo = storage.storeUserPhoto(new ByteArrayInputStream(jpeg), -1, "1");
+
+        mockMvc.perform(get(photo.url())).andExpect(status().isOk());
+        storage.delete(photo.url());
+        mockMvc.perform(get(photo.url()).header(HttpHeaders.RANGE, "bytes=0-2"))
+                .andExpect(status().isPartialContent())
+                .andExpect(content().bytes(Arrays.copyOf(jpeg, 3)));
+
+        assertThat(registry.get("storage.photo.cache.requests").tag("result", "hit").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void sizeParameterPicksSmallestSufficientVariant() throws Exception {
+        StoredPhoto photo = storage.storeUserPhoto(new ByteArrayInputStream(realJpeg(800, 600)), -1, "1");
+
+        // not generated yet: original, briefly cacheable, and the photo is queued
+        mockMvc.perform(get(photo.url()).param("size", "100"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + photo.sha256() + "\""))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, PhotoController.PROVISIONAL))
+                .andExpect(content().bytes(Files.readAllBytes(storage.findPhoto(photo.url()).orElseThrow().path())));
+        await().atMost(Duration.ofSeconds(10)).until(() -> storage.findVariant(photo.url(), 64).isPresent());
+
+        byte[] variant = mockMvc.perform(get(photo.url()).param("size", "100"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + photo.sha256() + "-256\""))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, PhotoController.IMMUTABLE))
+                .andExpect(content().contentType("image/jpeg"))
+                .andReturn().getResponse().getContentAsByteArray();
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(variant));
+        assertThat(image.getWidth()).isEqualTo(256);
+        assertThat(image.getHeight()).isEqualTo(192);
+
+        // larger than every variant: the original
+        mockMvc.perform(get(photo.url()).param("size", "2000"))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + photo.sha256() + "\""))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, PhotoController.IMMUTABLE));
+    }
+
+    @Test
+    void headAndUnknownPhotos() throws Exception {
+        StoredPhoto photo = storage.storeUserPhoto(new ByteArrayInputStream(jpeg(1_000)), -1, "1");
+
+        mockMvc.perform(head(photo.url()))
+                .andExpect(status().isOk())
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 1_000))
+                .andExpect(content().bytes(new byte[0]));
+        mockMvc.perform(get("/uploads/blobs/00/00/missing.jpg")).andExpect(status().isNotFound());
+        mockMvc.perform(get("/uploads/.tmp/x")).andExpect(status().isNotFound());
+    }
+
+    static byte[] realJpeg(int width, int height) throws Exception {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.ORANGE, width, height, Color.BLUE));
+        g.fillRect(0, 0, width, height);
+        g.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpeg", out);
+        return out.toByteArray();
+    }
+
+    private static byte[] jpeg(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        data[0] = (byte) 0xFF;
+        data[1] = (byte) 0xD8;
+        data[2] = (byte) 0xFF;
+        return data;
+    }
+}
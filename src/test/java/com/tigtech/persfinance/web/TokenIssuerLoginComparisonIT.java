@@ -0,0 +1,142 @@
+package com.tigtech.persfinance.web;
+
+import com.sun.net.httpserver.HttpServer;
+import com.tigtech.persfinance.PersfinanceApplication;
+import com.tigtech.persfinance.domain.User;
+import com.tigtech.persfinance.repository.UserRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Load comparison of /api/auth/login with {@code app.auth.token-issuer=keycloak} (password grant against a stub
+ * Keycloak answering after {@code KEYCLOAK_DELAY}) and {@code local} (BCrypt check and RS256 signing in-process).
+ * <p>
+ * Keycloak hashes the password too, so the stub's delay stands for the hop plus Keycloak's own work; the local
+ * run uses a minimal BCrypt cost to measure what is left of the login once the hop is gone. With a production
+ * cost, local logins are bounded by the hashing pool ({@code password.hash.duration} per core) instead.
+ * The client concurrency is kept below what saturates a single-CPU runner, where both modes would only measure
+ * the CPU: with {@code CONCURRENCY} clients the Keycloak mode is capped at {@code CONCURRENCY / KEYCLOAK_DELAY}.
+ * <p>
+ * Run with {@code mvn test -Dtest=TokenIssuerLoginComparisonIT}.
+ */
+class TokenIssuerLoginComparisonIT {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenIssuerLoginComparisonIT.class);
+
+    private static final Duration KEYCLOAK_DELAY = Duration.ofMillis(200);
+    private static final int CONCURRENCY = 16;
+    private static final int REQUESTS = 1_000;
+    private static final int BCRYPT_COST = 4;
+
+    private static HttpServer keycloak;
+
+    @BeforeAll
+    static void startStubKeycloak() throws Exception {
+        System.setProperty("sun.net.httpserver.maxIdleConnections", String.valueOf(CONCURRENCY * 4));
+        keycloak = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        keycloak.setExecutor(Executors.newCachedThreadPool());
+        byte[] token = "{\"access_token\":\"stub\",\"expires_in\":300,\"token_type\":\"Bearer\"}".getBytes(StandardCharsets.UTF_8);
+        keycloak.createContext("/realms/Persfin/protocol/openid-connect/token", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            try {
+                Thread.sleep(KEYCLOAK_DELAY.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, token.length);
+            exchange.getResponseBody().write(token);
+            exchange.close();
+        });
+        keycloak.start();
+    }
+
+    @AfterAll
+    static void stopStubKeycloak() {
+        keycloak.stop(0);
+    }
+
+    @Test
+    void localIssuanceTakesKeycloakOffTheLoginPath() throws Exception {
+        LoginLoadComparisonIT.Result viaKeycloak = run("keycloak");
+        LoginLoadComparisonIT.Result local = run("local");
+
+        log.info("/api/auth/login, {} concurrent clients, Keycloak delay {} ms, local BCrypt cost {}: keycloak {}, local {}",
+                CONCURRENCY, KEYCLOAK_DELAY.toMillis(), BCRYPT_COST, viaKeycloak, local);
+
+        assertThat(viaKeycloak.errors()).isZero();
+        assertThat(local.errors()).isZero();
+        // every Keycloak login waits for the hop; a local one only for the hash and the signature
+        assertThat(viaKeycloak.p50Millis()).isGreaterThanOrEqualTo(KEYCLOAK_DELAY.toMillis());
+        assertThat(local.p50Millis()).isLessThan(viaKeycloak.p50Millis());
+        assertThat(local.throughput()).isGreaterThan(viaKeycloak.throughput());
+    }
+
+    private LoginLoadComparisonIT.Result run(String tokenIssuer) throws Exception {
+        Map<String, Object> props = new HashMap<>();
+        props.put("server.port", 0);
+        props.put("app.auth.token-issuer", tokenIssuer);
+        props.put("app.password-hashing.cost", BCRYPT_COST);
+        props.put("app.auth.local.key-encryption-password", "login-comparison-test-password");
+        props.put("app.auth.local.key-encryption-salt", "0d2e5a9c41f7b386");
+        props.put("app.password-hashing.queue-capacity", CONCURRENCY * 2);
+        props.put("spring.sql.init.mode", "never");
+        props.put("keycloak.admin.username", "admin");
+        props.put("keycloak.admin.password", "admin");
+        props.put("keycloak.client-id", "personal-finance-api");
+        props.put("keycloak.client-secret", "personal-finance-secret");
+        String base = "http://127.0.0.1:" + keycloak.getAddress().getPort();
+        props.put("keycloak.token-uri", base + "/realms/Persfin/protocol/openid-connect/token");
+        props.put("keycloak.admin-base", base + "/admin/realms/Persfin");
+        props.put("keycloak.admin-token-uri", base + "/realms/master/protocol/openid-connect/token");
+        props.put("keycloak.http.read-timeout-ms", 30_000);
+        props.put("logging.level.root", "WARN");
+        props.put("logging.level." + TokenIssuerLoginComparisonIT.class.getName(), "INFO");
+
+        String[] args = props.entrySet().stream().map(e -> "--" + e.getKey() + "=" + e.getValue()).toArray(String[]::new);
+        try (ConfigurableApplicationContext app = new SpringApplicationBuilder(PersfinanceApplication.class)
+                .profiles("test")
+                .run(args)) {
+            UserRepository users = app.getBean(UserRepository.class);
+            users.deleteAll();
+            users.save(User.builder()
+                    .firstName("Alice")
+                    .lastName("Doe")
+                    .email("alice@example.com")
+                    .password(app.getBean(PasswordEncoder.class).encode("secret"))
+                    .build());
+
+            URI login = URI.create("http://127.0.0.1:" + app.getEnvironment().getProperty("local.server.port") + "/api/auth/login");
+            ExecutorService clientThreads = Executors.newFixedThreadPool(CONCURRENCY);
+            try {
+                HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).executor(clientThreads).build();
+                LoginLoadComparisonIT.fire(client, login, CONCURRENCY * 2, CONCURRENCY, new long[CONCURRENCY * 2]); // warm up
+                long[] latencies = new long[REQUESTS];
+                long start = System.nanoTime();
+                int errors = LoginLoadComparisonIT.fire(client, login, REQUESTS, CONCURRENCY, latencies);
+                long elapsed = System.nanoTime() - start;
+                return LoginLoadComparisonIT.Result.of(REQUESTS, errors, elapsed, latencies);
+            } finally {
+                clientThreads.shutdownNow();
+            }
+        }
+    }
+}
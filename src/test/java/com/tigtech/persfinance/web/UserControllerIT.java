@@ -0,0 +1,306 @@
+package com.tigtech.persfinance.web;
+
+import com.tigtech.persfinance.domain.User;
+import com.tigtech.persfinance.repository.ProvisioningOutboxRepository;
+import com.tigtech.persfinance.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.request.AbstractMockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.web.context.WebApplicationContext;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.jwt;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+@SpringBootTest(properties = {
+        "keycloak.admin.username=admin",
+        "keycloak.admin.password=admin",
+        "keycloak.client-id=personal-finance-api",
+        "keycloak.client-secret=personal-finance-secret",
+        "keycloak.token-uri=http://localhost:8888/realms/Persfin/protocol/openid-connect/token",
+        "keycloak.admin-base=http://localhost:8888/admin/realms/Persfin",
+        "keycloak.admin-token-uri=http://localhost:8888/realms/master/protocol/openid-connect/token",
+        "spring.sql.init.mode=never",
+        "app.password-hashing.cost=4",
+        "app.import.chunk-size=3",
+        // the outbox is drained by nobody here
+        "app.outbox.poll-interval-ms=3600000"
+})
+@ActiveProfiles("test")
+class UserControllerIT {
+
+    @Autowired
+    private WebApplicationContext wac;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ProvisioningOutboxRepository outboxRepository;
+
+    private final JsonMapper json = JsonMapper.builder().build();
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setup() {
+        mockMvc = webAppContextSetup(wac).apply(springSecurity()).build();
+        outboxRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void listPagesThroughUsersWithACursorUntilTheLastPage() throws Exception {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) ids.add(user("user" + i + "@example.com", "Doe", "ROLE_USER", true).getId());
+
+        Map<String, Object> first = page(null, 2);
+        assertThat(itemIds(first)).containsExactly(ids.get(0), ids.get(1));
+        assertThat(first).containsEntry("nextCursor", ids.get(1).intValue());
+
+        Map<String, Object> second = page(ids.get(1), 2);
+        assertThat(itemIds(second)).containsExactly(ids.get(2), ids.get(3));
+        assertThat(second).containsEntry("nextCursor", ids.get(3).intValue());
+
+        Map<String, Object> last = page(ids.get(3), 2);
+        assertThat(itemIds(last)).containsExactly(ids.get(4));
+        assertThat(last).containsEntry("nextCursor", null);
+    }
+
+    @Test
+    void fullLastPageHasNoCursor() throws Exception {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 4; i++) ids.add(user("user" + i + "@example.com", "Doe", "ROLE_USER", true).getId());
+
+        Map<String, Object> last = page(ids.get(1), 2);
+        assertThat(itemIds(last)).containsExactly(ids.get(2), ids.get(3));
+        // the extra row fetched to look ahead was not there, so there is no next page
+        assertThat(last).containsEntry("nextCursor", null);
+        Map<String, Object> all = page(null, 4);
+        assertThat(itemIds(all)).hasSize(4);
+        assertThat(all).containsEntry("nextCursor", null);
+    }
+
+    @Test
+    void listClampsThePageSize() throws Exception {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i <= UserController.MAX_PAGE_SIZE; i++) {
+            users.add(User.builder().firstName("User").lastName("Doe").email("user" + i + "@example.com").password("x").build());
+        }
+        userRepository.saveAll(users);
+
+        assertThat(itemIds(page(null, 0))).hasSize(1);
+        assertThat(itemIds(page(null, -5))).hasSize(1);
+        Map<String, Object> largest = page(null, 1000);
+        assertThat(itemIds(largest)).hasSize(UserController.MAX_PAGE_SIZE);
+        assertThat(largest.get("nextCursor")).isNotNull();
+        assertThat(itemIds(page(null, null))).hasSize(UserController.DEFAULT_PAGE_SIZE);
+    }
+
+    @Test
+    void ndjsonExportStreamsOneUserPerLineInIdOrder() throws Exception {
+        User ann = user("ann@example.com", "Lee", "ROLE_USER", true);
+        User bob = user("bob@example.com", "Ray", "ROLE_ADMIN", false);
+
+        List<Map<String, Object>> lines = ndjson(mockMvc.perform(asAdmin(get("/api/users/export"))).andReturn());
+
+        assertThat(lines).extracting(line -> line.get("email")).containsExactly("ann@example.com", "bob@example.com");
+        assertThat(lines.get(0)).containsEntry("id", ann.getId().intValue()).containsEntry("sobrenome", "Lee")
+                .containsEntry("role", "ROLE_USER").containsEntry("ativo", true);
+        assertThat(lines.get(1)).containsEntry("id", bob.getId().intValue()).containsEntry("ativo", false);
+    }
+
+    @Test
+    void csvExportQuotesFieldsAndDefusesFormulas() throws Exception {
+        User formula = user("formula@example.com", "=HYPERLINK(\"http://evil\")", "ROLE_USER", true);
+        User quoted = user("quoted@example.com", "Doe, \"Jr\"", "ROLE_USER", true);
+        User dash = user("dash@example.com", "-1+1", "ROLE_USER", false);
+
+        MvcResult pending = mockMvc.perform(asAdmin(get("/api/users/export").param("format", "csv")))
+                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"users.csv\""))
+                .andReturn();
+        String body = streamed(pending, "text/csv;charset=UTF-8");
+
+        assertThat(body).isEqualTo("""
+                id,nome,sobrenome,email,fotoUrl,role,ativo
+                %d,User,"'=HYPERLINK(\"\"http://evil\"\")",formula@example.com,,ROLE_USER,true
+                %d,User,"Doe, \"\"Jr\"\"",quoted@example.com,,ROLE_USER,true
+                %d,User,'-1+1,dash@example.com,,ROLE_USER,false
+                """.formatted(formula.getId(), quoted.getId(), dash.getId()));
+    }
+
+    @Test
+    void exportFiltersByActiveAndRole() throws Exception {
+        user("user@example.com", "Active", "ROLE_USER", true);
+        user("inactive@example.com", "Inactive", "ROLE_USER", false);
+        user("admin@example.com", "Admin", "ROLE_ADMIN", true);
+
+        assertThat(ndjson(mockMvc.perform(asAdmin(get("/api/users/export").param("active", "true"))).andReturn()))
+                .extracting(line -> line.get("email")).containsExactly("user@example.com", "admin@example.com");
+        // role is accepted with or without the ROLE_ prefix
+        assertThat(ndjson(mockMvc.perform(asAdmin(get("/api/users/export").param("role", "admin"))).andReturn()))
+                .extracting(line -> line.get("email")).containsExactly("admin@example.com");
+        assertThat(ndjson(mockMvc.perform(asAdmin(get("/api/users/export")
+                        .param("active", "true").param("role", "ROLE_USER"))).andReturn()))
+                .extracting(line -> line.get("email")).containsExactly("user@example.com");
+    }
+
+    @Test
+    void exportRejectsUnknownFormatsAndNonAdmins() throws Exception {
+        mockMvc.perform(asAdmin(get("/api/users/export").param("format", "xml")))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/users/export").with(jwt()))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void jsonImportReportsEveryRowThenASummary() throws Exception {
+        user("taken@example.com", "Taken", "ROLE_USER", true);
+        List<Map<String, String>> registrations = List.of(
+                registration("Ann", "Lee", "ann@example.com"),
+                registration("Ann", "Again", "ann@example.com"),
+                registration("Tom", "Taken", "taken@example.com"),
+                registration("Bad", "Email", "not-an-email"),
+                registration("Bob", "Ray", "bob@example.com"));
+
+        List<Map<String, Object>> lines = ndjson(mockMvc.perform(asAdmin(post("/api/users/import")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json.writeValueAsString(registrations)))).andReturn());
+
+        assertThat(lines).hasSize(6);
+        Map<Integer, Map<String, Object>> byRow = rowResults(lines);
+        assertThat(byRow.get(1)).containsEntry("status", "IMPORTED").containsEntry("email", "ann@example.com");
+        assertThat(byRow.get(2)).containsEntry("status", "DUPLICATE").containsEntry("error", "Email repeated in file");
+        assertThat(byRow.get(3)).containsEntry("status", "DUPLICATE").containsEntry("error", "Email already in use");
+        assertThat(byRow.get(4)).containsEntry("status", "INVALID");
+        assertThat((String) byRow.get(4).get("error")).startsWith("email ");
+        assertThat(byRow.get(5)).containsEntry("status", "IMPORTED");
+        // the summary comes last, once every row has been reported
+        assertThat(lines.get(lines.size() - 1)).containsEntry("summary",
+                Map.of("total", 5, "imported", 2, "duplicates", 2, "invalid", 1, "errors", 0));
+
+        assertThat(userRepository.findByEmail("ann@example.com").orElseThrow().getLastName()).isEqualTo("Lee");
+        assertThat(userRepository.findByEmail("bob@example.com")).isPresent();
+        assertThat(outboxRepository.count()).isEqualTo(2);
+    }
+
+    @Test
+    void csvImportReadsQuotedFieldsAndReportsShortRows() throws Exception {
+        String csv = """
+                firstName,lastName,email,password
+                "O'Brien, Jr.","Say \"\"hi\"\"",quoted@example.com,Passw0rd-1
+                Short,Row,short@example.com
+
+                Carl,Ray,carl@example.com,Passw0rd-2
+                """;
+        MockMultipartFile file = new MockMultipartFile("file", "users.csv", "text/csv", csv.getBytes(StandardCharsets.UTF_8));
+
+        List<Map<String, Object>> lines = ndjson(mockMvc.perform(asAdmin(multipart("/api/users/import").file(file))).andReturn());
+
+        Map<Integer, Map<String, Object>> byRow = rowResults(lines);
+        // rows are numbered by line, header included
+        assertThat(byRow.get(2)).containsEntry("status", "IMPORTED");
+        assertThat(byRow.get(3)).containsEntry("status", "INVALID").containsEntry("email", "short@example.com");
+        assertThat((String) byRow.get(3).get("error")).startsWith("password ");
+        assertThat(byRow.get(5)).containsEntry("status", "IMPORTED");
+        assertThat(lines.get(lines.size() - 1)).containsEntry("summary",
+                Map.of("total", 3, "imported", 2, "duplicates", 0, "invalid", 1, "errors", 0));
+
+        User quoted = userRepository.findByEmail("quoted@example.com").orElseThrow();
+        assertThat(quoted.getFirstName()).isEqualTo("O'Brien, Jr.");
+        assertThat(quoted.getLastName()).isEqualTo("Say \"hi\"");
+    }
+
+    @Test
+    void importIsForAdminsOnly() throws Exception {
+        mockMvc.perform(post("/api/users/import")
+                        .with(jwt())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[]"))
+                .andExpect(status().isForbidden());
+    }
+
+    private User user(String email, String lastName, String role, boolean active) {
+        return userRepository.save(User.builder()
+                .firstName("User")
+                .lastName(lastName)
+                .email(email)
+                .password("x")
+                .role(role)
+                .active(active)
+                .build());
+    }
+
+    private static Map<String, String> registration(String firstName, String lastName, String email) {
+        return Map.of("firstName", firstName, "lastName", lastName, "email", email, "password", "Passw0rd-" + firstName);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> page(Long cursor, Integer size) throws Exception {
+        MockHttpServletRequestBuilder request = get("/api/users");
+        if (cursor != null) request.param("cursor", cursor.toString());
+        if (size != null) request.param("size", size.toString());
+        String body = mockMvc.perform(asAdmin(request))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+        return json.readValue(body, Map.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Long> itemIds(Map<String, Object> page) {
+        return ((List<Map<String, Object>>) page.get("items")).stream()
+                .map(item -> ((Number) item.get("id")).longValue())
+                .toList();
+    }
+
+    private static RequestBuilder asAdmin(AbstractMockHttpServletRequestBuilder<?> request) {
+        return request.with(jwt().authorities(new SimpleGrantedAuthority("ROLE_ADMIN")));
+    }
+
+    /** The streamed body of a response, once complete. */
+    private String streamed(MvcResult pending, String contentType) throws Exception {
+        RequestBuilder dispatch = asyncDispatch(pending);
+        return mockMvc.perform(dispatch)
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(contentType))
+                .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Object>> ndjson(MvcResult pending) throws Exception {
+        String body = streamed(pending, "application/x-ndjson");
+        assertThat(body).endsWith("\n");
+        return body.lines().map(line -> (Map<String, Object>) json.readValue(line, Map.class)).toList();
+    }
+
+    private static Map<Integer, Map<String, Object>> rowResults(List<Map<String, Object>> lines) {
+        return lines.stream()
+                .filter(line -> line.containsKey("row"))
+                .collect(Collectors.toMap(line -> (Integer) line.get("row"), line -> line));
+    }
+}